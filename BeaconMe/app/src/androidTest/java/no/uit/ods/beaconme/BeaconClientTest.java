@@ -0,0 +1,204 @@
+package no.uit.ods.beaconme;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs BeaconClient requests against a local stand-in for the cloud
+ * service that counts the sockets it accepts, to check that connections
+ * are reused and that unchanged categories are not downloaded again.
+ * The client is told it's online, so the requests are sent to the local
+ * server also when the device has no network.
+ */
+public class BeaconClientTest extends AndroidTestCase {
+    private static final int    REQUESTS = 50;
+    private static final String ETAG     = "\"categories-1\"";
+    private static final String BEACONS  = "[{\"category_id\": 1, \"mac\": \"C0:FF:EE:00:00:01\"},"
+                                         + " {\"category_id\": 2, \"mac\": \"C0:FF:EE:00:00:02\"}]";
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests    = new AtomicInteger();
+    // full category and beacon lists sent, not counting 304 responses
+    private final AtomicInteger categoryBodies = new AtomicInteger();
+    private final AtomicInteger beaconBodies   = new AtomicInteger();
+    private ServerSocket        server;
+    private BeaconClient        client;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        client = new BeaconClient() {
+            @Override
+            protected boolean isOnline(Context c) {
+                return true;
+            }
+        };
+        client.setServerUrl("http://127.0.0.1:" + server.getLocalPort());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+        super.tearDown();
+    }
+
+    public void testConnectionReuse() throws Exception {
+        for (int i = 0; i < REQUESTS; i++) {
+            JSONArray categories = client.getCategories(getContext());
+            assertNotNull(categories);
+            assertEquals(0, categories.length());
+
+            JSONObject category = client.getCategory(i, "topic", getContext());
+            assertNotNull(category);
+
+            assertEquals(200, client.setBeacon("name", "uuid", "url", 1, "mac", "1", "2", getContext()));
+        }
+
+        Log.i("BeaconClientTest", requests.get() + " requests over " + connections.get() + " connections");
+        assertEquals(3 * REQUESTS, requests.get());
+        assertTrue(connections.get() < REQUESTS);
+    }
+
+    public void testConditionalFetch() throws Exception {
+        JSONArray first = client.getCachedCategories(getContext());
+        assertNotNull(first);
+        categoryBodies.set(0);
+
+        // the server answers 304 from now on, the parsed copy is returned as is
+        for (int i = 0; i < REQUESTS; i++)
+            assertSame(first, client.getCachedCategories(getContext()));
+        assertEquals(0, categoryBodies.get());
+        assertSame(first, client.getSavedCategories(getContext()));
+    }
+
+    public void testStreamBeacons() throws Exception {
+        final StringBuilder macs = new StringBuilder();
+        BeaconRecord.Consumer consumer = new BeaconRecord.Consumer() {
+            @Override
+            public void onBeacon(BeaconRecord record) {
+                macs.append(record.getMac()).append(' ');
+            }
+        };
+
+        assertEquals(2, client.streamBeacons(getContext(), consumer));
+        beaconBodies.set(0);
+
+        // unchanged, decoded from the saved copy
+        assertEquals(2, client.streamBeacons(getContext(), consumer));
+        assertEquals(0, beaconBodies.get());
+        assertEquals("C0:FF:EE:00:00:01 C0:FF:EE:00:00:02 C0:FF:EE:00:00:01 C0:FF:EE:00:00:02 ",
+                macs.toString());
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                connections.incrementAndGet();
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                // server closed
+            }
+        }
+    }
+
+    /**
+     * Answers HTTP/1.1 requests on the socket until the client closes it.
+     * GET gets an empty JSON array, POST an empty JSON object.
+     */
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in  = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            OutputStream   out = socket.getOutputStream();
+            String requestLine;
+
+            while ((requestLine = in.readLine()) != null) {
+                if (requestLine.isEmpty())
+                    continue;
+
+                // headers, only the body length and validator are needed
+                int length = 0;
+                String ifNoneMatch = null;
+                String header;
+                while ((header = in.readLine()) != null && !header.isEmpty()) {
+                    String lower = header.toLowerCase();
+                    if (lower.startsWith("content-length:"))
+                        length = Integer.parseInt(header.substring(15).trim());
+                    else if (lower.startsWith("if-none-match:"))
+                        ifNoneMatch = header.substring(14).trim();
+                }
+                for (int i = 0; i < length; i++)
+                    in.read();
+                requests.incrementAndGet();
+
+                out.write(respond(requestLine, ifNoneMatch).getBytes("UTF-8"));
+                out.flush();
+            }
+            socket.close();
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    /**
+     * The categories and the beacon table carry an ETag and are answered
+     * with 304 when the client already has them.
+     */
+    private String respond(String requestLine, String ifNoneMatch) {
+        String          body    = "{}";
+        String          etag    = null;
+        AtomicInteger   bodies  = null;
+        if (requestLine.startsWith("GET /api_get_categories")) {
+            body    = "[]";
+            etag    = ETAG;
+            bodies  = categoryBodies;
+        } else if (requestLine.startsWith("POST /api_get_beacon")) {
+            body    = BEACONS;
+            etag    = "\"beacons-" + BEACONS.hashCode() + "\"";
+            bodies  = beaconBodies;
+        }
+
+        if (etag != null && etag.equals(ifNoneMatch))
+            return "HTTP/1.1 304 Not Modified\r\n"
+                    + "ETag: " + etag + "\r\n"
+                    + "\r\n";
+
+        if (bodies != null)
+            bodies.incrementAndGet();
+        return "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: application/json\r\n"
+                + (etag != null ? "ETag: " + etag + "\r\n" : "")
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n" + body;
+    }
+}
@@ -0,0 +1,101 @@
+package no.uit.ods.beaconme;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Checks that BeaconParser decodes the advertisement packet the same way
+ * as the old String based parseBeacon, and measures the allocations per
+ * parsed packet for both.
+ */
+public class BeaconParserTest extends AndroidTestCase {
+    private static final int PACKETS = 10000;
+
+    // iBeacon packet, uuid E2C56DB5-DFFB-48D2-B060-D0F5A71096E0, major 1, minor 2, tx -59
+    private static final byte[] RECORD = {
+            0x02, 0x01, 0x06, 0x1a, (byte) 0xff, 0x4c, 0x00, 0x02, 0x15,
+            (byte) 0xe2, (byte) 0xc5, 0x6d, (byte) 0xb5, (byte) 0xdf, (byte) 0xfb, 0x48, (byte) 0xd2,
+            (byte) 0xb0, 0x60, (byte) 0xd0, (byte) 0xf5, (byte) 0xa7, 0x10, (byte) 0x96, (byte) 0xe0,
+            0x00, 0x01, 0x00, 0x02, (byte) 0xc5
+    };
+
+    public void testParse() {
+        BeaconParser parser = new BeaconParser().parse(RECORD);
+        assertEquals("E2C56DB5-DFFB-48D2-B060-D0F5A71096E0",
+                BeaconParser.formatUuid(parser.getUuidMostSigBits(), parser.getUuidLeastSigBits()));
+        assertEquals(legacyUuid(RECORD),
+                BeaconParser.formatUuid(parser.getUuidMostSigBits(), parser.getUuidLeastSigBits()));
+        assertEquals(1, parser.getMajor());
+        assertEquals(2, parser.getMinor());
+        assertEquals(0xff - 0xc5, parser.getSignalLevel());
+    }
+
+    public void testShortRecord() {
+        // the old parser read the bytes that were there, the walker drops the cut structure
+        byte[] record = Arrays.copyOf(RECORD, 20);
+        BeaconParser parser = new BeaconParser().parse(record);
+        assertEquals(BeaconParser.FORMAT_NONE, parser.getFormat());
+        assertEquals(0, parser.getUuidMostSigBits());
+        assertEquals(0, parser.getUuidLeastSigBits());
+        assertEquals(0, parser.getMajor());
+        assertEquals(0, parser.getMinor());
+        assertEquals(0xff, parser.getSignalLevel());
+    }
+
+    /**
+     * Counts the objects allocated by the old and the new parser for
+     * a number of packets, and logs the allocations per packet.
+     */
+    public void testAllocationsPerPacket() {
+        BeaconParser parser = new BeaconParser();
+
+        // warm up both paths
+        for (int i = 0; i < 1000; i++) {
+            legacyUuid(RECORD);
+            parser.parse(RECORD);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < PACKETS; i++)
+            legacyUuid(RECORD);
+        int legacyCount = Debug.getThreadAllocCount();
+        int legacySize  = Debug.getThreadAllocSize();
+
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < PACKETS; i++)
+            parser.parse(RECORD);
+        int parserCount = Debug.getThreadAllocCount();
+        int parserSize  = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Log.i("BeaconParserTest", "parseBeacon: " + (legacyCount / (double) PACKETS) + " objects, "
+                + (legacySize / (double) PACKETS) + " bytes per packet");
+        Log.i("BeaconParserTest", "BeaconParser: " + (parserCount / (double) PACKETS) + " objects, "
+                + (parserSize / (double) PACKETS) + " bytes per packet");
+
+        assertTrue(parserCount < PACKETS / 100);
+        assertTrue(parserCount < legacyCount);
+    }
+
+    /**
+     * The UUID part of the old Beacon.parseBeacon, kept here as the
+     * reference for the new parser.
+     */
+    private static String legacyUuid(byte[] sRecord) {
+        byte[] a = Arrays.copyOfRange(sRecord, 9, 25);
+
+        StringBuilder sb = new StringBuilder(a.length * 2);
+        for (byte b : a)
+            sb.append(String.format("%02x", b & 0xff));
+
+        sb.insert(8, "-");
+        sb.insert(13, "-");
+        sb.insert(18, "-");
+        sb.insert(23, "-");
+        return sb.toString().toUpperCase();
+    }
+}
@@ -0,0 +1,140 @@
+package no.uit.ods.beaconme;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Checks the decoding of beacon responses, and compares the heap used
+ * while reading a synthetic 50 000 beacon response with the streaming
+ * reader against reading it into a JSONArray.
+ */
+public class BeaconRecordReaderTest extends AndroidTestCase {
+    private static final int    BEACONS         = 50000;
+    private static final int    SAMPLE_EVERY    = 5000;
+
+    private long peak;
+
+    public void testRead() throws IOException {
+        String json = "[{\"id\": 7, \"category_id\": 3, \"name\": \"Door\", \"mac\": \"C0:FF:EE:00:00:01\","
+                + " \"uuid\": \"E2C56DB5-DFFB-48D2-B060-D0F5A71096E0\", \"major\": 1, \"minor\": \"2\","
+                + " \"url\": \"http://example.com\", \"tags\": [1, {\"a\": null}], \"owner\": {\"id\": 1}},"
+                + " 42,"
+                + " {\"category_id\": null, \"name\": null, \"mac\": true, \"major\": -1.5}]";
+        final ArrayList<String> seen = new ArrayList<>();
+
+        int count = BeaconRecordReader.read(new StringReader(json), new BeaconRecord.Consumer() {
+            @Override
+            public void onBeacon(BeaconRecord r) {
+                seen.add(r.getCategoryId() + "|" + r.getName() + "|" + r.getMac() + "|" + r.getUuid()
+                        + "|" + r.getMajor() + "|" + r.getMinor() + "|" + r.getUrl());
+            }
+        });
+
+        assertEquals(2, count);
+        assertEquals("3|Door|C0:FF:EE:00:00:01|E2C56DB5-DFFB-48D2-B060-D0F5A71096E0|1|2|http://example.com",
+                seen.get(0));
+        assertEquals("0|null|true|null|-1.5|null|null", seen.get(1));
+    }
+
+    public void testMalformed() {
+        try {
+            BeaconRecordReader.read(new StringReader("[{\"name\": \"a\"}, {\"name\": "), new BeaconRecord.Consumer() {
+                @Override
+                public void onBeacon(BeaconRecord record) {
+                }
+            });
+            fail("malformed response was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testMemory() throws IOException, JSONException {
+        File file = new File(getContext().getCacheDir(), "beacons50k.json");
+        writeResponse(file);
+        Log.i("BeaconRecordReaderTest", BEACONS + " beacons, " + file.length() / 1024 + " KiB");
+
+        // the old path, the whole response as String and JSONArray, then converted
+        long base = usedHeap();
+        StringBuilder response = new StringBuilder();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = in.readLine()) != null)
+            response.append(line);
+        in.close();
+        peak = usedHeap();
+        JSONArray array = new JSONArray(response.toString());
+        peak = Math.max(peak, usedHeap());
+        int names = 0;
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject o = (JSONObject) array.get(i);
+            names += o.get("name").toString().length() > 0 ? 1 : 0;
+            if (i % SAMPLE_EVERY == 0)
+                peak = Math.max(peak, usedHeap());
+        }
+        long treePeak = peak - base;
+        response = null;
+        array = null;
+
+        // streaming, sampling the heap while records are handed out
+        base = usedHeap();
+        peak = base;
+        in = new BufferedReader(new FileReader(file));
+        int count = BeaconRecordReader.read(in, new BeaconRecord.Consumer() {
+            private int n;
+
+            @Override
+            public void onBeacon(BeaconRecord record) {
+                if (n++ % SAMPLE_EVERY == 0)
+                    peak = Math.max(peak, usedHeap());
+            }
+        });
+        in.close();
+        long streamPeak = peak - base;
+
+        Log.i("BeaconRecordReaderTest", "JSONArray peak " + treePeak / 1024 + " KiB ("
+                + names + " names), streaming peak " + streamPeak / 1024 + " KiB");
+        assertEquals(BEACONS, count);
+        assertTrue(streamPeak < treePeak / 10);
+        file.delete();
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Writes a response shaped like the one from /api_get_beacon.
+     */
+    private void writeResponse(File file) throws IOException {
+        Writer out = new FileWriter(file);
+        out.write("[");
+        for (int i = 0; i < BEACONS; i++) {
+            if (i > 0)
+                out.write(",\n");
+            out.write(String.format("{\"id\":%d,\"category_id\":%d,\"name\":\"Beacon %d\","
+                    + "\"mac\":\"C0:FF:EE:%02X:%02X:%02X\",\"uuid\":\"E2C56DB5-DFFB-48D2-B060-D0F5A71096E0\","
+                    + "\"major\":\"%d\",\"minor\":\"%d\",\"url\":\"http://example.com/beacons/%d\","
+                    + "\"created_at\":\"2015-04-10T12:00:00.000Z\",\"updated_at\":\"2015-04-10T12:00:00.000Z\"}",
+                    i, i % 12, i, (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff, i / 1000, i % 1000, i));
+        }
+        out.write("]");
+        out.close();
+    }
+}
@@ -0,0 +1,95 @@
+package no.uit.ods.beaconme;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Replays a noisy RSSI trace through each RssiFilter and reports the
+ * error against the true signal and the CPU time per sample.
+ */
+public class RssiFilterTest extends AndroidTestCase {
+    private static final String[]   FILTERS = {"none", "ewma", "kalman", "median"};
+    private static final int        SAMPLES = 20000;
+    private static final int        ROUNDS  = 10;
+
+    private int[]       trace;
+    private double[]    truth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        createTrace(new Random(42));
+    }
+
+    public void testErrorAndCost() {
+        double rawError = 0;
+
+        for (String name : FILTERS) {
+            RssiFilter filter = RssiFilter.create(name);
+
+            // error against the true signal
+            RssiFilter.Track track = filter.newTrack();
+            double sum = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                double e = track.add(trace[i]) - truth[i];
+                sum += e * e;
+            }
+            double rms = Math.sqrt(sum / SAMPLES);
+            if ("none".equals(name))
+                rawError = rms;
+
+            // cost per sample, and objects allocated while filtering
+            long start = System.nanoTime();
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < SAMPLES; i++)
+                    track.add(trace[i]);
+            }
+            int allocs = Debug.getThreadAllocCount();
+            Debug.stopAllocCounting();
+            long ns = (System.nanoTime() - start) / ((long) ROUNDS * SAMPLES);
+
+            Log.i("RssiFilterTest", name + ": rms error " + String.format("%.2f", rms) + " dBm, "
+                    + ns + " ns per sample, " + allocs + " allocations");
+
+            assertEquals(0, allocs);
+            if (!"none".equals(name))
+                assertTrue(rms < rawError);
+        }
+    }
+
+    public void testMedian() {
+        RssiFilter.Track track = RssiFilter.create("median").newTrack();
+        assertEquals(-60.0, track.add(-60), 0.0);
+        assertEquals(-65.0, track.add(-70), 0.0);
+        assertEquals(-60.0, track.add(-20), 0.0);
+        for (int i = 0; i < RssiFilter.WINDOW; i++)
+            track.add(-50);
+        assertEquals(-50.0, track.getValue(), 0.0);
+        assertEquals(RssiFilter.WINDOW, track.getCount());
+    }
+
+    /**
+     * Builds a trace of a person walking from 1m to 20m and back past a
+     * beacon advertising -59 dBm at 1m, with gaussian noise and some
+     * deep fades as seen in crowded rooms.
+     */
+    private void createTrace(Random random) {
+        trace = new int[SAMPLES];
+        truth = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            double phase    = (i % 2000) / 2000.0;
+            double distance = 1 + 19 * (phase < 0.5 ? phase * 2 : (1 - phase) * 2);
+            truth[i] = -59 - 20 * Math.log10(distance);
+
+            double sample = truth[i] + random.nextGaussian() * 4;
+            if (random.nextInt(20) == 0)
+                sample -= 10 + random.nextInt(15);
+            trace[i] = (int) Math.round(sample);
+        }
+    }
+}
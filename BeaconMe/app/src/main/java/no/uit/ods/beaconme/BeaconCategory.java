@@ -22,9 +22,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.ArrayList;
 
 /**
@@ -66,14 +63,11 @@ public class BeaconCategory extends ActionBarActivity implements View.OnClickLis
     /**
      *
      * This method gets a JSONArray of categories from the back-end system and converts it to
-     * a string array, it also saves the array on disk for backup or uses the backup if fail
+     * a string array, the client keeps the last array on disk and returns it if the server fails
      *
      * @return array with categories in String format
      */
     private ArrayList getCategories() {
-        String tempJSON;
-        String filename = "SavedCat.sav";
-
         //  set a user in the BeaconClient class
         BeaconClient bc = BeaconClient.getInstance();
         // try {
@@ -85,28 +79,15 @@ public class BeaconCategory extends ActionBarActivity implements View.OnClickLis
         // Get a JSONArray from the server with the categories
         JSONArray catArray = null;
         try {
-            catArray = bc.getCategories(getBaseContext());
+            catArray = bc.getCachedCategories(getBaseContext());
         } catch (InterruptedException e) {
             Log.e("Category", "getCategories from back-end system failed with: " + e.getMessage());
         }
 
-        // Try to save the Category array to disk, so we have some categories locally
-        // in case of no network or other issues
-        if (catArray != null) {
-            tempJSON = catArray.toString();
-            saveToDisk(tempJSON, filename);
-        } else {
-            char[] buffer = readFromDisk(filename);
-
-            // Convert the String read from disk back to a JSONArray
-            if (buffer != null) {
-                try {
-                    catArray = new JSONArray(new String(buffer));
-                } catch (JSONException e) {
-                    Log.e("Category", "Convert to JSONArray failed with: " + e.getMessage());
-                }
-            }
-
+        // The client returns its saved copy when the server can't be reached,
+        // so there is nothing to show only if the categories were never fetched
+        if (catArray == null) {
+            showConnectionError();
         }
 
         // Convert the received JSONArray to a String array with the categories, if something went wrong with the transfer
@@ -125,62 +106,18 @@ public class BeaconCategory extends ActionBarActivity implements View.OnClickLis
     }
 
     /**
-     *
-     * Saves a string in a file on disk.
-     *
-     * @param array The array to read from.
-     * @param filename The filename we want to save to.
-     */
-    public void saveToDisk(String array, String filename) {
-        File f = new File(getApplicationContext().getFilesDir() + filename);
-        try {
-            // Make sure we write to a "clean" file
-            f.delete();
-
-            // Make a file to save to, then transfer the array to the file
-            FileWriter writer = new FileWriter(f);
-            writer.write(array);
-
-            // Closes the transfer AND the file
-            writer.close();
-        } catch (Exception e) {
-            Log.e("Category", "Save Categories to disk failed with: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Reads from disk and returns a char[] buffer
-     *
-     * @param filename The filename to read from.
-     * @return The string read from file.
+     * Shows a dialog with a error message and returns to "home" screen.
      */
-    public char[] readFromDisk(String filename) {
-        char[] buffer = null;
-        // Read the local file to get the "backup" array
-        try {
-            File f = new File(getApplicationContext().getFilesDir() + filename);
-            if(f.exists()) {
-                FileReader reader = new FileReader(f);
-                buffer = new char[((int) f.length())];
-                reader.read(buffer);
-                reader.close();
+    private void showConnectionError() {
+        AlertDialog alertDialog = new AlertDialog.Builder(this).create();
+        alertDialog.setTitle("ERROR!");
+        alertDialog.setMessage("Ups, something went terribly wrong, are you connected to the interweb?");
+        alertDialog.setButton("OK", new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                finish();
             }
-            else {
-                // The file doesn't exist, so we show a dialog with a error message and returns to "home" screen.
-                AlertDialog alertDialog = new AlertDialog.Builder(this).create();
-                alertDialog.setTitle("ERROR!");
-                alertDialog.setMessage("Ups, something went terribly wrong, are you connected to the interweb?");
-                alertDialog.setButton("OK", new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        finish();
-                    }
-                });
-                alertDialog.show();
-            }
-        } catch (Exception e) {
-            Log.e("Category", "Read Categories from disk failed with: " + e.getMessage());
-        }
-        return buffer;
+        });
+        alertDialog.show();
     }
 
     private void findViewsById() {
@@ -3,16 +3,33 @@ package no.uit.ods.beaconme;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONArray;
 
 /**
@@ -27,18 +44,63 @@ import org.json.JSONArray;
  * 20 000 milliseconds. This value can be set by calling setConnTimeOut()
  * and get by getConnTimeOut().
  *
+ * Connections to the server are kept alive and reused between requests.
+ * Every response is read to the end instead of disconnecting, only
+ * connections that failed are closed. The number of idle connections
+ * kept and for how long is set with setConnectionPool().
+ *
+ * getCachedCategories() keeps the last response in memory and on disk
+ * together with its ETag and Last-Modified validators, and sends
+ * conditional requests. When the server answers 304 Not Modified the
+ * parsed copy is returned as is. The returned array is shared and must
+ * not be modified.
+ *
+ * The beacon table can be large, so streamBeacons() saves the response
+ * to disk as it arrives and decodes it from there one beacon at a time,
+ * see BeaconRecordReader. Only the validators are kept in memory.
+ *
+ * Requests run on a small shared pool of worker threads. Each request has
+ * an Async variant returning a Future, optionally with a Callback, so
+ * several requests can be in flight at once. The blocking methods wait
+ * for the Future, blocking the calling thread like before.
+ *
  * @author 	Vegard Strand (vst030@post.uit.no)
  * @version	1.3
  * @since	2015-04-10
  */
 public class BeaconClient {
+    private static final int    POOL_SIZE    = 4;
+    private static final int    KEEP_ALIVE   = 30;      // In seconds
+
     private String  serverUrl    = "http://beaconme.ddns.net:3000";
-    private String  apiKey       = "";
+    private volatile String apiKey = "";
     private int     connTimeOut  = 20000;   // In milliseconds
+    private int     maxIdleConnections = POOL_SIZE;
+    private long    idleTimeOut  = 5 * 60 * 1000;   // In milliseconds
     private static  BeaconClient instance = null;
 
+    // Last responses of the cached requests, also stored on disk
+    private final Snapshot  categorySnapshot = new Snapshot("SavedCat.sav");
+    private final Snapshot  beaconSnapshot   = new Snapshot("SavedBeacons.sav");
+
+    // Shared by all requests, idle threads are let go after KEEP_ALIVE
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    /**
+     * Receives the result of an asynchronous request. The callback is
+     * run on the client's worker thread, post to a Handler to touch views.
+     */
+    public interface Callback<T> {
+        /**
+         * @param result The same value the blocking method would return,
+         *               null if the request failed unexpectedly.
+         */
+        void onResult(T result);
+    }
+
     protected BeaconClient() {
         // Exists only to defeat instantiation.
+        applyConnectionPool();
     }
 
     public static BeaconClient getInstance() {
@@ -50,38 +112,51 @@ public class BeaconClient {
 
     public boolean authenticate(String email, String password, Context c)
             throws InterruptedException, IOException, JSONException {
-        if (!isOnline(c)) {
-            return false;
+        try {
+            return authenticateAsync(email, password, c, null).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof JSONException)
+                throw (JSONException) e.getCause();
+            throw rethrow(e);
         }
+    }
 
-        AuthToServer    authToServer;
-        Thread          t;
-        int             status;
+    /**
+     * Authenticates without blocking, see authenticate. The API key is
+     * stored before the future completes.
+     */
+    public Future<Boolean> authenticateAsync(String email, String password, final Context c,
+            Callback<Boolean> callback) {
+        if (!isOnline(c)) {
+            return completed(false, callback);
+        }
 
-        authToServer = new AuthToServer();
+        final AuthToServer authToServer = new AuthToServer();
         authToServer.setUser(email, password);
-        t = new Thread(authToServer);
-        t.start();
 
-        // Sync
-        t.join();
-
-        status = authToServer.getHttpStatus();
-        if (status != 200) {
-            return false;
-        }
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException, JSONException {
+                authToServer.run();
+                if (authToServer.getHttpStatus() != 200) {
+                    return false;
+                }
 
-        this.apiKey = authToServer.getApiKey();
+                apiKey = authToServer.getApiKey();
 
-        // Write key to settings file
-        String          fContent;
-        FileOperator    fOperator;
+                // Write key to settings file
+                String          fContent;
+                FileOperator    fOperator;
 
-        fContent    = "[{ \"api_key\": " +  this.apiKey + "}]";
-        fOperator   = new FileOperator("settings.json", Context.MODE_PRIVATE);
-        fOperator.writeJSON("settings", fContent, c);
+                fContent    = "[{ \"api_key\": " +  apiKey + "}]";
+                fOperator   = new FileOperator("settings.json", Context.MODE_PRIVATE);
+                fOperator.writeJSON("settings", fContent, new ContextFileStore(c));
 
-        return true;
+                return true;
+            }
+        }, callback);
     }
 
     /**
@@ -98,27 +173,74 @@ public class BeaconClient {
         return this.connTimeOut;
     }
 
+    /**
+     * Sets how many idle connections to the server are kept open for
+     * reuse, and for how long in milliseconds. 0 connections turns
+     * keep-alive off. The platform connection pool reads these settings
+     * when it's first used, so this should be called before the first
+     * request.
+     */
+    public void setConnectionPool(int maxIdleConnections, long idleTimeOut) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.idleTimeOut        = idleTimeOut;
+        applyConnectionPool();
+    }
+
+    /**
+     * Returns the number of idle connections kept open for reuse.
+     */
+    public int getMaxIdleConnections() {
+        return this.maxIdleConnections;
+    }
+
+    /**
+     * Returns how long an idle connection is kept open in milliseconds.
+     */
+    public long getIdleTimeOut() {
+        return this.idleTimeOut;
+    }
+
+    /**
+     * Sets the URL of the cloud service, without a trailing slash.
+     */
+    public void setServerUrl(String serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Returns the URL of the cloud service.
+     */
+    public String getServerUrl() {
+        return this.serverUrl;
+    }
+
     /**
      * Returns found beacons in the cloud service. On any error such as no internet,
      * no beacons found, etc. the method returns null.
      */
     public JSONArray getBeacons(String mac, String uuid, int categoryId, String beaconUrl,
             String name, String major, String minor, Context c) throws InterruptedException {
+        return await(getBeaconsAsync(mac, uuid, categoryId, beaconUrl, name, major, minor, c, null));
+    }
+
+    /**
+     * Fetches beacons without blocking, see getBeacons.
+     */
+    public Future<JSONArray> getBeaconsAsync(String mac, String uuid, int categoryId, String beaconUrl,
+            String name, String major, String minor, Context c, Callback<JSONArray> callback) {
         if (!isOnline(c)) {
-            return null;
+            return completed(null, callback);
         }
 
-        GetBeacons      getBeacons;
-        Thread          t;
-
-        getBeacons = new GetBeacons(this.apiKey, mac, beaconUrl, uuid,
-                                    name, categoryId, major, minor);
-        t = new Thread(getBeacons);
-        t.start();
-
-        // Sync
-        t.join();
-        return getBeacons.getBeacons();
+        final GetBeacons getBeacons = new GetBeacons(this.apiKey, mac, beaconUrl, uuid,
+                                                     name, categoryId, major, minor);
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() {
+                getBeacons.run();
+                return getBeacons.getBeacons();
+            }
+        }, callback);
     }
 
     /**
@@ -129,22 +251,28 @@ public class BeaconClient {
     public int createBeacon(String name, String uuid, String beaconUrl,
             int categoryId, String mac, String major, String minor, Context c)
             throws InterruptedException {
+        return await(createBeaconAsync(name, uuid, beaconUrl, categoryId, mac, major, minor, c, null));
+    }
 
+    /**
+     * Inserts a beacon without blocking, see createBeacon.
+     */
+    public Future<Integer> createBeaconAsync(String name, String uuid, String beaconUrl,
+            int categoryId, String mac, String major, String minor, Context c,
+            Callback<Integer> callback) {
         if (!isOnline(c)) {
-            return 0;
+            return completed(0, callback);
         }
 
-        CreateBeacon    createBeacon;
-        Thread          t;
-
-        createBeacon = new CreateBeacon(this.apiKey, mac, beaconUrl, uuid, name,
-                                        categoryId, major, minor);
-        t = new Thread(createBeacon);
-        t.start();
-
-        // Sync
-        t.join();
-        return createBeacon.getHttpStatus();
+        final CreateBeacon createBeacon = new CreateBeacon(this.apiKey, mac, beaconUrl, uuid, name,
+                                                           categoryId, major, minor);
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                createBeacon.run();
+                return createBeacon.getHttpStatus();
+            }
+        }, callback);
     }
 
     /**
@@ -156,21 +284,28 @@ public class BeaconClient {
     public int setBeacon(String name, String uuid, String beaconUrl,
             int categoryId, String mac, String major, String minor, Context c)
             throws InterruptedException {
+        return await(setBeaconAsync(name, uuid, beaconUrl, categoryId, mac, major, minor, c, null));
+    }
+
+    /**
+     * Updates a beacon without blocking, see setBeacon.
+     */
+    public Future<Integer> setBeaconAsync(String name, String uuid, String beaconUrl,
+            int categoryId, String mac, String major, String minor, Context c,
+            Callback<Integer> callback) {
         if (!isOnline(c)) {
-            return 0;
+            return completed(0, callback);
         }
 
-        SetBeacon       setBeacon;
-        Thread          t;
-
-        setBeacon   = new SetBeacon(this.apiKey, mac, beaconUrl, uuid, name,
-                                    categoryId, major, minor);
-        t = new Thread(setBeacon);
-        t.start();
-
-        // Sync
-        t.join();
-        return setBeacon.getHttpStatus();
+        final SetBeacon setBeacon = new SetBeacon(this.apiKey, mac, beaconUrl, uuid, name,
+                                                  categoryId, major, minor);
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                setBeacon.run();
+                return setBeacon.getHttpStatus();
+            }
+        }, callback);
     }
 
     /**
@@ -178,21 +313,25 @@ public class BeaconClient {
      * no beacons found, etc. the method returns null.
      */
     public JSONArray getCategories(Context c) throws InterruptedException {
+        return await(getCategoriesAsync(c, null));
+    }
+
+    /**
+     * Fetches categories without blocking, see getCategories.
+     */
+    public Future<JSONArray> getCategoriesAsync(Context c, Callback<JSONArray> callback) {
         if (!isOnline(c)) {
-            return null;
+            return completed(null, callback);
         }
 
-        GetCategories   getCategories;
-        Thread          t;
-
-        getCategories = new GetCategories();
-        t = new Thread(getCategories);
-        t.start();
-
-        // Sync
-        t.join();
-
-        return getCategories.getCategories();
+        final GetCategories getCategories = new GetCategories();
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() {
+                getCategories.run();
+                return getCategories.getCategories();
+            }
+        }, callback);
     }
 
     /**
@@ -201,21 +340,203 @@ public class BeaconClient {
      */
     public JSONObject getCategory(int categoryId, String topic, Context c)
             throws InterruptedException {
+        return await(getCategoryAsync(categoryId, topic, c, null));
+    }
+
+    /**
+     * Fetches a category without blocking, see getCategory.
+     */
+    public Future<JSONObject> getCategoryAsync(int categoryId, String topic, Context c,
+            Callback<JSONObject> callback) {
         if (!isOnline(c)) {
-            return null;
+            return completed(null, callback);
         }
 
-        GetCategory   getCategory;
-        Thread        t;
+        final GetCategory getCategory = new GetCategory(categoryId, topic);
+        return submit(new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() {
+                getCategory.run();
+                return getCategory.getCategory();
+            }
+        }, callback);
+    }
 
-        getCategory = new GetCategory(categoryId, topic);
-        t = new Thread(getCategory);
-        t.start();
+    /**
+     * Returns all categories, fetched with a conditional request. If the
+     * categories have not changed since the last call, or the request
+     * fails, the saved copy is returned. Returns null if there is no
+     * saved copy either.
+     */
+    public JSONArray getCachedCategories(Context c) throws InterruptedException {
+        return await(getCachedCategoriesAsync(c, null));
+    }
 
-        // Sync
-        t.join();
+    /**
+     * Fetches the categories without blocking, see getCachedCategories.
+     */
+    public Future<JSONArray> getCachedCategoriesAsync(final Context c, Callback<JSONArray> callback) {
+        final boolean online = isOnline(c);
+
+        // the saved copy is read from disk on the worker thread, also when offline
+        return submit(new Callable<JSONArray>() {
+            @Override
+            public JSONArray call() {
+                JSONArray saved = categorySnapshot.load(c);
+                if (!online) {
+                    return saved;
+                }
+                GetCategories getCategories = new GetCategories(categorySnapshot);
+                getCategories.run();
+                if (getCategories.getCategories() == null) {
+                    return categorySnapshot.getArray();
+                }
+                return getCategories.getCategories();
+            }
+        }, callback);
+    }
+
+    /**
+     * Streams all beacons in the cloud service to the consumer, fetched
+     * with a conditional request. If the beacons have not changed since
+     * the last call, or the request fails before anything is read, the
+     * saved copy is streamed instead. <br>
+     *
+     * The consumer is called on the client's worker thread, and gets the
+     * same BeaconRecord instance for every beacon.
+     *
+     * @return The number of beacons, or -1 if there are none to give,
+     *         or the response was malformed (the consumer may then have
+     *         received part of the beacons).
+     */
+    public int streamBeacons(Context c, BeaconRecord.Consumer consumer) throws InterruptedException {
+        return await(streamBeaconsAsync(c, consumer, null));
+    }
+
+    /**
+     * Streams all beacons without blocking, see streamBeacons.
+     */
+    public Future<Integer> streamBeaconsAsync(final Context c, final BeaconRecord.Consumer consumer,
+            Callback<Integer> callback) {
+        final boolean online    = isOnline(c);
+        final String  key       = this.apiKey;
+
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                beaconSnapshot.init(c);
+                if (online) {
+                    StreamBeacons streamBeacons = new StreamBeacons(key, beaconSnapshot, consumer);
+                    streamBeacons.run();
+                    if (streamBeacons.getCount() >= 0 || streamBeacons.isReceived()) {
+                        return streamBeacons.getCount();
+                    }
+                }
+                return beaconSnapshot.replay(consumer);
+            }
+        }, callback);
+    }
+
+    /**
+     * Returns the saved copy of the categories without contacting the
+     * server, or null if they have never been fetched.
+     */
+    public JSONArray getSavedCategories(Context c) {
+        return categorySnapshot.load(c);
+    }
 
-        return getCategory.getCategory();
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor e = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE,
+                KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "BeaconClient-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        e.allowCoreThreadTimeOut(true);
+        return e;
+    }
+
+    /**
+     * Runs the request on the shared executor, the callback (if any) is
+     * called when it completes.
+     */
+    private static <T> Future<T> submit(Callable<T> request, Callback<T> callback) {
+        RequestTask<T> task = new RequestTask<>(request, callback);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Returns a future that is already done, used when there is no network.
+     */
+    private static <T> Future<T> completed(final T result, Callback<T> callback) {
+        RequestTask<T> task = new RequestTask<>(new Callable<T>() {
+            @Override
+            public T call() {
+                return result;
+            }
+        }, callback);
+        task.run();
+        return task;
+    }
+
+    /**
+     * Waits for a request started by one of the blocking methods.
+     */
+    private static <T> T await(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * The requests catch their own I/O errors, anything else is a bug
+     * and is thrown on in the caller's thread.
+     */
+    private static RuntimeException rethrow(ExecutionException e) {
+        if (e.getCause() instanceof Error)
+            throw (Error) e.getCause();
+        if (e.getCause() instanceof RuntimeException)
+            return (RuntimeException) e.getCause();
+        return new RuntimeException(e.getCause());
+    }
+
+    private static class RequestTask<T> extends FutureTask<T> {
+        private final Callback<T> callback;
+
+        RequestTask(Callable<T> request, Callback<T> callback) {
+            super(request);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            T result = null;
+            try {
+                result = get();
+            } catch (InterruptedException | ExecutionException e) {
+                Log.e("BeaconClient", "Request failed with: " + e.getMessage());
+            }
+            callback.onResult(result);
+        }
+    }
+
+    private void applyConnectionPool() {
+        // read by HttpURLConnection's connection pool
+        System.setProperty("http.keepAlive", maxIdleConnections > 0 ? "true" : "false");
+        System.setProperty("http.maxConnections", Integer.toString(Math.max(1, maxIdleConnections)));
+        System.setProperty("http.keepAliveDuration", Long.toString(idleTimeOut));
     }
 
     private static HttpURLConnection createConnection(String url, String method,
@@ -239,11 +560,26 @@ public class BeaconClient {
         return conn;
     }
 
-    private static String readResponse(InputStream inputStream) throws IOException {
+    /**
+     * Reads the whole response body, also on error responses, and closes
+     * the stream. A fully read response hands the connection back to
+     * the pool for the next request.
+     */
+    private static String readResponse(HttpURLConnection conn) throws IOException {
         BufferedReader  reader;
+        InputStream     inputStream;
         String          line;
         StringBuffer    response;
 
+        if (conn.getResponseCode() >= 400) {
+            inputStream = conn.getErrorStream();
+        } else {
+            inputStream = conn.getInputStream();
+        }
+        if (inputStream == null) {
+            return "";
+        }
+
         reader      = new BufferedReader(new InputStreamReader(inputStream));
         response    = new StringBuffer();
 
@@ -265,22 +601,47 @@ public class BeaconClient {
     }
 
     private String sendGetRequest(HttpURLConnection conn) throws IOException {
-        BufferedReader  inStream;
-        String          inputLine;
-        StringBuffer    response;
-
         conn.setRequestMethod("GET");
         conn.setDoOutput(false);
 
-        inStream    = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        response    = new StringBuffer();
+        return readResponse(conn);
+    }
 
-        while ((inputLine = inStream.readLine()) != null) {
-            response.append(inputLine);
+    /**
+     * Closes a connection that failed, so it's not reused.
+     */
+    private static void abort(HttpURLConnection conn) {
+        if (conn != null) {
+            conn.disconnect();
         }
+    }
 
-        inStream.close();
-        return response.toString();
+    private static String readFile(File f) throws IOException {
+        Reader          reader;
+        char[]          buffer;
+        StringBuilder   content;
+        int             n;
+
+        reader  = new FileReader(f);
+        buffer  = new char[4096];
+        content = new StringBuilder();
+        try {
+            while ((n = reader.read(buffer)) != -1) {
+                content.append(buffer, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+        return content.toString();
+    }
+
+    private static void writeFile(File f, String content) throws IOException {
+        FileWriter writer = new FileWriter(f);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
     }
 
     private class GetBeacons implements Runnable {
@@ -324,17 +685,17 @@ public class BeaconClient {
                 conn    = createConnection(url, "POST", params, false, true, true);
 
                 sendPostRequest(params, conn);
+                String response = readResponse(conn);
                 if (conn.getResponseCode() == 200) {
-                    String response = readResponse(conn.getInputStream());
                     this.beacons    = new JSONArray(response);
                 }
-            } catch (JSONException | IOException e) {
+            } catch (JSONException e) {
                 e.printStackTrace();
                 this.beacons = null;
-            } finally {
-                if(conn != null) {
-                    conn.disconnect();
-                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.beacons = null;
+                abort(conn);
             }
         }
 
@@ -384,13 +745,11 @@ public class BeaconClient {
 
                 sendPostRequest(params, conn);
                 this.rcode = conn.getResponseCode();
+                readResponse(conn);
             } catch (IOException e) {
                 e.printStackTrace();
                 this.rcode = 500; // Internal Server Error
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
+                abort(conn);
             }
         }
 
@@ -440,12 +799,10 @@ public class BeaconClient {
 
                 sendPostRequest(params, conn);
                 this.rcode = conn.getResponseCode();
+                readResponse(conn);
             } catch (IOException e) {
                 e.printStackTrace();
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
+                abort(conn);
             }
         }
 
@@ -454,29 +811,116 @@ public class BeaconClient {
         }
     }
 
+    private class StreamBeacons implements Runnable {
+        private String                  url;
+        private HttpURLConnection       conn;
+        private String                  params;
+        private String                  key;
+        private Snapshot                snapshot;
+        private BeaconRecord.Consumer   consumer;
+        private int                     count = -1;
+        private boolean                 received;
+
+        StreamBeacons(String key, Snapshot snapshot, BeaconRecord.Consumer consumer) {
+            this.key        = key;
+            this.snapshot   = snapshot;
+            this.consumer   = consumer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                url 	= serverUrl                 + "/api_get_beacon";
+                params	= "key="                    + this.key
+                        + "&beacon[mac]="
+                        + "&beacon[url]="
+                        + "&beacon[proximity]="
+                        + "&beacon[category_id]="   + 0
+                        + "&beacon[name]="
+                        + "&beacon[major]="
+                        + "&beacon[minor]=";
+                conn    = createConnection(url, "POST", params, false, true, true);
+                snapshot.addValidators(conn);
+
+                sendPostRequest(params, conn);
+                if (conn.getResponseCode() == 200) {
+                    // save the whole body before decoding, so a broken download
+                    // leaves the old snapshot in place
+                    snapshot.receive(conn);
+                    received    = true;
+                    this.count  = snapshot.replay(consumer);
+                } else {
+                    readResponse(conn);
+                    if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                        this.count = snapshot.replay(consumer);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                abort(conn);
+            }
+        }
+
+        /**
+         * Returns the number of beacons given to the consumer, or -1.
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Returns true if a new response was received, even if it
+         * could not be decoded.
+         */
+        public boolean isReceived() {
+            return this.received;
+        }
+    }
+
     private class GetCategories implements Runnable {
         private JSONArray           categories;
         private String              url;
         private HttpURLConnection   conn;
         private String              response;
+        private Snapshot            snapshot;
+
+        GetCategories() {
+            this(null);
+        }
+
+        /**
+         * @param snapshot The saved response the request is made conditional
+         *                 on, or null.
+         */
+        GetCategories(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
 
         @Override
         public void run() {
             try {
                 url         = serverUrl + "/api_get_categories";
                 conn        = createConnection(url, "GET", "", false, true, true);
+                if (snapshot != null) {
+                    snapshot.addValidators(conn);
+                }
                 response    = sendGetRequest(conn);
 
                 if (conn.getResponseCode() == 200) {
                     this.categories = new JSONArray(response);
+                    if (snapshot != null) {
+                        snapshot.store(conn, response, this.categories);
+                    }
+                } else if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED && snapshot != null) {
+                    this.categories = snapshot.getArray();
                 }
-            } catch (IOException | JSONException e) {
+            } catch (JSONException e) {
                 e.printStackTrace();
                 this.categories = null;
-            } finally {
-                if(conn != null) {
-                    conn.disconnect();
-                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.categories = null;
+                abort(conn);
             }
         }
 
@@ -508,17 +952,17 @@ public class BeaconClient {
                 conn    = createConnection(url, "POST", params, false, true, true);
 
                 sendPostRequest(params, conn);
+                String response = readResponse(conn);
                 if (conn.getResponseCode() == 200) {
-                    String response = readResponse(conn.getInputStream());
                     this.category    = new JSONObject(response);
                 }
-            } catch (JSONException | IOException e) {
+            } catch (JSONException e) {
                 e.printStackTrace();
                 this.category = null;
-            } finally {
-                if(conn != null) {
-                    conn.disconnect();
-                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.category = null;
+                abort(conn);
             }
         }
 
@@ -547,18 +991,18 @@ public class BeaconClient {
 
                 sendPostRequest(params, conn);
                 this.rcode = conn.getResponseCode();
+                String res  = readResponse(conn);
                 if (this.rcode == 200) {
-                    String res  = readResponse(conn.getInputStream());
                     obj         = new JSONObject(res);
                     this.key    = obj.getString("key");
                 }
-            } catch (JSONException | IOException e) {
+            } catch (JSONException e) {
                 e.printStackTrace();
                 this.rcode = 500; // Internal Server Error
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
-                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                this.rcode = 500; // Internal Server Error
+                abort(conn);
             }
         }
 
@@ -573,7 +1017,195 @@ public class BeaconClient {
         public String   getApiKey()     { return this.key;   }
     }
 
-    private boolean isOnline(Context c) {
+    /**
+     * The last response of a request as text on disk, with the validators
+     * the server sent for it in a ".meta" file next to it. Small responses
+     * are also kept parsed in memory, see load().
+     */
+    private static class Snapshot {
+        private final String    filename;
+        private File            file;
+        private File            metaFile;
+        private JSONArray       array;
+        private String          etag;
+        private String          lastModified;
+
+        Snapshot(String filename) {
+            this.filename = filename;
+        }
+
+        /**
+         * Reads the validators from disk the first time it's called.
+         */
+        synchronized void init(Context c) {
+            if (file != null) {
+                return;
+            }
+            file        = new File(c.getFilesDir() + filename);
+            metaFile    = new File(c.getFilesDir() + filename + ".meta");
+            try {
+                if (file.exists() && metaFile.exists()) {
+                    String[] lines  = readFile(metaFile).split("\n", -1);
+                    etag            = lines[0].isEmpty() ? null : lines[0];
+                    lastModified    = lines.length < 2 || lines[1].isEmpty() ? null : lines[1];
+                }
+            } catch (IOException e) {
+                Log.e("BeaconClient", "Reading " + filename + " failed with: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Reads and parses the saved response the first time it's called.
+         *
+         * @return The saved response, or null if there is none.
+         */
+        synchronized JSONArray load(Context c) {
+            if (file != null) {
+                return array;
+            }
+            init(c);
+            try {
+                if (file.exists()) {
+                    array = new JSONArray(readFile(file));
+                }
+            } catch (IOException | JSONException e) {
+                Log.e("BeaconClient", "Reading " + filename + " failed with: " + e.getMessage());
+                array = null;
+            }
+            if (array == null) {
+                forgetValidators();
+            }
+            return array;
+        }
+
+        synchronized JSONArray getArray() {
+            return array;
+        }
+
+        /**
+         * Adds the validators of the saved response to the request.
+         */
+        synchronized void addValidators(HttpURLConnection conn) {
+            if (etag != null) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+        }
+
+        /**
+         * Replaces the saved response with a new one from the server,
+         * parsed in memory.
+         */
+        synchronized void store(HttpURLConnection conn, String response, JSONArray parsed) {
+            array = parsed;
+            try {
+                // the old validators must not be used with the new response
+                metaFile.delete();
+                writeFile(file, response);
+                saveValidators(conn);
+            } catch (IOException e) {
+                Log.e("BeaconClient", "Saving " + filename + " failed with: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Replaces the saved response with the body of the connection,
+         * copied to disk without holding it in memory. The old response
+         * is kept if the download fails.
+         */
+        void receive(HttpURLConnection conn) throws IOException {
+            File            tmp;
+            InputStream     in;
+            OutputStream    out;
+            byte[]          buffer;
+            int             n;
+
+            tmp     = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+            in      = conn.getInputStream();
+            out     = new FileOutputStream(tmp);
+            buffer  = new byte[8192];
+            try {
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } catch (IOException e) {
+                out.close();
+                tmp.delete();
+                throw e;
+            } finally {
+                in.close();
+            }
+            out.close();
+
+            synchronized (this) {
+                metaFile.delete();
+                if (!tmp.renameTo(file)) {
+                    tmp.delete();
+                    forgetValidators();
+                    throw new IOException("Renaming " + tmp + " failed");
+                }
+                array = null;
+                saveValidators(conn);
+            }
+        }
+
+        /**
+         * Decodes the saved response as beacons and hands them to the
+         * consumer.
+         *
+         * @return The number of beacons, or -1 if there is no saved
+         *         response or it's malformed.
+         */
+        int replay(BeaconRecord.Consumer consumer) {
+            Reader reader;
+
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            } catch (IOException e) {
+                return -1;
+            }
+            try {
+                return BeaconRecordReader.read(reader, consumer);
+            } catch (IOException | RuntimeException e) {
+                Log.e("BeaconClient", "Decoding " + filename + " failed with: " + e.getMessage());
+                synchronized (this) {
+                    forgetValidators();
+                }
+                return -1;
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // nothing more to read
+                }
+            }
+        }
+
+        private void saveValidators(HttpURLConnection conn) {
+            etag            = conn.getHeaderField("ETag");
+            lastModified    = conn.getHeaderField("Last-Modified");
+            try {
+                writeFile(metaFile, (etag == null ? "" : etag) + "\n"
+                        + (lastModified == null ? "" : lastModified));
+            } catch (IOException e) {
+                Log.e("BeaconClient", "Saving " + filename + " failed with: " + e.getMessage());
+            }
+        }
+
+        private void forgetValidators() {
+            etag            = null;
+            lastModified    = null;
+            metaFile.delete();
+        }
+    }
+
+    /**
+     * Returns true if the device has a network, the requests are not
+     * sent without one.
+     */
+    protected boolean isOnline(Context c) {
         ConnectivityManager cm =
                 (ConnectivityManager) c.getSystemService(Context.CONNECTIVITY_SERVICE);
         NetworkInfo netInfo = cm.getActiveNetworkInfo();
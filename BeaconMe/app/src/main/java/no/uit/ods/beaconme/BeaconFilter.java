@@ -32,15 +32,11 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 /*
 *
@@ -51,15 +47,14 @@ import java.util.concurrent.TimeUnit;
 */
 public class BeaconFilter extends ActionBarActivity implements AbsListView.OnItemClickListener {
     private BeaconScannerService cService;
+    private BeaconScannerService.BeaconListener listener;
     final ArrayList<testBeacon> finalResultList = new ArrayList<>();
     ArrayList<notificationItem> notList = new ArrayList<>();
     int notifyID = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        String filename = "SavedCat.sav";
         JSONArray catArray;
-        ArrayList<testBeacon> beaconList;
         ArrayList<testCategory> categoryList;
         final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
 
@@ -80,21 +75,15 @@ public class BeaconFilter extends ActionBarActivity implements AbsListView.OnIte
         // Get the checked items from the BeaconCategory class
         String[] checkedArray = b.getStringArray("checkedItems");
 
-        // Get the JSON category array from disk
-        catArray = readFromDisk(filename);
-
-        // Get a list of all beacons from the back-end system, if it fails a local version will be used
-        // It also converts it to a String array so it's easier to work with
-        JSONArray beaconArray = getBeacons();
-
-        // Convert the received JSONArray to a String array with the beacons relevant information
-        beaconList = convertBeacon(beaconArray, "category_id","name", "mac", "uuid", "major", "minor", "url");
+        // Get the JSON category array saved by the client
+        catArray = BeaconClient.getInstance().getSavedCategories(getBaseContext());
 
         // Convert the received JSONArray to a String array
         categoryList = convertCat(catArray, "id", "topic");
 
-        // Get the filtered beacons back in a list (this way we still got access to relevant information)
-        final ArrayList<testBeacon> resultList = filterResults(checkedArray, categoryList, beaconList);
+        // Get the beacons in the checked categories from the back-end system, if it fails a local
+        // version will be used. They are indexed on MAC for matching against the nearby beacons
+        final BeaconFilterEngine<testBeacon> engine = filterResults(checkedArray, categoryList);
 
         ArrayAdapter<String> outputAdapter = new ArrayAdapter<>(this, R.layout.beacon_selected_results, R.id.selectedName, checkedArray);
         final ResultAdapter resultAdapter = new ResultAdapter(this, finalResultList);
@@ -104,53 +93,78 @@ public class BeaconFilter extends ActionBarActivity implements AbsListView.OnIte
         view2.setOnItemClickListener(this);
         registerForContextMenu(view2);
 
-        // With the help of a scheduler we get updated beacons from the service
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        final Runnable scan = new Runnable() {
+        // The service pushes the changes to the nearby beacons, the results in range are kept up to date
+        final HashSet<testBeacon> shown = new HashSet<>();
+        final BeaconFilterEngine.Match<testBeacon> inRange = new BeaconFilterEngine.Match<testBeacon>() {
             @Override
-            public void run() {
-                // Need to clear the results to remove beacons that are not in the service list (not in range)
-                finalResultList.clear();
-
-                for (testBeacon t : resultList) {
-                    for (int i = 0; i < cService.getList().getCount(); i++) {
-                        if (t.getMac().equals(cService.getList().getItem(i).getAddress())) {
-                            if(!finalResultList.contains(t)) {
-                                t.distance = cService.getList().getItem(i).getDistance();
-                                try {
-                                    if (cService.getAssociationList().getAssociation(cService.getList().getItem(i)) != null) {
-                                        t.association = cService.getAssociationList().getAssociation(cService.getList().getItem(i));
-                                    }
-                                } catch (JSONException e) {
-                                    e.printStackTrace();
-                                }
-                                if (preferences.getBoolean("result_notifications", true) &&
-                                                            preferences.getBoolean("all_notifications", true)) {
-                                    notification(t);
-                                }
-
-                                finalResultList.add(t);
-                            }
-                        }
+            public void onMatch(testBeacon t, Beacon beacon) {
+                t.distance = beacon.getDistance();
+                try {
+                    String association = cService.getAssociationList().getAssociation(beacon);
+                    if (association != null) {
+                        t.association = association;
                     }
+                } catch (JSONException e) {
+                    e.printStackTrace();
                 }
+                if (preferences.getBoolean("result_notifications", true) &&
+                                            preferences.getBoolean("all_notifications", true)) {
+                    notification(t);
+                }
+
+                if (shown.add(t)) {
+                    finalResultList.add(t);
+                }
+            }
+        };
+        final BeaconFilterEngine.Match<testBeacon> outOfRange = new BeaconFilterEngine.Match<testBeacon>() {
+            @Override
+            public void onMatch(testBeacon t, Beacon beacon) {
+                if (shown.remove(t)) {
+                    finalResultList.remove(t);
+                }
+            }
+        };
+        listener = new BeaconScannerService.BeaconListener() {
+            @Override
+            public void onBeaconsChanged(final BeaconDelta delta) {
+                // the result list belongs to the adapter, so it's changed on the UiThread
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
+                        for (Beacon b : delta.getEntered())
+                            engine.match(b, inRange);
+                        for (Beacon b : delta.getUpdated())
+                            engine.match(b, inRange);
+                        for (Beacon b : delta.getExited())
+                            engine.match(b, outOfRange);
                         resultAdapter.notifyDataSetChanged();
                     }
                 });
             }
-
         };
-        final ScheduledFuture scannerHandle = scheduler.scheduleAtFixedRate(scan, 5000, 5000, TimeUnit.MILLISECONDS);
-        scheduler.schedule(new Runnable() {
-            @Override
-            public void run() {
-                scannerHandle.cancel(true);
-            }
-        }, 60 * 60, TimeUnit.SECONDS);
-        scan.run();
+        cService.addListener(listener, 5000);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        cService.removeListener(listener);
+    }
+
+    /**
+     * The results are shown, ask the scanner service to keep the nearby beacons fresh.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        cService.subscribe();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        cService.unsubscribe();
     }
 
     /**
@@ -346,10 +360,11 @@ public class BeaconFilter extends ActionBarActivity implements AbsListView.OnIte
                 String ass      = inputAss.getText().toString();
 
                 try {
-                    for (int i = 0; i < cService.getList().getCount(); i++) {
-                        if (finalResultList.get(beaconNumber).getMac().equals(cService.getList().getItem(i).getAddress())) {
+                    BeaconList nearby = cService.getList();
+                    for (int i = 0; i < nearby.getCount(); i++) {
+                        if (finalResultList.get(beaconNumber).getMac().equals(nearby.getItem(i).getAddress())) {
                             try {
-                                cService.getAssociationList().add(cService.getList().getItem(i), name, ass, notify);
+                                cService.getAssociationList().add(nearby.getItem(i), name, ass, notify);
                             } catch (Exception e) {
                                 Log.e("BEaconScanListActivity", "Failed to add assocaition: " + e.getMessage());
                             }
@@ -372,72 +387,6 @@ public class BeaconFilter extends ActionBarActivity implements AbsListView.OnIte
         alert.show();
     }
 
-    /**
-     * This method gets a JSONArray of beacons from the back-end system and converts it to
-     * a string array, it also saves the array on disk for backup or uses the backup if fail
-     *
-     * @return An array with all beacons from the back-end system
-     */
-    private JSONArray getBeacons() {
-        String tempJSON;
-        String filename = "SavedBeacons.sav";
-
-        BeaconClient bc = BeaconClient.getInstance();
-
-        // Get a JSONArray from the server with the categories
-        JSONArray beaconArray = null;
-        try {
-            beaconArray = bc.getBeacons("", "", 0, "", "", "", "", getBaseContext());
-        } catch (InterruptedException e) {
-            Log.e("BeaconFilter", "getBeacons from back-end system failed with: " + e.getMessage());
-        }
-
-        // Try to save the beacon array to disk, so we have some categories locally
-        // in case of no network or other issues
-        if (beaconArray != null) {
-            tempJSON = beaconArray.toString();
-            saveToDisk(tempJSON, filename);
-        } else {
-            beaconArray = readFromDisk(filename);
-        }
-
-        return beaconArray;
-    }
-
-
-    /**
-     * This method converts a JSONArray of beacons to an ArrayList with the relevant information.
-     *
-     * @param array The JSON array to read from
-     * @param ID The beacon ID
-     * @param name The beacon name
-     * @param mac The beacon mac address
-     * @param uuid The beacon uuid
-     * @param major The beacon major
-     * @param minor The beacon minor
-     * @param url The Beacon association
-     *
-     * @return List of beacon objects
-     */
-    private ArrayList<testBeacon> convertBeacon(JSONArray array, String ID, String name, String mac, String uuid, String major, String minor, String url) {
-        ArrayList<testBeacon> List = new ArrayList<>();
-        if (array != null) {
-            for (int i = 0; i < array.length(); i++) {
-                try {
-                    testBeacon tmpBeacon = new testBeacon(((JSONObject) array.get(i)).getInt(ID),((JSONObject) array.get(i)).get(name).toString(), "",
-                            ((JSONObject) array.get(i)).get(mac).toString(), ((JSONObject) array.get(i)).get(uuid).toString(),
-                            ((JSONObject) array.get(i)).get(major).toString(), ((JSONObject) array.get(i)).get(minor).toString(), 0, ((JSONObject) array.get(i)).get(url).toString());
-
-                    List.add(tmpBeacon);
-                } catch (JSONException e) {
-                    Log.e("BeaconFilter", "JSON object retrieval failed with: " + e.getMessage());
-                }
-            }
-        }
-        return List;
-    }
-
-
     /**
      * This method converts a JSONArray of categories to an ArrayList with the relevant information.
      *
@@ -464,90 +413,48 @@ public class BeaconFilter extends ActionBarActivity implements AbsListView.OnIte
     }
 
 
-    /**
-     * Saves a string in a file on disk
-     *
-     * @param array The array to read from.
-     * @param filename The filname to save to.
-     */
-    private void saveToDisk(String array, String filename) {
-        File f = new File(getApplicationContext().getFilesDir() + filename);
-        try {
-            // Make sure we write to a "clean" file
-            f.delete();
-
-            // Make a file to save to, then transfer the array to the file
-            FileWriter writer = new FileWriter(f);
-            writer.write(array);
-
-            // Closes the transfer AND the file
-            writer.close();
-        } catch (Exception e) {
-            Log.e("BeaconFilter", "Save beacons to disk failed with: " + e.getMessage());
-        }
-    }
 
 
     /**
-     * Reads from disk and returns a char[] buffer
+     * This method does the actual filtering. The checked topics are turned into a set of category
+     * ids, and the beacons in these categories are streamed from the back-end system into the
+     * engine. The client keeps a copy on disk for backup and uses it if the fetch fails. Beacons
+     * in other categories are never kept in memory.
      *
-     * @param filename The filename to read from
+     * @param checkedArray The array with selected categories received from the category activity.
+     * @param categoryList The list with all the categories from the back-end system.
      *
-     * @return A string read from the file on disk
+     * @return The engine matching the beacons in the checked categories with the nearby ones.
      */
-    private JSONArray readFromDisk(String filename) {
-        char[] buffer = null;
-        JSONArray tmpArray = null;
-
-        // Read the local file to get the "backup" array
-        try {
-            File f = new File(getApplicationContext().getFilesDir() + filename);
-
-            FileReader reader = new FileReader(f);
-            buffer = new char[((int) f.length())];
-            reader.read(buffer);
-            reader.close();
-        } catch (Exception e) {
-            Log.e("BeaconFilter", "Get beacons from disk failed with: " + e.getMessage());
+    private BeaconFilterEngine<testBeacon> filterResults(String[] checkedArray, ArrayList<testCategory> categoryList) {
+        HashSet<String> checked = new HashSet<>(Arrays.asList(checkedArray));
+        final HashMap<Integer, String> topics = new HashMap<>();
+        for (testCategory c : categoryList) {
+            if (checked.contains(c.getTopic())) {
+                topics.put(c.getID(), c.getTopic());
+            }
         }
 
-        // Convert the String read from disk back to a JSONArray
+        final BeaconFilterEngine<testBeacon> engine = new BeaconFilterEngine<>(topics.keySet());
+        BeaconClient bc = BeaconClient.getInstance();
         try {
-            tmpArray = new JSONArray(new String(buffer));
-        } catch (JSONException e) {
-            Log.e("Category", "Convert to JSONArray failed with: " + e.getMessage());
-        }
-
-        return tmpArray;
-    }
-
-
-    /**
-     * This method does the actual filtering.
-     *
-     * @param checkedArray The array with selected categories received from the category activity.
-     * @param categoryList The list with all the categories from the back-end system.
-     * @param beaconList The list with all the beacons from the back-end system.
-     *
-     * @return A list with beacon objects.
-     */
-    private ArrayList<testBeacon> filterResults(String[] checkedArray, ArrayList<testCategory> categoryList, ArrayList<testBeacon> beaconList) {
-        // Filtrate the checked items from the category list
-        ArrayList<testBeacon> resultList = new ArrayList<>();
-
-        for (int i = 0; i < checkedArray.length; i++) {
-            for (testCategory c : categoryList) {
-                if ((c.getTopic()).equals(checkedArray[i])) {
-                    for (testBeacon t : beaconList) {
-                        if ((c.getID()).equals(t.getCatID())) {
-                            t.catName = c.getTopic();
-                            resultList.add(t);
-                        }
+            bc.streamBeacons(getBaseContext(), new BeaconRecord.Consumer() {
+                @Override
+                public void onBeacon(BeaconRecord record) {
+                    if (engine.accepts(record.getCategoryId())) {
+                        engine.add(record.getCategoryId(), record.getMac(),
+                                new testBeacon(record.getCategoryId(), record.getName(), topics.get(record.getCategoryId()),
+                                        record.getMac(), UuidDictionary.shared(record.getUuid()),
+                                        record.getMajor(), record.getMinor(), 0,
+                                        record.getUrl()));
                     }
                 }
-            }
+            });
+        } catch (InterruptedException e) {
+            Log.e("BeaconFilter", "getBeacons from back-end system failed with: " + e.getMessage());
         }
-        return resultList;
+
+        return engine;
     }
 
 
@@ -0,0 +1,101 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  A beacon as registered in the cloud service, decoded from the
+ *  /api_get_beacon response by BeaconRecordReader. <br>
+ *
+ *  The reader hands the same instance to the consumer for every beacon
+ *  in the response, so a consumer that keeps beacons must copy the
+ *  fields it needs. This keeps the memory used while reading down to
+ *  one record, however large the response is.
+ */
+public class BeaconRecord {
+    private int     categoryId;
+    private String  name;
+    private String  mac;
+    private String  uuid;
+    private String  major;
+    private String  minor;
+    private String  url;
+
+    /**
+     * Receives the beacons as they are decoded.
+     */
+    public interface Consumer {
+        /**
+         * Called once per beacon, in the order of the response.
+         *
+         * @param record The beacon, only valid until the method returns.
+         */
+        void onBeacon(BeaconRecord record);
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMac() {
+        return mac;
+    }
+
+    public String getUuid() {
+        return uuid;
+    }
+
+    public String getMajor() {
+        return major;
+    }
+
+    public String getMinor() {
+        return minor;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    void setMac(String mac) {
+        this.mac = mac;
+    }
+
+    void setUuid(String uuid) {
+        this.uuid = uuid;
+    }
+
+    void setMajor(String major) {
+        this.major = major;
+    }
+
+    void setMinor(String minor) {
+        this.minor = minor;
+    }
+
+    void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Resets the fields before the next beacon is decoded into the record.
+     */
+    void clear() {
+        categoryId  = 0;
+        name        = null;
+        mac         = null;
+        uuid        = null;
+        major       = null;
+        minor       = null;
+        url         = null;
+    }
+}
@@ -0,0 +1,108 @@
+package no.uit.ods.beaconme;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ *  Streaming decoder for the beacon array returned by /api_get_beacon. <br>
+ *
+ *  The response is pulled token by token with a JsonReader and each
+ *  beacon object is decoded straight into a BeaconRecord, without
+ *  building the response String or a JSONArray tree first. Fields the
+ *  app doesn't use are skipped. <br>
+ *
+ *  Values are read as the server sends them, numbers and booleans are
+ *  turned into Strings and null gives null, except the category id
+ *  which is 0 when missing.
+ */
+public class BeaconRecordReader {
+
+    /**
+     * Reads a JSON array of beacons and hands each to the consumer.
+     * The reader is not closed.
+     *
+     * @param in Reader positioned at the start of the array.
+     * @param consumer The Consumer receiving the beacons.
+     * @return The number of beacons read.
+     * @throws IOException If reading fails or the JSON is malformed.
+     */
+    public static int read(Reader in, BeaconRecord.Consumer consumer) throws IOException {
+        JsonReader      reader;
+        BeaconRecord    record;
+        int             count;
+
+        reader  = new JsonReader(in);
+        record  = new BeaconRecord();
+        count   = 0;
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            record.clear();
+            readBeacon(reader, record);
+            consumer.onBeacon(record);
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    private static void readBeacon(JsonReader reader, BeaconRecord record) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("category_id".equals(field)) {
+                String id = readString(reader);
+                record.setCategoryId(id == null || id.isEmpty() ? 0 : parseInt(id));
+            }
+            else if ("name".equals(field))
+                record.setName(readString(reader));
+            else if ("mac".equals(field))
+                record.setMac(readString(reader));
+            else if ("uuid".equals(field))
+                record.setUuid(readString(reader));
+            else if ("major".equals(field))
+                record.setMajor(readString(reader));
+            else if ("minor".equals(field))
+                record.setMinor(readString(reader));
+            else if ("url".equals(field))
+                record.setUrl(readString(reader));
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a scalar value as a String, nested values are skipped.
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid category id: " + value);
+        }
+    }
+}
@@ -34,10 +34,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  *  Implements the activity that shows the list of associations made on
@@ -50,6 +48,7 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
     private BeaconScannerService    mService;
     private BeaconScanListAdapter   mAdapter;
     private BeaconList              mList;
+    private BeaconScannerService.BeaconListener listener;
     private boolean                 initialized;
     private boolean                 sort = false;
     ListView                        mListView;
@@ -93,12 +92,28 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
         return true;
     }
 
+    /**
+     * The list is shown, ask the scanner service to keep it fresh.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mService.subscribe();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mService.unsubscribe();
+    }
+
     /**
      * Upon onDestroy all associations are commited to disk
      * to make sure none is lost.
      */
     public void onDestroy () {
         super.onDestroy();
+        mService.removeListener(listener);
         try {
             mService.getAssociationList().commit();
         } catch (IOException e) {
@@ -107,8 +122,8 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
     }
 
     /**
-     * This function sets up the listview and schedules
-     * periodical updates to the listview. Context menu
+     * This function sets up the listview and registers for
+     * the changes to the service list. Context menu
      * are registered.
      */
     public void createListView () {
@@ -124,42 +139,29 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
         mListView.setOnItemClickListener(this);
         registerForContextMenu(mListView);
 
-        // schedule periodical updating of the list based on the service- list
-        // by creating a runnable which is scheduled at fixed rate
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        final Runnable scan = new Runnable() {
+        // the service pushes the changes to its list, at most once per scan interval
+        listener = new BeaconScannerService.BeaconListener() {
             @Override
-            public void run() {
-                BeaconList sList = mService.getList();
-
-                // iterate all beacons in service list and add them to the
-                // recordable list
-                for (int i = 0; i < sList.getCount(); i++) {
-                    Beacon beacon = sList.getItem(i);
-                    if (!mList.contains(beacon)) {
-                        mList.addDevice(beacon);
-                    }
-                }
-                if (sort)
-                    mList.sort();
-                // finally update the view via the UiThread which is the adapter owner
+            public void onBeaconsChanged(final BeaconDelta delta) {
+                // the list belongs to the adapter, so it's updated via the UiThread
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
+                        // add the new beacons to the recordable list, and update the
+                        // distance of the ones recorded. Beacons that leave are kept
+                        for (Beacon b : delta.getEntered())
+                            mList.put(b);
+                        for (Beacon b : delta.getUpdated())
+                            mList.put(b);
+                        if (sort)
+                            mList.sort();
                         mAdapter.notifyDataSetChanged();
                     }
                 });
             }
         };
         int updateInterval = Integer.valueOf(PreferenceManager.getDefaultSharedPreferences(this).getString("sync_settings", "2500"));
-        final ScheduledFuture scannerHandle = scheduler.scheduleAtFixedRate(scan, updateInterval, updateInterval, TimeUnit.MILLISECONDS);
-        scheduler.schedule(new Runnable() {
-            @Override
-            public void run() {
-                scannerHandle.cancel(true);
-            }
-        }, 60 * 60, TimeUnit.SECONDS);
-        scan.run();
+        mService.addListener(listener, updateInterval);
     }
 
     /**
@@ -343,6 +345,17 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
         final BeaconClient bClient = BeaconClient.getInstance();
         JSONObject beaconInfoBackend   = null;
 
+        // get the pressed beacon from the local list
+        final Beacon beacon = mList.getItem(beaconNumber);
+        if (beacon == null) {
+            Log.e("BeaconScanListActivity", "Failed to find the pressed beacon");
+            return;
+        }
+
+        // start fetching the beacon information, it runs while the categories are fetched
+        Future<JSONArray> beaconRequest = bClient.getBeaconsAsync("", beacon.getUuid(), 0, "", "",
+                String.valueOf(beacon.getMajor()), String.valueOf(beacon.getMinor()), getBaseContext(), null);
+
         // Fetch categories from back- end, if this fails, notify user and abort
         final JSONArray categories     = bClient.getCategories(this.getBaseContext());
         if (categories == null) {
@@ -375,23 +388,20 @@ public class BeaconScanListActivity extends Activity implements AbsListView.OnIt
         // create a textview to put information about the beacon to
         TextView textView = ((TextView) layout.findViewById(R.id.beacon_info));
         StringBuilder beaconInfo = new StringBuilder();
-        // get the beacon from the local list and insert data from beacon to view
-        final Beacon beacon = mList.getItem(beaconNumber);
-        if (beacon != null) {
-            String info = "Beacon ID:\n" + beacon.getAddress() +
-                    "\nUUID:\n" + beacon.getUuid() +
-                    "\nMajor: " + beacon.getMajor() +
-                    ", Minor: " + beacon.getMinor();
-            beaconInfo.append(info);
-        }
-        else {
-            Log.e("BeaconScanListActivity", "Failed to find the pressed beacon");
-            return;
-        }
+        // insert data from beacon to view
+        beaconInfo.append("Beacon ID:\n" + beacon.getAddress() +
+                "\nUUID:\n" + beacon.getUuid() +
+                "\nMajor: " + beacon.getMajor() +
+                ", Minor: " + beacon.getMinor());
 
         // attempt to get beaconinformation from the backend system
-        final JSONArray beaconHits;
-        beaconHits = bClient.getBeacons("", beacon.getUuid(), 0, "", "", String.valueOf(beacon.getMajor()), String.valueOf(beacon.getMinor()), getBaseContext());
+        JSONArray hits = null;
+        try {
+            hits = beaconRequest.get();
+        } catch (ExecutionException e) {
+            Log.e("BeaconScanListActivity", "assRemoteAdd() failed fetching beacon with: " + e.getMessage());
+        }
+        final JSONArray beaconHits = hits;
 
         // append beaconinfo to the alert dialogue view
         if (beaconHits != null && beaconHits.length() > 0) {
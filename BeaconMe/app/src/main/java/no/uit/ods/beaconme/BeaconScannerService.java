@@ -6,36 +6,100 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.widget.Toast;
 import org.json.JSONException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
  *  This class implements a scanner service that maintains a list of
  *  nearby beacons in a LeDeviceList class list. <br>
  *
+ *  The scan callback writes the raw sightings into a BeaconIngest, which
+ *  drops the packets that are not beacons, or not in the allow-list of
+ *  UUIDs in settings, before anything is allocated for them. The
+ *  handler thread drains them in batches into the list, it is the only
+ *  thread modifying the list. After each batch a read only snapshot of
+ *  the list is published for the clients. <br>
+ *
+ *  The time between scans is chosen by a ScanSchedulePolicy. It grows
+ *  while the beacons nearby are stable and no client is subscribed,
+ *  and goes back to the minimum when beacons appear or move. <br>
+ *
+ *  At the end of each scan the changes to the list are published to
+ *  the registered BeaconListeners as a BeaconDelta, on the handler
+ *  thread. A listener can ask for the changes to be collected and
+ *  delivered at most once per interval. <br>
+ *
+ *  The raw sightings can be recorded into a capture file, and a capture
+ *  can be replayed in place of the scanner through the same path, see
+ *  SightingRecorder and SightingReplay. With the replay setting on, a
+ *  capture named replay.cap in the files directory is replayed when the
+ *  service starts. The scanner is stopped while a capture is replayed,
+ *  the sighting buffer takes one producer at a time. The scan callback
+ *  takes no lock, it checks that no replay is running and the replay
+ *  waits for a callback that checked before it started. The sightings
+ *  are recorded as they are drained, on the handler thread. <br>
+ *
+ *  The ingest counts ScannerMetrics on the way to the list, the service
+ *  adds how long each scan ran past its window. getMetrics() returns
+ *  them for the metrics screen. <br>
+ *
  *  The class checks for both BT and BTLE support. <br>
  *
  *  Author: Espen Mæland Wilhelmsen, espen.wilhelmsen@gmail.com
  */
 public class BeaconScannerService extends Service {
+    private static final int SIGHTING_CAPACITY = 4096;
+    private static final int DRAIN_DELAY       = 200;   // In milliseconds
+    private static final int REPLAY_WAIT       = 1;     // In milliseconds
+    private static final String CAPTURE_FILE   = "sightings.cap";
+    private static final String REPLAY_FILE    = "replay.cap";
     private Handler handler;
     private BluetoothAdapter btAdapter;
-    private BeaconList btleDeviceList;
     private BeaconAssociationList associationList;
     private int scanPeriod;
     private ScheduledExecutorService scheduler;
+    private ScanSchedulePolicy policy;
+    // The next scan, written on the scheduler thread only
+    private volatile ScheduledFuture<?> nextScan;
+    // The listeners, used by the handler thread only
+    private final ArrayList<Subscription> subscriptions = new ArrayList<>();
+    // The subscription of each registered listener, changed by the clients on any thread
+    private final ConcurrentHashMap<BeaconListener, Subscription> listeners = new ConcurrentHashMap<>();
+    // Sightings from the scan callback on their way to the list, drained on the handler thread
+    private BeaconIngest ingest;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    // When the running scan should end, in uptime milliseconds
+    private volatile long scanDeadline;
+    // Records the sightings when enabled in settings, else null
+    private volatile SightingRecorder recorder;
+    // Guards the handoff between the scanner and a replay, not taken by the scan callback
+    private final Object scanLock = new Object();
+    // The thread replaying a capture in place of the scanner, else null
+    private volatile Thread replay;
+    // True while the scan callback runs, a replay waits for it before producing
+    private volatile boolean inCallback;
+    // True while the scanner is started, used by the handler thread only
+    private boolean scanning;
     // Binder given to clients
     private final IBinder mBinder = new LocalBinder();
 
@@ -44,6 +108,68 @@ public class BeaconScannerService extends Service {
         super();
     }
 
+    /**
+     * Receives the changes to the beacons nearby.
+     */
+    public interface BeaconListener {
+        /**
+         * Called on the scanner thread with the changes since the last
+         * call, it should return quickly. Views must be updated on the
+         * UI thread.
+         *
+         * @param delta The beacons entered, updated and exited.
+         */
+        void onBeaconsChanged(BeaconDelta delta);
+    }
+
+    /**
+     * A registered listener and the changes waiting to be delivered to it.
+     */
+    private class Subscription implements Runnable {
+        final BeaconListener        listener;
+        final long                  interval;
+        final BeaconDelta.Builder   pending = new BeaconDelta.Builder();
+        long                        lastDelivery = -1;
+        boolean                     posted;
+        // set by removeListener() on the client thread, checked before each delivery
+        volatile boolean            cancelled;
+
+        Subscription(BeaconListener listener, long interval) {
+            this.listener = listener;
+            this.interval = interval;
+        }
+
+        /**
+         * Delivers the changes now if the interval has passed, else
+         * makes sure they are delivered when it does.
+         */
+        void publish() {
+            if (pending.isEmpty() || posted)
+                return;
+            long due = lastDelivery + interval;
+            if (lastDelivery < 0 || SystemClock.uptimeMillis() >= due)
+                run();
+            else {
+                posted = true;
+                handler.postAtTime(this, due);
+            }
+        }
+
+        // delivers the changes, runs on the handler thread
+        @Override
+        public void run() {
+            posted = false;
+            if (pending.isEmpty() || cancelled)
+                return;
+            lastDelivery = SystemClock.uptimeMillis();
+            try {
+                listener.onBeaconsChanged(pending.build(ingest.getSnapshot()));
+            } catch (RuntimeException e) {
+                Log.e("BeaconScanService", "Beacon listener failed: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Class used for the client Binder.  Because we know this service always
      * runs in the same process as its clients, we don't need to deal with IPC.
@@ -92,6 +218,14 @@ public class BeaconScannerService extends Service {
      */
     @Override
     public void onCreate () {
+        // errors of the core classes go to the Android log
+        BeaconLog.setSink(new BeaconLog.Sink() {
+            @Override
+            public void e(String tag, String message) {
+                Log.e(tag, message);
+            }
+        });
+
         HandlerThread thread = new HandlerThread("ServiceStartArguments", 10);
         thread.start();
 
@@ -103,9 +237,24 @@ public class BeaconScannerService extends Service {
         // create the handler used for timer aborted scanning...
         handler = new Handler(thread.getLooper());
 
-        // Set the default scan interval in ms.
-        scanPeriod = Integer.valueOf(PreferenceManager.getDefaultSharedPreferences(this).getString("sync_settings", "2500"));
-Log.e("AAAAAAA", String.valueOf(scanPeriod));
+        // Set the default scan interval in ms, and the bounds of the time between scans
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        scanPeriod = Integer.valueOf(prefs.getString("sync_settings", "2500"));
+        long minGap = Long.valueOf(prefs.getString("scan_gap_min", "200"));
+        long maxGap = Long.valueOf(prefs.getString("scan_gap_max", "10000"));
+        policy = new ScanSchedulePolicy(scanPeriod - 200, minGap, Math.max(minGap, maxGap),
+                Clock.SYSTEM);
+
+        // initialize the beacon device list, with the RSSI filter and distance model chosen in settings
+        String filter = prefs.getString("rssi_filter", "kalman");
+        String model  = prefs.getString("distance_model", "curvefit");
+        DistanceModel.setDefault(DistanceModel.create(model));
+        long timeout  = Long.valueOf(prefs.getString("beacon_timeout", "10000"));
+        ingest = new BeaconIngest(new BeaconList(RssiFilter.create(filter), timeout, Clock.SYSTEM),
+                SIGHTING_CAPACITY);
+        // only the beacons with these UUIDs reach the list, all of them if empty
+        ingest.getPrefilter().setAllowList(prefs.getString("uuid_allow_list", ""));
+
         // Set up the bluetooth adapter through manager
         BluetoothManager btMan = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
         btAdapter = btMan.getAdapter();
@@ -123,11 +272,20 @@ Log.e("AAAAAAA", String.valueOf(scanPeriod));
             startActivity(enableBtIntent);
         }
 
-        // initialize the beacon device list
-        btleDeviceList = new BeaconList();
-
         // set up the association list
-        associationList = new BeaconAssociationList(getApplicationContext());
+        associationList = new BeaconAssociationList(new File(getFilesDir(), "associations"));
+
+        if (prefs.getBoolean("record_sightings", false)) {
+            try {
+                recorder = new SightingRecorder(new File(getFilesDir(), CAPTURE_FILE));
+                ingest.setRecorder(recorder);
+            } catch (IOException e) {
+                Log.e("BeaconScanService", "Failed to create capture: " + e.getMessage());
+            }
+        }
+        File capture = new File(getFilesDir(), REPLAY_FILE);
+        if (prefs.getBoolean("replay_capture", false) && capture.exists())
+            startReplay(capture, 1.0);
 
         schedulePeriodicalScan();
     }
@@ -154,16 +312,44 @@ Log.e("AAAAAAA", String.valueOf(scanPeriod));
     @Override
     public void onDestroy () {
         scheduler.shutdown();
+        stopReplay();
+        if (recorder != null) {
+            ingest.setRecorder(null);
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                Log.e("BeaconScanService", "Failed to save capture: " + e.getMessage());
+            }
+        }
+        try {
+            associationList.close();
+        } catch (IOException e) {
+            Log.e("BeaconScanService", "Failed to save association list: " + e.getMessage());
+        }
         Log.i("BeaconScanService", "onDestroy()");
     }
 
     /**
-     * Returns the beacon list from the service.
+     * Returns the beacon list from the service. <br>
+     *
+     * The list is a read only snapshot taken after the last batch of
+     * sightings, it does not change after it's returned. Callers should
+     * fetch it once and use that instance while iterating.
      *
      * @return Returns a list with all beacons in proximity.
      */
     public BeaconList getList () {
-        return btleDeviceList;
+        return ingest.getSnapshot();
+    }
+
+    /**
+     * Returns the number of sightings dropped because the scan callback
+     * delivered them faster than they could be added to the list.
+     *
+     * @return long with the number of dropped sightings.
+     */
+    public long getDroppedSightings() {
+        return ingest.getDropped();
     }
 
     public BeaconAssociationList getAssociationList() {
@@ -171,49 +357,358 @@ Log.e("AAAAAAA", String.valueOf(scanPeriod));
     }
 
     /**
-     * Run a single scan, and add the beacons to the beacon list
-     * in the service.
+     * Tells the service a client is showing the beacon list, so it's
+     * kept fresh. Scans run at the shortest interval until the client
+     * calls unsubscribe().
      */
-    private void scan() {
-        handler.postDelayed(new Runnable() {
+    public void subscribe() {
+        policy.subscribe();
+        // don't let the client wait for a scan scheduled far ahead
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ScheduledFuture<?> next = nextScan;
+                    if (next != null && next.getDelay(TimeUnit.MILLISECONDS) > policy.getGap() &&
+                            next.cancel(false))
+                        schedule(policy.getGap());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the service is stopping
+        }
+    }
+
+    /**
+     * Tells the service a client stopped showing the beacon list.
+     */
+    public void unsubscribe() {
+        policy.unsubscribe();
+    }
+
+    /**
+     * Registers a listener for the changes to the beacons nearby. The
+     * first call has all beacons in range as entered. <br>
+     *
+     * Changes are delivered at the end of the scans, but at most once
+     * per interval, changes in between are combined.
+     *
+     * @param listener The BeaconListener to call.
+     * @param interval The least time between two calls, in milliseconds.
+     */
+    public void addListener(BeaconListener listener, long interval) {
+        final Subscription sub = new Subscription(listener, interval);
+        if (listeners.putIfAbsent(listener, sub) != null)
+            return;
+        handler.post(new Runnable() {
             @Override
             public void run() {
+                // removed before it got here
+                if (sub.cancelled)
+                    return;
+                BeaconList current = ingest.getSnapshot();
+                for (int i = 0; i < current.getCount(); i++)
+                    sub.pending.add(BeaconDelta.Type.ENTERED, current.getItem(i));
+                subscriptions.add(sub);
+                sub.publish();
+            }
+        });
+    }
 
-                btAdapter.stopLeScan(btleScanCallback);
+    /**
+     * Removes a listener, it's not called after this returns unless a
+     * call is already running. A delivery queued on the handler thread
+     * is skipped.
+     *
+     * @param listener The BeaconListener to remove.
+     */
+    public void removeListener(BeaconListener listener) {
+        final Subscription sub = listeners.remove(listener);
+        if (sub == null)
+            return;
+        sub.cancelled = true;
+        handler.removeCallbacks(sub);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                subscriptions.remove(sub);
             }
-        }, scanPeriod - 200);
+        });
+    }
 
-        // clear beacons out of range before starting scan
-        btleDeviceList.clear();
-        btAdapter.startLeScan(btleScanCallback);
+    /**
+     * Returns the part of the time spent scanning, from 0 to 1, averaged
+     * over the last scans.
+     *
+     * @return double with the duty cycle.
+     */
+    public double getScanDutyCycle() {
+        return policy.getDutyCycle();
     }
 
     /**
-     * Schedules periodical BTLE scan to run in a thread.
+     * Returns the time between the last scan and the next, in
+     * milliseconds.
      *
+     * @return long with the gap.
      */
-    private void schedulePeriodicalScan () {
-        scheduler = Executors.newScheduledThreadPool(1);
-        final Runnable scan = new Runnable() {
+    public long getScanGap() {
+        return policy.getGap();
+    }
+
+    /**
+     * Returns the metrics of the scanner as they are now, the latency of
+     * the sightings, the evictions, the size of the list and the scan
+     * overrun.
+     *
+     * @return ScannerMetrics.Snapshot with the percentiles and counters.
+     */
+    public ScannerMetrics.Snapshot getMetrics() {
+        return ingest.getMetricsSnapshot();
+    }
+
+    /**
+     * Replays a capture in place of the scanner. The scans go on as
+     * before, so the list, the deltas and the schedule are run like with
+     * the sightings of the scanner. <br>
+     *
+     * The scanner is stopped on the handler thread before the replay
+     * starts. The replay runs in its own thread, it's stopped by
+     * stopReplay() or when the service is destroyed. As fast as possible,
+     * the replay waits for a drain when the buffer is full, so no
+     * sightings are dropped. The sightings per second and the dropped
+     * sightings are logged when it's done.
+     *
+     * @param capture The capture written by SightingRecorder.
+     * @param speed How much faster than recorded to replay, 1.0 for the
+     *              recorded speed, 0 or less for as fast as possible.
+     */
+    public void startReplay(final File capture, final double speed) {
+        final Thread thread = new Thread(new Runnable() {
             @Override
             public void run() {
-                scan();
+                try {
+                    SightingReplay source = new SightingReplay(capture);
+                    try {
+                        long dropped = ingest.getDropped();
+                        long start = SystemClock.elapsedRealtime();
+                        long n = source.replay(replaySink(speed <= 0), speed);
+                        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+                        Log.i("BeaconScanService", "Replayed " + n + " sightings from " + capture +
+                                " in " + elapsed + " ms, " + (n * 1000 / elapsed) + " per second");
+                        Log.i("BeaconScanService", "Dropped " + (ingest.getDropped() - dropped) +
+                                " sightings with the buffer full during the replay");
+                    } finally {
+                        source.close();
+                    }
+                } catch (IOException e) {
+                    Log.e("BeaconScanService", "Failed to replay capture: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+                synchronized (scanLock) {
+                    if (replay == Thread.currentThread())
+                        replay = null;
+                }
             }
-        };
+        }, "BeaconScanService-replay");
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopReplay();
+                // the scan callback drops its sightings from here on
+                synchronized (scanLock) {
+                    replay = thread;
+                }
+                stopScanner();
+                // a callback that read replay before it was set may still be offering
+                while (inCallback)
+                    Thread.yield();
+                thread.start();
+            }
+        });
+    }
 
-        final Thread t = new Thread () {
-            public void run () {
-                try {
-                    scan.run();
-                } catch (Exception e) {
+    /**
+     * Stops replaying a capture, the scanner is started again from the
+     * next scan. The replay has stopped producing when this returns.
+     */
+    public void stopReplay() {
+        Thread thread = replay;
+        if (thread == null)
+            return;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // the scanner may start once the replay thread has ended
+        synchronized (scanLock) {
+            if (replay == thread)
+                replay = null;
+        }
+    }
 
+    /**
+     * Returns true while a capture is replayed in place of the scanner.
+     */
+    public boolean isReplaying() {
+        return replay != null;
+    }
+
+    /**
+     * Run a single scan, and add the beacons to the beacon list
+     * in the service.
+     */
+    private void scan() {
+        policy.onScanStarted();
+        scanDeadline = SystemClock.uptimeMillis() + policy.getWindow();
+        handler.postDelayed(stopTask, policy.getWindow());
+
+        handler.post(startTask);
+    }
+
+    /**
+     * Starts the scanner unless a capture is replayed, runs on the
+     * handler thread.
+     */
+    private void startScanner() {
+        if (replay == null && btAdapter != null && !scanning)
+            scanning = btAdapter.startLeScan(btleScanCallback);
+    }
+
+    /**
+     * Stops the scanner if it's started, runs on the handler thread.
+     */
+    private void stopScanner() {
+        if (scanning) {
+            btAdapter.stopLeScan(btleScanCallback);
+            scanning = false;
+        }
+    }
+
+    /**
+     * Stops the scan and schedules the next one after the gap chosen by
+     * the policy from how the list changed, runs on the handler thread.
+     */
+    private final Runnable stopTask = new Runnable() {
+        @Override
+        public void run() {
+            stopScanner();
+            // take in the last sightings of the scan, and drop the beacons out of range
+            drainScheduled.set(false);
+            ingest.endScan();
+            flushCapture();
+            ingest.getMetrics().recordOverrun(SystemClock.uptimeMillis() - scanDeadline);
+            scheduleScan(policy.onScanFinished(ingest.getNewBeacons(), ingest.getMaxRssiChange()));
+
+            BeaconDelta.Builder cycle = ingest.getChanges();
+            if (!cycle.isEmpty()) {
+                for (Subscription sub : subscriptions) {
+                    sub.pending.addAll(cycle);
+                    sub.publish();
                 }
+                cycle.clear();
             }
-        };
+        }
+    };
+
+    /**
+     * Writes the sightings recorded during the scan to the capture file.
+     */
+    private void flushCapture() {
+        SightingRecorder r = recorder;
+        if (r == null)
+            return;
+        try {
+            r.flush();
+        } catch (IOException e) {
+            Log.e("BeaconScanService", "Failed to write capture, recording stopped: " + e.getMessage());
+            ingest.setRecorder(null);
+            recorder = null;
+        }
+    }
+
+    /**
+     * Marks the start of a scan in the list and starts the scanner, runs
+     * on the handler thread.
+     */
+    private final Runnable startTask = new Runnable() {
+        @Override
+        public void run() {
+            ingest.startScan();
+            startScanner();
+        }
+    };
 
-        final ScheduledFuture scannerHandle = scheduler.scheduleAtFixedRate(t, scanPeriod, scanPeriod, TimeUnit.MILLISECONDS);
+    /**
+     * Drains the sighting buffer into the list in batches and publishes
+     * a new snapshot, runs on the handler thread.
+     */
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            // reset first, so sightings arriving while draining schedule a new drain
+            drainScheduled.set(false);
+            ingest.drain();
+        }
+    };
+
+    /**
+     * Starts the BTLE scans, run in a thread. Each scan schedules the
+     * next one when it stops.
+     *
+     */
+    private void schedulePeriodicalScan () {
+        scheduler = Executors.newScheduledThreadPool(1);
+        scheduleScan(scanPeriod);
     }
 
+    /**
+     * Schedules the next scan, from any thread. nextScan is set on the
+     * scheduler thread.
+     *
+     * @param delay The time until the scan starts, in milliseconds.
+     */
+    private void scheduleScan (final long delay) {
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    schedule(delay);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the service is stopping
+        }
+    }
+
+    /**
+     * Schedules the next scan, runs on the scheduler thread.
+     *
+     * @param delay The time until the scan starts, in milliseconds.
+     */
+    private void schedule(long delay) {
+        try {
+            nextScan = scheduler.schedule(scanTask, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the service is stopping
+        }
+    }
+
+    private final Runnable scanTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                scan();
+            } catch (Exception e) {
+                Log.e("BeaconScanService", "Failed to start scan: " + e.getMessage());
+            }
+        }
+    };
+
     /**
      * Scan callback- interface, stores the discovered beacons
      * in the list.
@@ -222,16 +717,58 @@ Log.e("AAAAAAA", String.valueOf(scanPeriod));
         new BluetoothAdapter.LeScanCallback() {
             @Override
             public void onLeScan(final BluetoothDevice device, int rssi, byte[] scanRecord) {
-                final Beacon beacon = new Beacon(device, rssi, scanRecord);
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        btleDeviceList.addDevice(beacon);
-                    }
-                });
-
+                // set before replay is read, so a replay starting now waits for this call
+                inCallback = true;
+                try {
+                    // a late callback after the scanner was stopped for a replay
+                    if (replay == null)
+                        offer(device.getAddress(), rssi, scanRecord);
+                } finally {
+                    inCallback = false;
+                }
             }
 
         };
+
+    /**
+     * Returns a sink feeding the replayed sightings into the list like the
+     * scan callback.
+     *
+     * @param wait True to wait for a drain while the buffer is full,
+     *             instead of dropping the sightings.
+     */
+    private SightingBuffer.Sink replaySink(final boolean wait) {
+        return new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                if (wait && ingest.getPending() >= SIGHTING_CAPACITY) {
+                    // drain now rather than after the delay, and wait for room
+                    handler.removeCallbacks(drainTask);
+                    handler.post(drainTask);
+                    try {
+                        while (ingest.getPending() >= SIGHTING_CAPACITY)
+                            Thread.sleep(REPLAY_WAIT);
+                    } catch (InterruptedException e) {
+                        // stopped, the replay returns at the next sighting
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                // the scanner isn't started again until the replay thread has ended
+                offer(mac, rssi, record);
+            }
+        };
+    }
+
+    /**
+     * Adds a sighting to the buffer and makes sure a drain is scheduled,
+     * called by the scan callback or the replay, never both at once.
+     */
+    private void offer(String mac, int rssi, byte[] record) {
+        if (ingest.offer(mac, rssi, record) &&
+                drainScheduled.compareAndSet(false, true)) {
+            handler.postDelayed(drainTask, DRAIN_DELAY);
+        }
+    }
 }
 
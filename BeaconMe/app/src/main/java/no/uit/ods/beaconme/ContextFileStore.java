@@ -0,0 +1,34 @@
+package no.uit.ods.beaconme;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+
+/**
+ *  FileStore keeping the files in the private storage of the app.
+ */
+public class ContextFileStore implements FileStore {
+    private final Context context;
+
+    public ContextFileStore(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public File getFilesDir() {
+        return context.getFilesDir();
+    }
+
+    @Override
+    public FileInputStream openFileInput(String name) throws FileNotFoundException {
+        return context.openFileInput(name);
+    }
+
+    @Override
+    public FileOutputStream openFileOutput(String name, int mode) throws FileNotFoundException {
+        return context.openFileOutput(name, mode);
+    }
+}
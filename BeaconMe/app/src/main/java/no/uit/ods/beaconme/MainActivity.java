@@ -32,17 +32,11 @@ import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 
 public class MainActivity extends ActionBarActivity implements View.OnClickListener {
@@ -87,37 +81,6 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
         }
 
 
-        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
-
-        // With the help of a scheduler we get updated beacons from the service for the local notification system
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        final Runnable scan = new Runnable() {
-            @Override
-            public void run() {
-                if (mService != null ) {
-                    for (int i = 0; i < mService.getList().getCount(); i++) {
-                        if (preferences.getBoolean("personal_notifications", true) &&
-                                                    preferences.getBoolean("all_notifications", true)) {
-                            try {
-                                if (mService.getAssociationList().notify(mService.getList().getItem(i))) {
-                                    notification(mService.getList().getItem(i));
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }
-            }
-        };
-        final ScheduledFuture scannerHandle = scheduler.scheduleAtFixedRate(scan, 5000, 5000, TimeUnit.MILLISECONDS);
-        scheduler.schedule(new Runnable() {
-            @Override
-            public void run() {
-                scannerHandle.cancel(true);
-            }
-        }, 60 * 60, TimeUnit.SECONDS);
-        scan.run();
 
 
         // Gets the categories from the back-end system
@@ -130,6 +93,34 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
 
     }
 
+    /**
+     * Receives the changes to the nearby beacons from the service for the local notification
+     * system, registered when the service is bound.
+     */
+    private final BeaconScannerService.BeaconListener notifier = new BeaconScannerService.BeaconListener() {
+        @Override
+        public void onBeaconsChanged(BeaconDelta delta) {
+            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(MainActivity.this);
+            if (preferences.getBoolean("personal_notifications", true) &&
+                                        preferences.getBoolean("all_notifications", true)) {
+                notifyNearby(delta.getEntered());
+                notifyNearby(delta.getUpdated());
+            }
+        }
+
+        private void notifyNearby(List<Beacon> beacons) {
+            for (Beacon beacon : beacons) {
+                try {
+                    if (mService.getAssociationList().notify(beacon)) {
+                        notification(beacon);
+                    }
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    };
+
     /**
      * This method handles the notifications of nearby beacons in the selected categories, it checks if the notification already is pushed
      * and updates the notification if it is, it passes the beacon on with the correct ID to the sendNotification method.
@@ -245,6 +236,7 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
     protected void onDestroy() {
         super.onDestroy();
         Log.i("MainActivity", "onDestroy()");
+        mService.removeListener(notifier);
         mService.stopSelf();
         unbindService(mConnection);
     }
@@ -275,6 +267,9 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
         else if (id == R.id.action_mybeacons) {
             myBeacons(item.getActionView());
         }
+        else if (id == R.id.action_metrics) {
+            scannerMetrics(item.getActionView());
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -289,6 +284,7 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
             BeaconScannerService.LocalBinder binder = (BeaconScannerService.LocalBinder) service;
             mService = binder.getService();
             mBound = true;
+            mService.addListener(notifier, 5000);
         }
 
         @Override
@@ -300,41 +296,26 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
     /**
      *
      * This method gets a JSONArray of categories from the back-end system and converts it to
-     * a string array, it also saves the array on disk for backup or uses the backup if fail
+     * a string array, the client keeps the last array on disk and returns it if the server fails
      *
      * @return array with categories in String format
      */
     private ArrayList getCategories() {
-        String tempJSON;
-        String filename = "SavedCat.sav";
-
         // Set up the "connection"
         BeaconClient bc = BeaconClient.getInstance();
 
         // Get a JSONArray from the server with the categories
         JSONArray catArray = null;
         try {
-            catArray = bc.getCategories(getBaseContext());
+            catArray = bc.getCachedCategories(getBaseContext());
         } catch (InterruptedException e) {
             Log.e("Category", "getCategories from back-end system failed with: " + e.getMessage());
         }
 
-        // Try to save the Category array to disk, so we have some categories locally
-        // in case of no network or other issues
-        if (catArray != null) {
-            tempJSON = catArray.toString();
-            saveToDisk(tempJSON, filename);
-        } else {
-            char[] buffer = readFromDisk(filename);
-
-            // Convert the String read from disk back to a JSONArray
-            if (buffer != null) {
-                try {
-                    catArray = new JSONArray(new String(buffer));
-                } catch (JSONException e) {
-                    Log.e("Category", "Convert to JSONArray failed with: " + e.getMessage());
-                }
-            }
+        // The client returns its saved copy when the server can't be reached,
+        // so there is nothing to show only if the categories were never fetched
+        if (catArray == null) {
+            showConnectionError();
         }
 
         // Convert the received JSONArray to a String array with the categories, if something went wrong with the transfer
@@ -353,62 +334,18 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
     }
 
     /**
-     * Saves a string in a file on disk
-     *
-     * @param array The array to read from.
-     * @param filename The filname to save to.
-     */
-    public void saveToDisk(String array, String filename) {
-        File f = new File(getApplicationContext().getFilesDir() + filename);
-        try {
-            // Make sure we write to a "clean" file
-            f.delete();
-
-            // Make a file to save to, then transfer the array to the file
-            FileWriter writer = new FileWriter(f);
-            writer.write(array);
-
-            // Closes the transfer AND the file
-            writer.close();
-        } catch (Exception e) {
-            Log.e("Category", "Save Categories to disk failed with: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Reads from disk and returns a char[] buffer
-     *
-     * @param filename The filename to read from
-     *
-     * @return A string read from the file on disk
+     * Shows a dialog with a error message and returns to "home" screen.
      */
-    public char[] readFromDisk(String filename) {
-        char[] buffer = null;
-        // Read the local file to get the "backup" array
-        try {
-            File f = new File(getApplicationContext().getFilesDir() + filename);
-            if(f.exists()) {
-                FileReader reader = new FileReader(f);
-                buffer = new char[((int) f.length())];
-                reader.read(buffer);
-                reader.close();
-            }
-            else {
-                // The file doesn't exist, so we show a dialog with a error message and returns to "home" screen.
-                AlertDialog alertDialog = new AlertDialog.Builder(this).create();
-                alertDialog.setTitle("ERROR!");
-                alertDialog.setMessage("Ups, something went terribly wrong, are you connected to the internet?");
-                alertDialog.setButton("OK", new DialogInterface.OnClickListener() {
-                    public void onClick(DialogInterface dialog, int which) {
-                        finish();
-                    }
-                });
-                alertDialog.show();
+    private void showConnectionError() {
+        AlertDialog alertDialog = new AlertDialog.Builder(this).create();
+        alertDialog.setTitle("ERROR!");
+        alertDialog.setMessage("Ups, something went terribly wrong, are you connected to the internet?");
+        alertDialog.setButton("OK", new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                finish();
             }
-        } catch (Exception e) {
-            Log.e("Category", "Read Categories from disk failed with: " + e.getMessage());
-        }
-        return buffer;
+        });
+        alertDialog.show();
     }
 
     private void findViewsById() {
@@ -500,6 +437,15 @@ public class MainActivity extends ActionBarActivity implements View.OnClickListe
         startActivity(intent, bundle);
     }
 
+    // Starts the metrics activity, which shows how the scanner keeps up
+    public void scannerMetrics (View view) {
+        Intent intent = new Intent(this, ScannerMetricsActivity.class);
+        Bundle bundle = new Bundle();
+        bundle.putBinder("binderScan", mService.getBinder());
+        intent.putExtras(bundle);
+        startActivity(intent, bundle);
+    }
+
     // Starts the Category activity, where all categories are listed with checkboxes so you can filter
     public void categories () {
         Intent intent = new Intent(this, BeaconCategory.class);
@@ -0,0 +1,102 @@
+package no.uit.ods.beaconme;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.support.v7.app.ActionBarActivity;
+import android.util.Log;
+import android.widget.TextView;
+import java.util.Locale;
+
+
+/**
+ *  Debug screen showing the metrics of the scanner service, refreshed
+ *  every second while the activity is visible. <br>
+ *
+ *  The rate of sightings is taken between two refreshes, the latencies
+ *  and counters are since the service started.
+ */
+public class ScannerMetricsActivity extends ActionBarActivity {
+    private static final int REFRESH_INTERVAL = 1000;  // In milliseconds
+    private BeaconScannerService mService;
+    private TextView mText;
+    private final Handler handler = new Handler();
+    private ScannerMetrics.Snapshot previous;
+
+    /**
+     * onCreate initiates the activity by getting the scanner service from
+     * the intent.
+     *
+     * @param savedInstanceState The bundle that's inserted to the intent.
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_scanner_metrics);
+        Log.i("ScannerMetrics", "onCreate()");
+
+        // fetch the scan service from arguments
+        Bundle bundle = getIntent().getExtras();
+        IBinder iBinder = bundle.getBinder("binderScan");
+        BeaconScannerService.LocalBinder binderScan = (BeaconScannerService.LocalBinder) iBinder;
+        mService = binderScan.getService();
+
+        mText = (TextView) findViewById(R.id.metrics_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    /**
+     * Shows the current metrics and schedules the next refresh.
+     */
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            ScannerMetrics.Snapshot current = mService.getMetrics();
+            double rate = previous == null ? current.getSightingsPerSecond()
+                                           : current.getSightingsPerSecond(previous);
+            previous = current;
+
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.US, "Sightings/s      %.1f\n", rate));
+            text.append("Sightings        ").append(current.getSightings()).append('\n');
+            text.append("Dropped          ").append(current.getDropped()).append('\n');
+            text.append("Beacon packets   ").append(current.getAccepted()).append('\n');
+            text.append("Rejected         ").append(current.getRejected())
+                .append(" (").append(current.getNotAllowed()).append(" not allowed)\n");
+            text.append("Beacons          ").append(current.getListSize()).append('\n');
+            text.append(String.format(Locale.US, "Duty cycle       %.2f\n", mService.getScanDutyCycle()));
+            text.append("Scan gap         ").append(mService.getScanGap()).append(" ms\n\n");
+            append(text, "Latency (us)", current.getLatency());
+            append(text, "Eviction (us)", current.getEvictTime());
+            append(text, "Evicted/scan", current.getEvictions());
+            append(text, "Beacons/scan", current.getListSizes());
+            append(text, "Overrun (ms)", current.getOverrun());
+            mText.setText(text);
+
+            handler.postDelayed(this, REFRESH_INTERVAL);
+        }
+    };
+
+    /**
+     * Adds the percentiles of a histogram to the text.
+     */
+    private static void append(StringBuilder text, String name, ScannerMetrics.Stats stats) {
+        text.append(name).append('\n')
+            .append("  p50 ").append(stats.getP50())
+            .append("  p95 ").append(stats.getP95())
+            .append("  p99 ").append(stats.getP99())
+            .append("  max ").append(stats.getMax())
+            .append("  n ").append(stats.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,93 @@
+#!/usr/bin/env python3
+"""Compares two JMH result files written by the beacon-bench jmh task.
+
+    python3 compare.py baseline.json current.json [--threshold 10]
+
+For every benchmark and parameter combination in both files the score
+and the normalised allocation rate (gc.alloc.rate.norm, bytes per
+operation) are compared. A change is a regression when it's worse than
+the threshold, in percent, and larger than the error of the two scores.
+Allocation counts as a regression when it grows by more than the
+threshold and by at least one byte per operation.
+
+Exits with status 1 if there is any regression, so it can guard a build.
+"""
+
+import argparse
+import json
+import sys
+
+ALLOC = "gc.alloc.rate.norm"
+
+
+def load(path):
+    with open(path) as f:
+        results = json.load(f)
+    runs = {}
+    for r in results:
+        params = r.get("params") or {}
+        # ClassName.method, the package is the same for all of them
+        key = ".".join(r["benchmark"].split(".")[-2:])
+        if params:
+            key += " (" + ", ".join("%s=%s" % p for p in sorted(params.items())) + ")"
+        alloc = None
+        for name, metric in (r.get("secondaryMetrics") or {}).items():
+            # older JMH versions prefix the profiler metrics with a middle dot
+            if name.lstrip("·") == ALLOC:
+                alloc = metric["score"]
+        runs[key] = (r["primaryMetric"], alloc)
+    return runs
+
+
+def higher_is_better(unit):
+    # throughput is ops/time, the other modes are time/op
+    return unit.startswith("ops/")
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compare two JMH result files.")
+    parser.add_argument("baseline")
+    parser.add_argument("current")
+    parser.add_argument("--threshold", type=float, default=10.0,
+                        help="percent change counted as a regression (default 10)")
+    args = parser.parse_args()
+
+    baseline = load(args.baseline)
+    current = load(args.current)
+    regressions = 0
+
+    print("%-60s %14s %14s %8s %12s %12s" % ("benchmark", "baseline", "current", "change",
+                                              "alloc B/op", "was B/op"))
+    for key in sorted(set(baseline) & set(current)):
+        (base, base_alloc), (cur, cur_alloc) = baseline[key], current[key]
+        change = (cur["score"] - base["score"]) / base["score"] * 100 if base["score"] else 0.0
+        worse = -change if higher_is_better(cur["scoreUnit"]) else change
+        noise = (abs(base.get("scoreError") or 0) + abs(cur.get("scoreError") or 0))
+        flags = []
+        if worse > args.threshold and abs(cur["score"] - base["score"]) > noise:
+            flags.append("SLOWER")
+        if base_alloc is not None and cur_alloc is not None:
+            grown = cur_alloc - base_alloc
+            if grown >= 1 and grown > base_alloc * args.threshold / 100:
+                flags.append("ALLOCATES MORE")
+        regressions += bool(flags)
+
+        print("%-60s %14.3f %14.3f %+7.1f%% %12s %12s  %s" % (
+            key[:60], base["score"], cur["score"], change,
+            "-" if cur_alloc is None else "%.1f" % cur_alloc,
+            "-" if base_alloc is None else "%.1f" % base_alloc,
+            " ".join(flags)))
+
+    for key in sorted(set(baseline) - set(current)):
+        print("%-60s missing from %s" % (key[:60], args.current))
+    for key in sorted(set(current) - set(baseline)):
+        print("%-60s new" % key[:60])
+
+    if regressions:
+        print("\n%d regression(s) over %.0f%%" % (regressions, args.threshold))
+        return 1
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
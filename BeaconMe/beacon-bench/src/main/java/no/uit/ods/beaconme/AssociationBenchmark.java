@@ -0,0 +1,100 @@
+package no.uit.ods.beaconme;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in the BeaconAssociationList, for each beacon nearby the
+ * scanner asks if it has an association and if it should notify. <br>
+ *
+ * contains() finds the beacon on its MAC, containsReplaced() a beacon
+ * with a new MAC on its UUID, major and minor, and containsMiss() a
+ * beacon without an association.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssociationBenchmark {
+    @Param({"100", "1000", "10000"})
+    int associations;
+
+    private File                    file;
+    private BeaconAssociationList   list;
+    private Beacon[]                associated;
+    private Beacon[]                replaced;
+    private Beacon[]                unknown;
+    private int                     next;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        file = File.createTempFile("associations", null);
+        file.delete();
+        list = new BeaconAssociationList(file);
+        associated = BenchBeacons.create(associations, 42);
+        for (int i = 0; i < associations; i++)
+            list.add(associated[i], "name" + i, "value" + i, i % 4);
+        list.commit();
+
+        // same UUID, major and minor behind other MACs, and beacons not in the list
+        BeaconParser parser = new BeaconParser();
+        replaced = new Beacon[associations];
+        unknown  = new Beacon[associations];
+        for (int i = 0; i < associations; i++) {
+            replaced[i] = new Beacon(BenchBeacons.mac(0x800000 + i), null, -70,
+                    parser.parse(BenchBeacons.record(i)));
+            unknown[i]  = new Beacon(BenchBeacons.mac(0x400000 + i), null, -70,
+                    parser.parse(BenchBeacons.record(0x10000000 + i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        list.close();
+        file.delete();
+        new File(file.getPath() + ".journal").delete();
+    }
+
+    @Benchmark
+    public int contains() throws JSONException {
+        return list.contains(associated[next()]);
+    }
+
+    @Benchmark
+    public int containsReplaced() throws JSONException {
+        return list.contains(replaced[next()]);
+    }
+
+    @Benchmark
+    public int containsMiss() throws JSONException {
+        return list.contains(unknown[next()]);
+    }
+
+    @Benchmark
+    public boolean notifyBeacon() throws JSONException {
+        return list.notify(associated[next()]);
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == associations ? 0 : i + 1;
+        return i;
+    }
+}
@@ -0,0 +1,100 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maintenance of the BeaconList of the scanner service at a population
+ * of beacons in range. <br>
+ *
+ * addDevice() is one sighting of a beacon already in the list. scan()
+ * and scanExpire() are a whole scan, every beacon seen once and then the
+ * beacons out of range removed by the threshold sweep of clear() or by
+ * the timing wheel. sort() repositions a tenth of the beacons after their
+ * RSSI changed, and snapshot() is the copy published to the clients.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeaconListBenchmark {
+    @Param({"50", "500", "5000"})
+    int beacons;
+
+    private Beacon[]    population;
+    private BeaconList  list;
+    private BeaconList  timed;
+    private long        now;
+    private int         next;
+    private int         round;
+
+    @Setup
+    public void setUp() {
+        population  = BenchBeacons.create(beacons, 42);
+        list        = new BeaconList(RssiFilter.create("kalman"));
+        timed       = new BeaconList(null, 10000, new Clock() {
+            @Override
+            public long now() {
+                return now;
+            }
+        });
+        for (Beacon b : population) {
+            list.addDevice(new Beacon(b));
+            timed.addDevice(new Beacon(b));
+        }
+        list.sort();
+    }
+
+    @Benchmark
+    public BeaconList addDevice() {
+        int i = next;
+        next = i + 1 == beacons ? 0 : i + 1;
+        list.addDevice(population[i]);
+        return list;
+    }
+
+    @Benchmark
+    public BeaconList scan() {
+        for (Beacon b : population)
+            list.update(b.getAddressBits(), b.getAddress(), b.getRssi());
+        list.clear();
+        return list;
+    }
+
+    @Benchmark
+    public BeaconList scanExpire() {
+        now += 2500;
+        timed.startScan();
+        for (Beacon b : population)
+            timed.update(b.getAddressBits(), b.getAddress(), b.getRssi());
+        timed.expire();
+        return timed;
+    }
+
+    @Benchmark
+    public BeaconList sort() {
+        round++;
+        for (int i = round % 10; i < beacons; i += 10)
+            list.getItem(i).putRssi(-40 - ((i + round) % 60));
+        list.sort();
+        return list;
+    }
+
+    @Benchmark
+    public BeaconList snapshot() {
+        return list.snapshot();
+    }
+}
@@ -0,0 +1,60 @@
+package no.uit.ods.beaconme;
+
+import java.util.Random;
+
+/**
+ * Populations of beacons for the benchmarks, the same for every run.
+ */
+final class BenchBeacons {
+    private static final long UUID_MSB = 0xb9407f30f5f8466eL;
+    private static final long UUID_LSB = 0xaff925556b57fe6dL;
+
+    private BenchBeacons() {
+    }
+
+    /**
+     * Returns the MAC address of beacon i.
+     */
+    static String mac(int i) {
+        return String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+    }
+
+    /**
+     * Returns the iBeacon advertisement packet of beacon i, the major and
+     * minor are the upper and lower 16 bits of i.
+     */
+    static byte[] record(int i) {
+        return record(UUID_MSB, UUID_LSB, i);
+    }
+
+    /**
+     * Returns the iBeacon advertisement packet of beacon i with the UUID.
+     */
+    static byte[] record(long msb, long lsb, int i) {
+        byte[] record = new byte[62];
+        byte[] header = {0x02, 0x01, 0x06, 0x1a, (byte) 0xff, 0x4c, 0x00, 0x02, 0x15};
+        System.arraycopy(header, 0, record, 0, header.length);
+        for (int b = 0; b < 8; b++) {
+            record[9 + b]  = (byte) (msb >>> (56 - 8 * b));
+            record[17 + b] = (byte) (lsb >>> (56 - 8 * b));
+        }
+        record[25] = (byte) (i >> 24);
+        record[26] = (byte) (i >> 16);
+        record[27] = (byte) (i >> 8);
+        record[28] = (byte) i;
+        record[29] = (byte) -59;
+        return record;
+    }
+
+    /**
+     * Creates n beacons with RSSIs between -40 and -99 dBm.
+     */
+    static Beacon[] create(int n, long seed) {
+        Random random = new Random(seed);
+        BeaconParser parser = new BeaconParser();
+        Beacon[] beacons = new Beacon[n];
+        for (int i = 0; i < n; i++)
+            beacons[i] = new Beacon(mac(i), "beacon" + i, -40 - random.nextInt(60), parser.parse(record(i)));
+        return beacons;
+    }
+}
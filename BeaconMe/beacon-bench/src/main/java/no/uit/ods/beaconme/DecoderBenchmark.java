@@ -0,0 +1,173 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AD structure walk of BeaconParser against the iBeacon only parser
+ * it replaced, which checked the prefix at bytes 3-8 and read the fields
+ * at fixed offsets. <br>
+ *
+ * walk() should be as fast as fixedOffsets() on iBeacons. On the other
+ * formats fixedOffsets() only rejects the packet, it's there to show
+ * what the walk costs when it decodes them. Neither should allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+    private static final int PACKETS = 256;
+
+    private static final byte[] IBEACON_PREFIX = {0x1a, (byte) 0xff, 0x4c, 0x00, 0x02, 0x15};
+
+    @Param({"ibeacon", "altbeacon", "eddystone", "mixed"})
+    String format;
+
+    private byte[][]        records;
+    private BeaconParser    parser;
+    private int             next;
+    // fields of the fixed offset parser
+    private long            uuidMostSigBits;
+    private long            uuidLeastSigBits;
+    private int             major;
+    private int             minor;
+    private int             signalLevel;
+
+    @Setup
+    public void setUp() {
+        records = new byte[PACKETS][];
+        for (int i = 0; i < PACKETS; i++)
+            records[i] = record(format, i);
+        parser = new BeaconParser();
+    }
+
+    @Benchmark
+    public int walk() {
+        BeaconParser p = parser.parse(records[next()]);
+        return p.getFormat() + p.getMinor() + p.getSignalLevel();
+    }
+
+    @Benchmark
+    public int fixedOffsets() {
+        byte[] record = records[next()];
+        if (!isIBeacon(record))
+            return 0;
+        parseFixed(record);
+        return 1 + minor + signalLevel;
+    }
+
+    private int next() {
+        int i = next;
+        next = (i + 1) & (PACKETS - 1);
+        return i;
+    }
+
+    /**
+     * The prefix check of the iBeacon only prefilter.
+     */
+    private static boolean isIBeacon(byte[] record) {
+        if (record.length < 30)
+            return false;
+        for (int i = 0; i < IBEACON_PREFIX.length; i++) {
+            if (record[3 + i] != IBEACON_PREFIX[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The iBeacon only BeaconParser.parse(), reading the fields at fixed
+     * offsets.
+     */
+    private void parseFixed(byte[] data) {
+        int length = data.length;
+        uuidMostSigBits  = readLong(data, length, 9);
+        uuidLeastSigBits = readLong(data, length, 17);
+        major       = length >= 27 ? ((data[25] & 0xff) << 8) | (data[26] & 0xff) : 0;
+        minor       = length >= 29 ? ((data[27] & 0xff) << 8) | (data[28] & 0xff) : 0;
+        signalLevel = length >= 30 ? 0xff - (data[29] & 0xff) : 0xff;
+    }
+
+    private static long readLong(byte[] data, int length, int position) {
+        long value = 0;
+        for (int i = position; i < position + 8; i++) {
+            value <<= 8;
+            if (i < length)
+                value |= data[i] & 0xff;
+        }
+        return value;
+    }
+
+    /**
+     * Returns packet i of the format, mixed cycles through an iBeacon,
+     * an Eddystone-UID, an Eddystone-TLM and the packet of a phone.
+     */
+    private static byte[] record(String format, int i) {
+        if (format.equals("mixed")) {
+            switch (i & 3) {
+                case 0:  return BenchBeacons.record(i);
+                case 1:  return eddystone(i);
+                case 2:  return telemetry(i);
+                default: return phone(i);
+            }
+        }
+        if (format.equals("altbeacon"))
+            return altBeacon(i);
+        if (format.equals("eddystone"))
+            return eddystone(i);
+        return BenchBeacons.record(i);
+    }
+
+    // the iBeacon packet with the AltBeacon header, company 0x0118
+    private static byte[] altBeacon(int i) {
+        byte[] record = BenchBeacons.record(i);
+        record[3] = 0x1b;
+        record[5] = 0x18;
+        record[6] = 0x01;
+        record[7] = (byte) 0xbe;
+        record[8] = (byte) 0xac;
+        return record;
+    }
+
+    // flags, the 0xfeaa service UUID and a UID frame with the id in the instance
+    private static byte[] eddystone(int i) {
+        byte[] record = new byte[62];
+        byte[] header = {0x02, 0x01, 0x06, 0x03, 0x03, (byte) 0xaa, (byte) 0xfe,
+                0x17, 0x16, (byte) 0xaa, (byte) 0xfe, 0x00, (byte) 0xe7};
+        System.arraycopy(header, 0, record, 0, header.length);
+        for (int b = 0; b < 4; b++)
+            record[26 - b] = (byte) (i >> (8 * b));
+        return record;
+    }
+
+    private static byte[] telemetry(int i) {
+        byte[] record = eddystone(i);
+        record[7]  = 0x11;
+        record[11] = 0x20;
+        record[12] = 0x00;
+        return record;
+    }
+
+    // Apple nearby info, as sent by phones
+    private static byte[] phone(int i) {
+        byte[] record = new byte[62];
+        byte[] header = {0x02, 0x01, 0x1a, 0x0a, (byte) 0xff, 0x4c, 0x00, 0x10, 0x05, 0x0b, 0x1c};
+        System.arraycopy(header, 0, record, 0, header.length);
+        record[11] = (byte) i;
+        return record;
+    }
+}
@@ -0,0 +1,57 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The table lookup of the DistanceModels against computing the distance
+ * with Math.pow, over the smoothed RSSIs left by the filters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceModelBenchmark {
+    @Param({"curvefit", "pathloss_indoor"})
+    String model;
+
+    private DistanceModel   distanceModel;
+    private double[]        rssis;
+    private int             next;
+
+    @Setup
+    public void setUp() {
+        distanceModel = DistanceModel.create(model);
+        rssis = new double[1024];
+        for (int i = 0; i < rssis.length; i++)
+            rssis[i] = -100 + (i * 70.0 / rssis.length);
+    }
+
+    @Benchmark
+    public double compute() {
+        return distanceModel.compute(rssis[next()], 58);
+    }
+
+    @Benchmark
+    public double table() {
+        return distanceModel.distance(rssis[next()], 58);
+    }
+
+    private int next() {
+        next = (next + 1) & (rssis.length - 1);
+        return next;
+    }
+}
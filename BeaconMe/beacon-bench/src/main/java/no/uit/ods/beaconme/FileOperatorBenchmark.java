@@ -0,0 +1,71 @@
+package no.uit.ods.beaconme;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileOperator.writeJSON() merging one setting into a settings file
+ * holding a number of entries, the file is read, merged and rewritten.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileOperatorBenchmark {
+    @Param({"10", "100", "1000"})
+    int entries;
+
+    private File            dir;
+    private FileStore       store;
+    private FileOperator    operator;
+    private String[]        updates;
+    private int             next;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        dir = File.createTempFile("settings", null);
+        dir.delete();
+        dir.mkdir();
+        store    = new FileStore.Directory(dir);
+        operator = new FileOperator("settings.json", FileStore.MODE_PRIVATE);
+
+        StringBuilder settings = new StringBuilder("[");
+        updates = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            settings.append(i == 0 ? "" : ",").append("{\"key").append(i).append("\": \"value\"}");
+            updates[i] = "[{\"key" + i + "\": \"updated\"}]";
+        }
+        operator.writeJSON("settings", settings.append("]").toString(), store);
+    }
+
+    @TearDown
+    public void tearDown() {
+        operator.delete(store);
+        dir.delete();
+    }
+
+    @Benchmark
+    public FileOperator writeJSON() throws IOException, JSONException {
+        int i = next;
+        next = i + 1 == entries ? 0 : i + 1;
+        operator.writeJSON("settings", updates[i], store);
+        return operator;
+    }
+}
@@ -0,0 +1,84 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The filter screen: BeaconFilter.filterResults() streams the registered
+ * beacons of the back-end into a BeaconFilterEngine, and each refresh
+ * matches the beacons nearby against it. <br>
+ *
+ * build() is filterResults() without the network and JSON parts, match()
+ * is one refresh with a tenth of the nearby beacons registered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+    private static final int CATEGORIES = 20;
+
+    @Param({"1000", "10000"})
+    int registered;
+
+    @Param({"30", "300"})
+    int nearby;
+
+    private ArrayList<Integer>          checked;
+    private String[]                    macs;
+    private BeaconFilterEngine<String>  engine;
+    private BeaconList                  snapshot;
+    private int                         matches;
+
+    private final BeaconFilterEngine.Match<String> count = new BeaconFilterEngine.Match<String>() {
+        @Override
+        public void onMatch(String item, Beacon beacon) {
+            matches++;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        checked = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES; c += 2)
+            checked.add(c);
+        macs = new String[registered];
+        for (int i = 0; i < registered; i++)
+            macs[i] = BenchBeacons.mac(i * 10);
+        engine = build();
+
+        BeaconList list = new BeaconList();
+        for (Beacon b : BenchBeacons.create(nearby, 7))
+            list.addDevice(b);
+        snapshot = list.snapshot();
+    }
+
+    @Benchmark
+    public BeaconFilterEngine<String> build() {
+        BeaconFilterEngine<String> e = new BeaconFilterEngine<>(checked);
+        for (int i = 0; i < registered; i++)
+            e.add(i % CATEGORIES, macs[i], macs[i]);
+        return e;
+    }
+
+    @Benchmark
+    public int match() {
+        matches = 0;
+        engine.match(snapshot, count);
+        return matches;
+    }
+}
@@ -0,0 +1,80 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the advertisement packets, cycling through a population of
+ * distinct packets. parse() and parseInPlace(), reading the packets from
+ * slots of a slab like the SightingBuffer, should not allocate,
+ * newBeacon() allocates only the Beacon.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"1", "100", "10000"})
+    int packets;
+
+    private byte[][]        records;
+    private byte[]          slab;
+    private ScanRecord      view;
+    private String[]        macs;
+    private BeaconParser    parser;
+    private int             next;
+
+    @Setup
+    public void setUp() {
+        records = new byte[packets][];
+        macs    = new String[packets];
+        for (int i = 0; i < packets; i++) {
+            records[i] = BenchBeacons.record(i);
+            macs[i]    = BenchBeacons.mac(i);
+        }
+        parser = new BeaconParser();
+
+        slab = new byte[packets * SightingBuffer.SLOT_SIZE];
+        for (int i = 0; i < packets; i++)
+            System.arraycopy(records[i], 0, slab, i * SightingBuffer.SLOT_SIZE, records[i].length);
+        view = new ScanRecord();
+    }
+
+    @Benchmark
+    public int parse() {
+        int i = next();
+        return parser.parse(records[i]).getMinor();
+    }
+
+    @Benchmark
+    public int parseInPlace() {
+        int i = next();
+        view.wrap(slab, i * SightingBuffer.SLOT_SIZE, records[i].length);
+        return parser.parse(view).getMinor();
+    }
+
+    @Benchmark
+    public Beacon newBeacon() {
+        int i = next();
+        return new Beacon(macs[i], null, -70, parser.parse(records[i]));
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == packets ? 0 : i + 1;
+        return i;
+    }
+}
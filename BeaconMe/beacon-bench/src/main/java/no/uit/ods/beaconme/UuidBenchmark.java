@@ -0,0 +1,87 @@
+package no.uit.ods.beaconme;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparing the UUIDs of 10 000 beacons, as the Strings each beacon
+ * kept before the UuidDictionary, as ids and as the two longs kept by
+ * beacons whose UUID is not in the dictionary. There are a few UUIDs
+ * shared by all beacons or one per beacon like Eddystone-UID, all of
+ * them allow-listed. getUuid() should not allocate once the String of
+ * the UUID is built.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UuidBenchmark {
+    private static final int BEACONS = 10000;
+
+    @Param({"4", "10000"})
+    int uuids;
+
+    private Beacon[]    beacons;
+    private String[]    strings;
+    private int         next;
+
+    @Setup
+    public void setUp() {
+        BeaconParser parser = new BeaconParser();
+        beacons = new Beacon[BEACONS];
+        strings = new String[BEACONS];
+        for (int i = 0; i < BEACONS; i++) {
+            long msb = 0xb9407f30f5f8466eL + i % uuids;
+            // as the allow-list does
+            UuidDictionary.id(msb, 0xaff925556b57fe6dL);
+            parser.parse(BenchBeacons.record(msb, 0xaff925556b57fe6dL, i));
+            beacons[i] = new Beacon(BenchBeacons.mac(i), null, -70, parser);
+            strings[i] = BeaconParser.formatUuid(msb, 0xaff925556b57fe6dL);
+        }
+    }
+
+    @Benchmark
+    public boolean compareStrings() {
+        int i = next();
+        return strings[i].equals(strings[(i * 2 + 1) % BEACONS]);
+    }
+
+    @Benchmark
+    public boolean compareIds() {
+        int i = next();
+        return beacons[i].getUuidId() == beacons[(i * 2 + 1) % BEACONS].getUuidId();
+    }
+
+    @Benchmark
+    public boolean compareBits() {
+        int i = next();
+        Beacon a = beacons[i];
+        Beacon b = beacons[(i * 2 + 1) % BEACONS];
+        return a.getUuidMostSigBits() == b.getUuidMostSigBits()
+                && a.getUuidLeastSigBits() == b.getUuidLeastSigBits();
+    }
+
+    @Benchmark
+    public String getUuid() {
+        return beacons[next()].getUuid();
+    }
+
+    private int next() {
+        int i = next;
+        next = i + 1 == BEACONS ? 0 : i + 1;
+        return i;
+    }
+}
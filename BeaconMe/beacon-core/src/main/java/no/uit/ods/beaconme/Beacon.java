@@ -0,0 +1,458 @@
+package no.uit.ods.beaconme;
+
+
+/**
+ *
+ *  This class implements beacon. It holds the information about the beacon
+ *   which is accessed through the bundled methods. <br>
+ *
+ *  The beacon have a variable threshold which is used to delay the
+ *  beacon from being removed the beacon list to prevent beacons from
+ *  beeing prematurly removed. <br>
+ *
+ *  Author: Espen Mæland Wilhelmsen, espen.wilhelmsen@gmail.com
+ */
+public class Beacon {
+    private String      name;
+    private String      mac;
+    private long        macBits;
+    private long        uuidMsb;
+    private long        uuidLsb;
+    // id of the UUID in the UuidDictionary, NONE if it's not in it
+    private int         uuidId;
+    // the UUID formatted when it's not in the UuidDictionary
+    private String      uuidText;
+    private String      category;
+    private String      url;
+    private int         format;
+    private int         major;
+    private int         minor;
+    private int         signalLevel;
+    private int         rssi;
+    private double      smoothedRssi;
+    private double      distance;
+    private int         threshold;
+    private boolean     updated;
+    private long        lastSeen;
+    final private int   initialThreshold = 3;
+    // the copy of the beacon in the last BeaconList snapshot, null once the beacon changed
+    Beacon              snapshotCopy;
+
+    /**
+     * Constructor method. <br>
+     *
+     * Requires a BeaconDevice, a signal strength (RSSI) and a scanRecord
+     * which is bundled with the leScan method of the BluetoothAdapter.
+     * (It's the beacon's broadcast packet in raw form).
+     *
+     * @param device  BeaconDevice the beacon was seen from
+     * @param signal  Integer that represents the signal level in dBm
+     * @param sRecord The raw data from the BTLE scan, contains all info from the beacon
+     */
+    public Beacon(BeaconDevice device, int signal, byte[] sRecord) {
+        this(device, signal, new BeaconParser().parse(sRecord));
+    }
+
+    /**
+     * Constructor method. <br>
+     *
+     * Same as above, but the advertisement packet is already decoded
+     * by a BeaconParser. Only the primitive fields are copied from the
+     * parser, so the parser can be reused for the next packet.
+     *
+     * @param device BeaconDevice the beacon was seen from
+     * @param signal Integer that represents the signal level in dBm
+     * @param parser BeaconParser holding the decoded advertisement packet
+     */
+    public Beacon(BeaconDevice device, int signal, BeaconParser parser) {
+        this(device.getAddress(), device.getName(), signal, parser);
+    }
+
+    /**
+     * Constructor method. <br>
+     *
+     * Creates the beacon from the MAC address and name directly, used
+     * when there is no BeaconDevice at hand.
+     *
+     * @param address String with the MAC address in xx:yy:xx:yy:xx:yy format
+     * @param name    String with the name of the device, may be null
+     * @param signal  Integer that represents the signal level in dBm
+     * @param parser  BeaconParser holding the decoded advertisement packet
+     */
+    public Beacon(String address, String name, int signal, BeaconParser parser) {
+        this.uuidMsb          = parser.getUuidMostSigBits();
+        this.uuidLsb          = parser.getUuidLeastSigBits();
+        this.uuidId           = UuidDictionary.find(uuidMsb, uuidLsb);
+        this.format           = parser.getFormat();
+        this.major            = parser.getMajor();
+        this.minor            = parser.getMinor();
+        this.signalLevel      = parser.getSignalLevel();
+        this.name             = name;
+        this.mac              = address;
+        this.macBits          = MacIndex.pack(address);
+        this.rssi             = signal;
+        this.smoothedRssi     = signal;
+        this.distance         = computeDistance();
+        this.threshold        = initialThreshold;
+        this.updated          = false;
+        this.category         = null;
+        // an Eddystone-URL beacon sends its own url
+        this.url              = format == BeaconParser.FORMAT_EDDYSTONE_URL ? parser.getUrl() : null;
+    }
+
+    /**
+     * Copy constructor. <br>
+     *
+     * Creates a copy of the beacon with the same state, used when the
+     * scanner service publishes snapshots of its list.
+     *
+     * @param other The beacon to copy.
+     */
+    public Beacon(Beacon other) {
+        this.uuidMsb          = other.uuidMsb;
+        this.uuidLsb          = other.uuidLsb;
+        this.uuidId           = other.uuidId;
+        this.uuidText         = other.uuidText;
+        this.format           = other.format;
+        this.major            = other.major;
+        this.minor            = other.minor;
+        this.signalLevel      = other.signalLevel;
+        this.name             = other.name;
+        this.mac              = other.mac;
+        this.macBits          = other.macBits;
+        this.rssi             = other.rssi;
+        this.smoothedRssi     = other.smoothedRssi;
+        this.distance         = other.distance;
+        this.threshold        = other.threshold;
+        this.updated          = other.updated;
+        this.lastSeen         = other.lastSeen;
+        this.category         = other.category;
+        this.url              = other.url;
+    }
+
+    /**
+     * Setter for category variable.
+     *
+     * @param category String representing the category.
+     */
+    public void setCategory(String category) {
+        this.category     = category;
+        this.snapshotCopy = null;
+    }
+
+    /**
+     * Getter for category variable.
+     *
+     * @return Returns String representing the category.
+     */
+    public String getCategory() {
+        return this.category;
+    }
+
+    /**
+     * Setter for the url variable.
+     *
+     * @param url String representing the url.
+     */
+    public void setUrl(String url) {
+        this.url          = url;
+        this.snapshotCopy = null;
+    }
+
+    /**
+     * Getter for the url variable.
+     *
+     * @return Returns String representing the url.
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Returns the updates variable. <br>
+     *
+     * Used to prevent updating beacons multiple times per scan
+     * interval.
+     *
+     * @return
+     */
+    public boolean getUpdated() {
+        return this.updated;
+    }
+
+    public void setUpdated(boolean b) {
+        this.updated = b;
+    }
+
+    /**
+     * Returns the time the beacon was last seen, in milliseconds of the
+     * clock of the BeaconList it's in.
+     */
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(long time) {
+        this.lastSeen = time;
+    }
+
+    /**
+     * Returns the RSSI, which is the signal strength of the beacon.
+     *
+     * @return double with the RSSI of the Beacon.
+     */
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * Updates the RSSI variable inside the Beacon class with a new
+     * signal strength. The sample is also used as the smoothed RSSI.
+     *
+     * @param strength The new RSSI of the beacon.
+     */
+    public void putRssi(int strength) {
+        putRssi(strength, strength);
+    }
+
+    /**
+     * Updates the RSSI variable inside the Beacon class with a new
+     * signal strength and the smoothed RSSI from a RssiFilter. The
+     * distance is estimated from the smoothed RSSI.
+     *
+     * @param strength The new RSSI sample of the beacon.
+     * @param smoothed The smoothed RSSI of the beacon.
+     */
+    public void putRssi(int strength, double smoothed) {
+        this.rssi         = strength;
+        this.smoothedRssi = smoothed;
+        this.distance     = computeDistance();
+        this.snapshotCopy = null;
+    }
+
+    /**
+     * Returns the smoothed RSSI of the beacon, this is the RSSI the
+     * distance is estimated from.
+     *
+     * @return double with the smoothed RSSI.
+     */
+    public double getSmoothedRssi() {
+        return smoothedRssi;
+    }
+
+    /**
+     * Returns the ID (MAC address) of the beacon.
+     *
+     * @return A String in xx:yy:xx:yy:xx:yy format with the mac
+     * address of the beacon.
+     */
+    public String getAddress() {
+        return this.mac;
+    }
+
+    /**
+     * Returns the ID (MAC address) of the beacon packed into the
+     * lower 48 bits of a long.
+     *
+     * @return long with the packed MAC, or -1 if the address is malformed.
+     */
+    public long getAddressBits() {
+        return this.macBits;
+    }
+
+    /**
+     * Returns the name of the beacon.
+     *
+     * @return A String in with the name of the beacon
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the UUID of the beacon. <br>
+     *
+     * For a UUID in the UuidDictionary the String is built by the
+     * dictionary and shared by all beacons with the same UUID, else the
+     * beacon builds its own on the first call.
+     *
+     * @return A string with the UUID of the beacon.
+     */
+    public String getUuid() {
+        if (this.uuidId == UuidDictionary.NONE && this.uuidText == null) {
+            // the UUID may have been associated since the beacon was seen
+            this.uuidId = UuidDictionary.find(uuidMsb, uuidLsb);
+            if (this.uuidId == UuidDictionary.NONE)
+                this.uuidText = BeaconParser.formatUuid(uuidMsb, uuidLsb);
+        }
+        if (this.uuidId != UuidDictionary.NONE)
+            return UuidDictionary.toString(this.uuidId);
+        return this.uuidText;
+    }
+
+    /**
+     * Returns the id of the UUID of the beacon in the UuidDictionary,
+     * beacons with the same UUID have the same id.
+     *
+     * @return Integer with the id of the UUID, UuidDictionary.NONE if the
+     * UUID is not allow-listed or associated.
+     */
+    public int getUuidId() {
+        return this.uuidId;
+    }
+
+    /**
+     * Returns the upper 64 bits of the UUID of the beacon.
+     *
+     * @return long with the most significant bits of the UUID.
+     */
+    public long getUuidMostSigBits() {
+        return this.uuidMsb;
+    }
+
+    /**
+     * Returns the lower 64 bits of the UUID of the beacon.
+     *
+     * @return long with the least significant bits of the UUID.
+     */
+    public long getUuidLeastSigBits() {
+        return this.uuidLsb;
+    }
+
+    /**
+     * Returns the format of the advertisement packets the beacon sends.
+     *
+     * @return One of the BeaconParser.FORMAT_ constants.
+     */
+    public int getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Returns true for an Eddystone beacon that hasn't sent both its UID
+     * and its URL frame yet. Eddystone beacons interleave the frames, and
+     * the beacon is created from the first one seen.
+     */
+    boolean missingFrames() {
+        return (format == BeaconParser.FORMAT_EDDYSTONE_URL)
+                || (format == BeaconParser.FORMAT_EDDYSTONE_UID && url == null);
+    }
+
+    /**
+     * Returns true if a frame of the type would add to the beacon, a UID
+     * frame to a beacon seen by its URL frame or the other way round.
+     * Many beacons only send UID and TLM frames, their sightings are not
+     * parsed again.
+     *
+     * @param frame The type of the frame, see BeaconParser.eddystoneFrame().
+     */
+    boolean needsFrame(int frame) {
+        return (frame == BeaconParser.FORMAT_EDDYSTONE_UID && format == BeaconParser.FORMAT_EDDYSTONE_URL)
+                || (frame == BeaconParser.FORMAT_EDDYSTONE_URL && format == BeaconParser.FORMAT_EDDYSTONE_UID
+                        && url == null);
+    }
+
+    /**
+     * Merges another Eddystone frame of the beacon into it. A UID frame
+     * gives a beacon seen by its URL frame the namespace and instance,
+     * and a URL frame gives a beacon without a url its own. Other frames
+     * are ignored.
+     *
+     * @param parser BeaconParser holding the decoded advertisement packet
+     * @return true if the beacon changed.
+     */
+    boolean mergeFrame(BeaconParser parser) {
+        if (parser.getFormat() == BeaconParser.FORMAT_EDDYSTONE_UID
+                && format == BeaconParser.FORMAT_EDDYSTONE_URL) {
+            this.uuidMsb      = parser.getUuidMostSigBits();
+            this.uuidLsb      = parser.getUuidLeastSigBits();
+            this.uuidId       = UuidDictionary.find(uuidMsb, uuidLsb);
+            this.uuidText     = null;
+            this.format       = BeaconParser.FORMAT_EDDYSTONE_UID;
+        }
+        else if (parser.getFormat() == BeaconParser.FORMAT_EDDYSTONE_URL && url == null)
+            this.url          = parser.getUrl();
+        else
+            return false;
+        this.snapshotCopy = null;
+        return true;
+    }
+
+    /**
+     * Returns the Major value of the beacon.
+     *
+     * @return Integer with the 2 byte major value.
+     */
+    public Integer getMajor() {
+        return this.major;
+    }
+
+    /**
+     * Returns the Minor value of the beacon.
+     *
+     * @return Integer with the 2 byte minor value.
+     */
+    public Integer getMinor() {
+        return this.minor;
+    }
+
+    /**
+     * Get the signal level (txPower) the beacon is transmitting with.
+     *
+     * @return Integer with the transmission level.
+     */
+    public Integer getSignalLevel() {
+        return this.signalLevel;
+    }
+
+    /**
+     * Gets the estimated distance from the beacon based on the
+     * beacons advertised signal level at 1m and the smoothed rssi
+     * registered on the device. <br>
+     *
+     * The distance is computed when the RSSI is set, so this is a
+     * plain field read. <br>
+     *
+     * If it is not possible to range estimate the device, infinity
+     * is returned.
+     *
+     * @return A double with the distance from beacon in meters.
+     */
+    public double getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Estimates the distance from the smoothed RSSI and signal level
+     * with the default DistanceModel.
+     *
+     * @return A double with the distance from beacon in meters.
+     */
+    private double computeDistance() {
+        return DistanceModel.getDefault().distance(smoothedRssi, signalLevel);
+    }
+
+    /**
+     * Returns the value of the threshold variable from the beacon class.
+     *
+     * @return Integer with the threshold of the beacon.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Resets the threshold  to its default value.
+     */
+    public void resetThreshold() {
+        this.threshold = initialThreshold;
+    }
+
+    /**
+     * Decrease the threshold variable by 1.
+     */
+    public void decreaseThreshold() {
+        threshold--;
+    }
+
+}
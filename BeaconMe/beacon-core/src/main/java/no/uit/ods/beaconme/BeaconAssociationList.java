@@ -0,0 +1,753 @@
+package no.uit.ods.beaconme;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Implements a BTLE Association list which makes it possible to
+ * search and find values depending the id and uuid of the beacon.<br>
+ *
+ * Searching is first done on ID (MAC), if there is no hit, the
+ * search continues on UUID. This makes it possible to replacing
+ * a beacon while still offering the same information.<br>
+ *
+ * The associations are held as typed records with two indexes, one on
+ * the MAC and one on UUID + major + minor, so looking up a beacon does
+ * not scan the list. The UUID is kept as its id in the UuidDictionary,
+ * the same as the beacons, so it's compared as an int and its String
+ * is shared. The records are converted to JSONObjects when they are
+ * read with get() or saved.<br>
+ *
+ * The associations are saved to a file named "/associations" to make
+ * the data persistent. Changes are not written to it directly, each
+ * add and remove appends a record to "/associations.journal", so saving
+ * a change doesn't depend on the number of associations. The records
+ * are kept in memory by add and remove and written with a single sync
+ * by a background writer shortly after, or by commit() and close(), so
+ * the caller doesn't wait for the disk. When the journal has grown past
+ * a number of records it's compacted by the same writer, the associations are
+ * written to a temporary file which is renamed over "/associations"
+ * and the journal is emptied. Loading reads "/associations" and replays
+ * the journal on top of it, a record cut short by a crash is dropped.<br>
+ *
+ * The list is read on the scanner thread while it's changed on the UI
+ * thread, so the readers are synchronized on the list like add and
+ * remove.<br>
+ *
+ * Author: Espen Maeland Wilhelmsen, espen.wilhelmsen@gmail.com<br>
+ */
+public class BeaconAssociationList {
+    private ArrayList<Association>  associations;
+    // packed MAC -> position in associations
+    private MacIndex                macIndex;
+    // UUID id + major + minor -> position in associations
+    private MacIndex                uuidIndex;
+    private File                    assFile;
+    String                          fileName = "/associations";
+
+    // journal records before the journal is compacted
+    private static final int        COMPACT_RECORDS = 256;
+    // time from a change until the background writer commits it, in milliseconds
+    private static final long       COMMIT_DELAY    = 500;
+    // commits and compacts the journals of all lists, one at a time
+    private static final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "BeaconAssociationList-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private File                    journalFile;
+    private RandomAccessFile        journal;
+    // bytes and records in the journal that are synced to disk, changed under writeLock
+    private long                    journalLength;
+    private int                     journalRecords;
+    // records appended since the last commit
+    private StringBuilder           pending;
+    private int                     pendingRecords;
+    private int                     compactRecords = COMPACT_RECORDS;
+    private boolean                 commitScheduled;
+    private boolean                 compacting;
+    // held while the journal is written or compacted, taken before the lock of the list
+    private final Object            writeLock = new Object();
+
+    /**
+     *  Constructor method for Beacon Association List stored in the
+     *  given file.<br>
+     *
+     * @param file The File the associations are read from and committed to.
+     */
+    public BeaconAssociationList(File file) {
+        assFile         = file;
+        journalFile     = new File(file.getPath() + ".journal");
+        associations    = new ArrayList<>();
+        macIndex        = new MacIndex();
+        uuidIndex       = new MacIndex();
+        pending         = new StringBuilder();
+
+        // If the associations file exist, read data from it and insert it to the list
+        if (assFile.exists()) {
+            try {
+                // read the data from file
+                FileReader fr = new FileReader(assFile);
+                char[] buf = new char[((int) assFile.length())];
+                fr.read(buf);
+                fr.close();
+                JSONArray array = new JSONArray(new String(buf));
+                for (int i = 0; i < array.length(); i++)
+                    associations.add(Association.fromJson((JSONObject) array.get(i)));
+            } catch (Exception e) {
+                BeaconLog.e("BeaconAssociationList", e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        reindex();
+        replay();
+    }
+
+    /**
+     * Adds a beacon association to the "list". If the beacon is not found
+     * by its "id", or the hit is on "uuid" a new association is added.
+     * However if the beacon is found in the list, the values are simply updated.
+     *
+     * @param beacon The Beacon class instance to be added. Contains all possible
+     *               information about the beacon.
+     * @param name String with the name of the Beacon, this is to make the
+     *             beacon easier to identify.
+     * @param value String with the association of the beacon, this might be
+     *              a URL or simply a label.
+     * @param notify Integer with notification level
+     *               0 = no notify,
+     *               1 = notify when closer than 1m
+     *               2 = notify when closer than 15m,
+     *               3 = notify reguardless
+     *
+     * @throws JSONException The input data is inserted to a new JSONObject
+     * which might cause this exception. It might also be caused when inserting
+     * the JSONObject into the JSONArray.
+     */
+    public synchronized void add (Beacon beacon, String name, String value, int notify)
+            throws JSONException, IOException {
+        int i = this.contains(beacon);
+        // Beacon is not in list, create a new entry
+        if (i == -1) {
+            Association ass = new Association();
+            ass.id = beacon.getAddress();
+            ass.set(beacon, name, value, notify);
+            associations.add(ass);
+            index(associations.size() - 1);
+            i = associations.size() - 1;
+        }
+        // The beacon is in list, the values must be updated,
+        else {
+            Association ass = associations.get(i);
+            unindexUuid(i);
+            ass.set(beacon, name, value, notify);
+            index(i);
+        }
+        JSONObject record = new JSONObject();
+        record.put("op", "put");
+        record.put("association", associations.get(i).toJson());
+        append(record);
+    }
+
+    /**
+     * Removes an association from the list by iterating the list
+     * while searching for the ID (MAC) of the beacon. The removal is
+     * written to the journal by the background writer.
+     *
+     * @param id String to identify the association to be removed.
+     *           It's the ID (MAC) address of the beacon.
+     * @throws JSONException Might be thrown since the associations
+     * is stored in JSONObject within A JSONArray.
+     */
+    public synchronized void remove (String id) throws JSONException {
+        if (removeId(id)) {
+            JSONObject record = new JSONObject();
+            record.put("op", "remove");
+            record.put("id", id);
+            append(record);
+        }
+    }
+
+    private boolean removeId (String id) {
+        boolean removed = false;
+        for (int i = associations.size() - 1; i >= 0; i--) {
+            if (associations.get(i).id.equals(id)) {
+                associations.remove(i);
+                removed = true;
+            }
+        }
+        // positions after the removed ones have moved
+        if (removed)
+            reindex();
+        return removed;
+    }
+
+    /**
+     * Returns a String with the association tied to either a ID (MAC) or
+     * the UUID of a beacon.
+     *
+     * @param beacon The Beacon class instance to be added. Contains all possible
+     *               information about the beacon.
+     * @return Returns null if the id/uuid is not found.
+     * @throws JSONException Might be thrown due to data being stored
+     * in JSONObjects placed inside a JSONArray.
+     */
+    public synchronized String getAssociation (Beacon beacon) throws JSONException {
+        int i = this.contains(beacon);
+        // id not found in list
+        if (i == -1)
+            return null;
+        // found the id, returning the value
+        else
+            return associations.get(i).value;
+    }
+
+    /**
+     * Returns a String with the name tied to either a ID (MAC) or the
+     * UUID of a beacon.
+     *
+     * @param beacon The Beacon class instance to be added. Contains all possible
+     *               information about the beacon.
+     * @return Returns null if the id/uuid is not found.
+     * @throws JSONException Might be thrown due to data being stored
+     * in JSONObjects placed inside a JSONArray.
+     */
+    public synchronized String getName (Beacon beacon) throws JSONException {
+        int i = this.contains(beacon);
+        // id not found in list
+        if (i == -1)
+            return null;
+            // found the id, returning the value
+        else
+            return associations.get(i).name;
+    }
+
+    /**
+     * Return the notify parameter of the beacon
+     *
+     * @param beacon The beacon we are looking for
+     * @return Returns the notification parameter, if not found -1 is returned.
+     * @throws JSONException Data is stored in JSONArray and JSONObject
+     * so JSONException might be thrown when accessing these structures.
+     */
+    public synchronized int getNotify (Beacon beacon) throws JSONException {
+        int i = this.contains(beacon);
+        if (i == -1)
+            return -1;
+        else
+            return associations.get(i).notify;
+    }
+
+    /**
+     * Returns the association number "i" within the list. The JSONObject
+     * is created from the record on the first call and reused until the
+     * association is updated, it must not be modified.
+     *
+     * @param i Integer representing the list number to get.
+     * @return JSONObject with the association at position "i".
+     * @throws JSONException Might be thrown due to data being stored
+     * in JSONObjects placed inside a JSONArray.
+     */
+    public synchronized JSONObject get (int i) throws JSONException {
+        if (i < 0 || i >= associations.size())
+            throw new JSONException("Index " + i + " out of range [0.." + associations.size() + ")");
+        return associations.get(i).toJson();
+    }
+
+    /**
+     * Searches for a association in the list, returns the position
+     * where the id or uuid is found. If not found -1 is returned.
+     * A hit on the id (MAC) is preferred over a hit on UUID + major
+     * + minor.
+     *
+     * @param beacon The Beacon class instance to be added. Contains all possible
+     *               information about the beacon.
+     * @return Integer with the position of the association
+     * @throws JSONException Kept for compatibility, the lookup no longer
+     * reads JSON.
+     */
+    public synchronized int contains (Beacon beacon) throws JSONException {
+        // hit on id
+        long bits = beacon.getAddressBits();
+        if (bits >= 0) {
+            int i = macIndex.get(bits);
+            if (i != -1)
+                return i;
+        }
+        else {
+            for (int i = 0; i < associations.size(); i++) {
+                if (associations.get(i).id.equals(beacon.getAddress()))
+                    return i;
+            }
+        }
+
+        // hit on uuid, the record is checked as the key only holds 16 bits of major and minor
+        int uuidId  = beacon.getUuidId();
+        // the beacon may have been seen before its UUID was associated
+        if (uuidId == UuidDictionary.NONE)
+            uuidId = UuidDictionary.find(beacon.getUuidMostSigBits(), beacon.getUuidLeastSigBits());
+        if (uuidId == UuidDictionary.NONE)
+            return -1;
+        int major   = beacon.getMajor();
+        int minor   = beacon.getMinor();
+        int i       = uuidIndex.get(uuidKey(uuidId, major, minor));
+        if (i == -1)
+            return -1;
+        if (associations.get(i).matches(uuidId, major, minor))
+            return i;
+
+        // an association read with a major or minor out of range, search the list
+        for (int j = 0; j < associations.size(); j++) {
+            if (associations.get(j).matches(uuidId, major, minor))
+                return j;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the specified beacon is within the range set in the
+     * association.
+     *
+     * @param beacon The beacon which should be checked.
+     * @return True or false is returned depending the value of notify
+     * in the association and the distance of the beacon.
+     * @throws JSONException
+     */
+    public synchronized boolean notify (Beacon beacon) throws JSONException {
+        int idx = contains(beacon);
+        if (idx != -1) {
+            Association ass = this.associations.get(idx);
+
+            //check if notification must be issued.
+            int notify = ass.notify;
+            double distance = beacon.getDistance();
+            if (notify == 1 && distance < 1.0) {
+                return true;
+            } else if (notify == 2 && distance < 15.0) {
+                return true;
+            } else if (notify == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translate the notify parameter to something readable
+     *
+     * @param notify The notify variable to be translated
+     * @return Returns a String with a readable text describing the
+     * notify variable.
+     */
+    public String getNotificationString (Integer notify) {
+        switch (notify) {
+            case 0:
+                return "Never";
+            case 1:
+                return "Immediate";
+            case 2:
+                return "Near";
+            case 3:
+                return "Far";
+            default:
+                return "Not set";
+        }
+    }
+
+    /**
+     * Returns the number of objects (associations) in the list.
+     *
+     * @return Integer representing the length of the list.
+     */
+    public synchronized int getCount () {
+        return associations.size();
+    }
+
+    /**
+     * Commits the association list to disk, the changes since the last
+     * commit are appended to the journal with a single write and sync.
+     * The list is only locked while the changes are taken, add and
+     * remove don't wait for the disk. If the write fails the changes
+     * are kept for the next commit.
+     *
+     * @throws IOException Might be thrown due to disk- write
+     * operations.
+     */
+    public void commit () throws IOException {
+        synchronized (writeLock) {
+            String  text;
+            int     records;
+            long    offset;
+            synchronized (this) {
+                if (pendingRecords == 0)
+                    return;
+                text            = pending.toString();
+                records         = pendingRecords;
+                offset          = journalLength;
+                pending.setLength(0);
+                pendingRecords  = 0;
+            }
+
+            byte[] data = text.getBytes("UTF-8");
+            try {
+                if (journal == null)
+                    journal = new RandomAccessFile(journalFile, "rw");
+                // a failed commit may have left part of a record behind
+                journal.seek(offset);
+                journal.write(data);
+                if (journal.length() > offset + data.length)
+                    journal.setLength(offset + data.length);
+                journal.getFD().sync();
+            } catch (IOException e) {
+                synchronized (this) {
+                    pending.insert(0, text);
+                    pendingRecords += records;
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                journalLength   += data.length;
+                journalRecords  += records;
+                if (journalRecords >= compactRecords && !compacting) {
+                    compacting = true;
+                    writer.execute(compactTask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits the associations and closes the journal. The list may
+     * still be used, the journal is opened again by the next commit.
+     *
+     * @throws IOException If the commit fails.
+     */
+    public void close () throws IOException {
+        synchronized (writeLock) {
+            commit();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Sets the number of journal records that starts a compaction.
+     */
+    synchronized void setCompactThreshold (int records) {
+        compactRecords = records;
+    }
+
+    /**
+     * Writes all associations to "/associations" and empties the journal.
+     * Only the records of the associations are taken while holding the
+     * lock of the list, they are converted and written to disk without
+     * it so add and remove don't wait for the disk. The changes made in
+     * the meantime are committed to the new journal, and replaying
+     * records that are also in the snapshot gives the same list, so a
+     * crash at any point leaves a consistent pair of files. Only one
+     * compaction or commit runs at a time, a second call waits for the
+     * first.
+     *
+     * @throws IOException If the files can't be written or renamed.
+     */
+    void compact () throws IOException {
+        synchronized (writeLock) {
+            commit();
+
+            ArrayList<JSONObject> records;
+            try {
+                synchronized (this) {
+                    records = new ArrayList<>(associations.size());
+                    for (Association ass : associations)
+                        records.add(ass.toJson());
+                }
+            } catch (JSONException e) {
+                throw new IOException("Failed to convert associations to JSON: " + e.getMessage());
+            }
+            byte[] snapshot = new JSONArray(records).toString().getBytes("UTF-8");
+
+            File tmp = new File(assFile.getPath() + ".tmp");
+            writeSynced(tmp, snapshot, snapshot.length);
+            if (!tmp.renameTo(assFile))
+                throw new IOException("Failed to rename " + tmp + " to " + assFile);
+
+            // the records in the journal are all in the snapshot
+            File tmpJournal = new File(journalFile.getPath() + ".tmp");
+            writeSynced(tmpJournal, new byte[0], 0);
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            if (!tmpJournal.renameTo(journalFile))
+                throw new IOException("Failed to rename " + tmpJournal + " to " + journalFile);
+            journalLength   = 0;
+            journalRecords  = 0;
+        }
+    }
+
+    /**
+     * Adds a journal record to be written by the next commit, and has the
+     * background writer commit it if it's not about to.
+     */
+    private void append (JSONObject record) {
+        pending.append(record.toString()).append('\n');
+        pendingRecords++;
+        if (!commitScheduled) {
+            commitScheduled = true;
+            writer.schedule(commitTask, COMMIT_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Commits the records appended since it was scheduled, on the
+     * background writer.
+     */
+    private final Runnable commitTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (BeaconAssociationList.this) {
+                commitScheduled = false;
+            }
+            try {
+                commit();
+            } catch (IOException e) {
+                BeaconLog.e("BeaconAssociationList", "Failed to commit journal: " + e.getMessage());
+            }
+        }
+    };
+
+    /**
+     * Compacts the journal on the background writer.
+     */
+    private final Runnable compactTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compact();
+            } catch (IOException e) {
+                BeaconLog.e("BeaconAssociationList", "Failed to compact journal: " + e.getMessage());
+            } finally {
+                synchronized (BeaconAssociationList.this) {
+                    compacting = false;
+                }
+            }
+        }
+    };
+
+    /**
+     * Applies the records in the journal to the associations read from
+     * "/associations". Reading stops at the first record that isn't
+     * complete, the next commit overwrites it.
+     */
+    private void replay () {
+        if (!journalFile.exists())
+            return;
+        try {
+            RandomAccessFile in = new RandomAccessFile(journalFile, "r");
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            in.close();
+
+            int start = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n')
+                    continue;
+                try {
+                    apply(new JSONObject(new String(data, start, i - start, "UTF-8")));
+                } catch (JSONException e) {
+                    BeaconLog.e("BeaconAssociationList", "Invalid journal record: " + e.getMessage());
+                    break;
+                }
+                start = i + 1;
+                journalRecords++;
+            }
+            journalLength = start;
+        } catch (IOException e) {
+            BeaconLog.e("BeaconAssociationList", "Failed to read journal: " + e.getMessage());
+        }
+    }
+
+    private void apply (JSONObject record) throws JSONException {
+        String op = record.getString("op");
+        if (op.equals("put")) {
+            Association ass = Association.fromJson(record.getJSONObject("association"));
+            int i = indexOf(ass.id);
+            if (i == -1) {
+                associations.add(ass);
+                index(associations.size() - 1);
+            }
+            else {
+                unindexUuid(i);
+                associations.set(i, ass);
+                index(i);
+            }
+        }
+        else if (op.equals("remove"))
+            removeId(record.getString("id"));
+        else
+            throw new JSONException("Unknown journal operation: " + op);
+    }
+
+    /**
+     * Returns the position of the association with the id, or -1.
+     */
+    private int indexOf (String id) {
+        long bits = MacIndex.pack(id);
+        if (bits >= 0)
+            return macIndex.get(bits);
+        for (int i = 0; i < associations.size(); i++) {
+            if (associations.get(i).id.equals(id))
+                return i;
+        }
+        return -1;
+    }
+
+    private static void writeSynced (File file, byte[] data, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data, 0, length);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Combines the UUID id, major and minor into a non negative key for
+     * the uuid index.
+     */
+    private static long uuidKey(int uuidId, int major, int minor) {
+        return ((long) uuidId << 32) | ((long) (major & 0xffff) << 16) | (minor & 0xffff);
+    }
+
+    /**
+     * Adds the association at position i to the indexes.
+     */
+    private void index(int i) {
+        Association ass = associations.get(i);
+        long bits = MacIndex.pack(ass.id);
+        if (bits >= 0 && macIndex.get(bits) == -1)
+            macIndex.put(bits, i);
+        if (ass.uuidId != UuidDictionary.NONE) {
+            long key = uuidKey(ass.uuidId, ass.major, ass.minor);
+            if (uuidIndex.get(key) == -1)
+                uuidIndex.put(key, i);
+        }
+    }
+
+    /**
+     * Removes the uuid of the association at position i from the uuid
+     * index, before it's changed.
+     */
+    private void unindexUuid(int i) {
+        Association ass = associations.get(i);
+        if (ass.uuidId == UuidDictionary.NONE)
+            return;
+        long key = uuidKey(ass.uuidId, ass.major, ass.minor);
+        if (uuidIndex.get(key) != i)
+            return;
+        uuidIndex.remove(key);
+        // another association might have the same uuid
+        for (int j = 0; j < associations.size(); j++) {
+            Association other = associations.get(j);
+            if (j != i && other.uuidId != UuidDictionary.NONE
+                    && key == uuidKey(other.uuidId, other.major, other.minor)) {
+                uuidIndex.put(key, j);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the indexes after the list has been changed.
+     */
+    private void reindex() {
+        macIndex.clear();
+        uuidIndex.clear();
+        for (int i = 0; i < associations.size(); i++)
+            index(i);
+    }
+
+    /**
+     * A beacon association as stored in the file.
+     */
+    private static class Association {
+        String      id;
+        int         uuidId = UuidDictionary.NONE;
+        // the uuid as read when it's not a UUID, written back unchanged
+        String      badUuid;
+        int         major;
+        int         minor;
+        String      name;
+        String      value;
+        int         notify;
+        // the record as JSON, created by toJson() and dropped when changed
+        JSONObject  json;
+
+        void set(Beacon beacon, String name, String value, int notify) {
+            this.uuidId             = UuidDictionary.id(beacon.getUuidMostSigBits(),
+                                              beacon.getUuidLeastSigBits());
+            this.badUuid            = null;
+            this.major              = beacon.getMajor();
+            this.minor              = beacon.getMinor();
+            this.name               = name;
+            this.value              = value;
+            this.notify             = notify;
+            this.json               = null;
+        }
+
+        boolean matches(int uuidId, int major, int minor) {
+            return this.uuidId != UuidDictionary.NONE && this.uuidId == uuidId
+                    && this.major == major && this.minor == minor;
+        }
+
+        JSONObject toJson() throws JSONException {
+            if (json == null) {
+                JSONObject o = new JSONObject();
+                o.put("id", id);
+                o.put("uuid", uuidId == UuidDictionary.NONE ? badUuid : UuidDictionary.toString(uuidId));
+                o.put("major", major);
+                o.put("minor", minor);
+                o.put("name", name);
+                o.put("value", value);
+                o.put("notify", notify);
+                json = o;
+            }
+            return json;
+        }
+
+        static Association fromJson(JSONObject o) throws JSONException {
+            Association ass = new Association();
+            ass.id      = o.getString("id");
+            ass.uuidId  = UuidDictionary.id(o.getString("uuid"));
+            ass.major   = o.getInt("major");
+            ass.minor   = o.getInt("minor");
+            ass.name    = o.getString("name");
+            ass.value   = o.getString("value");
+            ass.notify  = o.getInt("notify");
+            // only found by id
+            if (ass.uuidId == UuidDictionary.NONE)
+                ass.badUuid = o.getString("uuid");
+            return ass;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package no.uit.ods.beaconme;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ *  The changes to the beacons nearby since a listener of the scanner
+ *  service was last called. <br>
+ *
+ *  Beacons that came in range are entered, beacons still in range whose
+ *  RSSI changed are updated and beacons that went out of range are
+ *  exited. When several scans are delivered together the changes are
+ *  combined, so each beacon is in at most one of the lists: a beacon
+ *  that came and went between two calls is not in the delta at all, and
+ *  a beacon that went and came back is updated. <br>
+ *
+ *  The beacons are the read only copies from the service snapshots.
+ */
+public class BeaconDelta {
+    /**
+     * The kind of change to a beacon.
+     */
+    public enum Type { ENTERED, UPDATED, EXITED }
+
+    private final List<Beacon>  entered;
+    private final List<Beacon>  updated;
+    private final List<Beacon>  exited;
+    private final BeaconList    list;
+
+    private BeaconDelta(List<Beacon> entered, List<Beacon> updated, List<Beacon> exited, BeaconList list) {
+        this.entered    = Collections.unmodifiableList(entered);
+        this.updated    = Collections.unmodifiableList(updated);
+        this.exited     = Collections.unmodifiableList(exited);
+        this.list       = list;
+    }
+
+    /**
+     * Returns the beacons that came in range.
+     */
+    public List<Beacon> getEntered() {
+        return entered;
+    }
+
+    /**
+     * Returns the beacons still in range with a new RSSI.
+     */
+    public List<Beacon> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the beacons that went out of range, as they were last seen.
+     */
+    public List<Beacon> getExited() {
+        return exited;
+    }
+
+    /**
+     * Returns the snapshot of the service list the delta leads up to.
+     */
+    public BeaconList getList() {
+        return list;
+    }
+
+    /**
+     * Returns true if no beacon changed.
+     */
+    public boolean isEmpty() {
+        return entered.isEmpty() && updated.isEmpty() && exited.isEmpty();
+    }
+
+    /**
+     * Collects changes until they are delivered, combining the changes
+     * to the same beacon. Not thread safe.
+     */
+    public static class Builder {
+        // MAC -> the combined change, in the order the beacons first changed
+        private final LinkedHashMap<String, Change> changes = new LinkedHashMap<>();
+
+        private static class Change {
+            Type    type;
+            Beacon  beacon;
+
+            Change(Type type, Beacon beacon) {
+                this.type   = type;
+                this.beacon = beacon;
+            }
+        }
+
+        /**
+         * Adds a change to a beacon.
+         *
+         * @param type The kind of change.
+         * @param beacon The beacon as it is after the change.
+         */
+        public void add(Type type, Beacon beacon) {
+            String mac  = beacon.getAddress();
+            Change c    = changes.get(mac);
+            if (c == null) {
+                changes.put(mac, new Change(type, beacon));
+                return;
+            }
+
+            c.beacon = beacon;
+            switch (c.type) {
+                case ENTERED:
+                    // came and went, nothing to tell
+                    if (type == Type.EXITED)
+                        changes.remove(mac);
+                    break;
+                case UPDATED:
+                    if (type == Type.EXITED)
+                        c.type = Type.EXITED;
+                    break;
+                case EXITED:
+                    // went and came back
+                    if (type != Type.EXITED)
+                        c.type = Type.UPDATED;
+                    break;
+            }
+        }
+
+        /**
+         * Adds all the changes collected by another builder.
+         */
+        public void addAll(Builder other) {
+            for (Change c : other.changes.values())
+                add(c.type, c.beacon);
+        }
+
+        /**
+         * Returns the number of beacons with changes.
+         */
+        public int size() {
+            return changes.size();
+        }
+
+        public boolean isEmpty() {
+            return changes.isEmpty();
+        }
+
+        public void clear() {
+            changes.clear();
+        }
+
+        /**
+         * Creates the delta from the changes collected, and clears them.
+         *
+         * @param list The snapshot of the list the changes lead up to.
+         * @return The BeaconDelta.
+         */
+        public BeaconDelta build(BeaconList list) {
+            ArrayList<Beacon> entered   = new ArrayList<>();
+            ArrayList<Beacon> updated   = new ArrayList<>();
+            ArrayList<Beacon> exited    = new ArrayList<>();
+            for (Change c : changes.values()) {
+                switch (c.type) {
+                    case ENTERED:
+                        entered.add(c.beacon);
+                        break;
+                    case UPDATED:
+                        updated.add(c.beacon);
+                        break;
+                    case EXITED:
+                        exited.add(c.beacon);
+                        break;
+                }
+            }
+            changes.clear();
+            return new BeaconDelta(entered, updated, exited, list);
+        }
+    }
+}
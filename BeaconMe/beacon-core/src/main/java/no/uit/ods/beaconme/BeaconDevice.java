@@ -0,0 +1,18 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  The device a beacon was seen from, so Beacon doesn't depend on the
+ *  Android BluetoothDevice. The app wraps the BluetoothDevice of the
+ *  scan callback, tests and tools can implement it directly.
+ */
+public interface BeaconDevice {
+    /**
+     * Returns the MAC address in XX:YY:XX:YY:XX:YY format.
+     */
+    String getAddress();
+
+    /**
+     * Returns the name of the device, or null if it's unknown.
+     */
+    String getName();
+}
@@ -0,0 +1,136 @@
+package no.uit.ods.beaconme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ *  Matches the beacons registered in the checked categories against the
+ *  beacons nearby. <br>
+ *
+ *  The set of checked category ids is built once, and the registered
+ *  beacons are added to a MacIndex on their MAC as they are read from
+ *  the back-end system. Beacons in other categories are not kept. Each
+ *  refresh is then a single pass over the nearby beacons with one index
+ *  lookup per beacon, so its cost depends on the number of beacons in
+ *  range and not on the number registered. <br>
+ *
+ *  Several registered beacons may share a MAC, they are chained so all
+ *  of them are matched. MACs are compared as addresses, so the case of
+ *  the hex digits doesn't matter, and registered beacons without a valid
+ *  MAC are never matched.
+ *
+ * @param <T> The type of the registered beacons.
+ */
+public class BeaconFilterEngine<T> {
+    private final HashSet<Integer>  categories;
+    // packed MAC -> first registered beacon with the MAC
+    private final MacIndex          index;
+    private final ArrayList<T>      items;
+    // position of the next beacon with the same MAC, or -1
+    private int[]                   next;
+
+    /**
+     * Receives the registered beacons that are in range.
+     *
+     * @param <T> The type of the registered beacons.
+     */
+    public interface Match<T> {
+        /**
+         * Called once for each registered beacon that is nearby.
+         *
+         * @param item The registered beacon.
+         * @param beacon The nearby beacon with the same MAC.
+         */
+        void onMatch(T item, Beacon beacon);
+    }
+
+    /**
+     * Constructor method, creates an engine keeping the beacons in the
+     * given categories.
+     *
+     * @param categoryIds The ids of the checked categories.
+     */
+    public BeaconFilterEngine(Collection<Integer> categoryIds) {
+        categories  = new HashSet<>(categoryIds);
+        index       = new MacIndex();
+        items       = new ArrayList<>();
+        next        = new int[16];
+    }
+
+    /**
+     * Returns true if beacons in the category are kept.
+     */
+    public boolean accepts(int categoryId) {
+        return categories.contains(categoryId);
+    }
+
+    /**
+     * Adds a registered beacon, if it's in one of the checked categories
+     * and has a valid MAC.
+     *
+     * @param categoryId The id of the category of the beacon.
+     * @param mac String with the MAC of the beacon.
+     * @param item The beacon handed to Match.onMatch().
+     * @return True if the beacon was added.
+     */
+    public boolean add(int categoryId, String mac, T item) {
+        if (!categories.contains(categoryId))
+            return false;
+        long bits = MacIndex.pack(mac);
+        if (bits < 0)
+            return false;
+
+        int pos = items.size();
+        if (pos == next.length)
+            next = Arrays.copyOf(next, pos * 2);
+        items.add(item);
+        // the new beacon goes first in the chain
+        next[pos] = index.get(bits);
+        index.put(bits, pos);
+        return true;
+    }
+
+    /**
+     * Returns the number of registered beacons kept.
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Hands each kept beacon that is in range to the match, in the order
+     * of the nearby list.
+     *
+     * @param nearby The beacons in range, e.g. a snapshot from the service.
+     * @param match The Match receiving the beacons.
+     * @return The number of matches.
+     */
+    public int match(BeaconList nearby, Match<T> match) {
+        int count = 0;
+        for (int i = 0; i < nearby.getCount(); i++)
+            count += match(nearby.getItem(i), match);
+        return count;
+    }
+
+    /**
+     * Hands each kept beacon with the MAC of the given beacon to the
+     * match, used to handle the beacons in a BeaconDelta.
+     *
+     * @param beacon The beacon nearby.
+     * @param match The Match receiving the beacons.
+     * @return The number of matches.
+     */
+    public int match(Beacon beacon, Match<T> match) {
+        long bits = beacon.getAddressBits();
+        if (bits < 0)
+            return 0;
+        int count = 0;
+        for (int pos = index.get(bits); pos != -1; pos = next[pos]) {
+            match.onMatch(items.get(pos), beacon);
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,254 @@
+package no.uit.ods.beaconme;
+
+import java.io.IOException;
+
+/**
+ *  The path from the raw sightings of the scanner to the published list
+ *  and the changes of each scan, without the Android parts of the
+ *  scanner service. <br>
+ *
+ *  The scan callback offers the sightings, the packets that are not
+ *  beacons are dropped by a BeaconPrefilter and the rest buffered in a
+ *  SightingBuffer and added to the BeaconList in batches by drain().
+ *  The advertisement packet is copied into a slot of the buffer and
+ *  only parsed, in place, for beacons not in the list and for the
+ *  Eddystone frame a beacon is missing, a UID frame for a beacon seen by
+ *  its URL frame or the other way round. The type of the frame is read
+ *  from the packet first, so a beacon sending only UID and TLM frames is
+ *  not parsed again. Eddystone-TLM frames have no id, they only update
+ *  beacons already in the list. After each drain that added sightings a
+ *  read only snapshot of the list is published. The drained sightings can
+ *  also be recorded, see setRecorder(), so the producer doesn't wait for
+ *  the capture. <br>
+ *
+ *  endScan() takes in the last sightings, expires the beacons out of
+ *  range and compares the list with the one at the end of the previous
+ *  scan, giving the changes as a BeaconDelta.Builder and the counts the
+ *  ScanSchedulePolicy needs. <br>
+ *
+ *  Both count into a ScannerMetrics, the latency of the sightings, the
+ *  evictions and the size of the list. <br>
+ *
+ *  offer() must only be called from one thread at a time, the other
+ *  methods from the single thread owning the list. getSnapshot(),
+ *  getDropped(), getMetricsSnapshot() and setRecorder() can be called
+ *  from any thread.
+ */
+public class BeaconIngest {
+    private static final int DRAIN_BATCH = 256;
+
+    private final SightingBuffer        sightings;
+    private final BeaconList            list;
+    // Decodes the advertisement packets of new beacons
+    private final BeaconParser          parser  = new BeaconParser();
+    // The list as it was at the end of the last scan, and the changes since
+    private BeaconList                  lastScan = new BeaconList().snapshot();
+    private final BeaconDelta.Builder   changes = new BeaconDelta.Builder();
+    private int                         newBeacons;
+    private double                      maxRssiChange;
+    // Read only copy of the list handed to the clients
+    private volatile BeaconList         snapshot = new BeaconList().snapshot();
+    private final ScannerMetrics        metrics = new ScannerMetrics();
+    // Drops the packets that are not beacons before they're buffered
+    private final BeaconPrefilter       prefilter = new BeaconPrefilter();
+    // Records the drained sightings, null if not recording
+    private volatile SightingRecorder   recorder;
+
+    /**
+     * Adds a sighting to the list.
+     */
+    private final SightingBuffer.Reader ingest = new SightingBuffer.Reader() {
+        @Override
+        public void onSighting(String mac, int rssi, ScanRecord record, long time) {
+            SightingRecorder r = recorder;
+            if (r != null) {
+                try {
+                    r.recordView(time / 1000000, mac, rssi, record);
+                } catch (IOException e) {
+                    BeaconLog.e("BeaconIngest", "Failed to record sighting, recording stopped: " + e.getMessage());
+                    recorder = null;
+                }
+            }
+
+            long bits = MacIndex.pack(mac);
+            if (list.update(bits, mac, rssi)) {
+                // the UID and URL frames of an Eddystone beacon come one at a time
+                Beacon beacon = list.get(bits, mac);
+                if (beacon.missingFrames() && beacon.needsFrame(BeaconParser.eddystoneFrame(record)))
+                    beacon.mergeFrame(parser.parse(record));
+            }
+            else if (parser.parse(record).getFormat() != BeaconParser.FORMAT_EDDYSTONE_TLM)
+                list.addDevice(new Beacon(mac, null, rssi, parser));
+        }
+    };
+
+    /**
+     * Constructor method.
+     *
+     * @param list The BeaconList the sightings are added to.
+     * @param capacity The number of sightings that can wait to be drained.
+     */
+    public BeaconIngest(BeaconList list, int capacity) {
+        this.list       = list;
+        this.sightings  = new SightingBuffer(capacity);
+    }
+
+    /**
+     * Records the sightings drained from now on, so the producer doesn't
+     * write to the capture. Only the sightings passing the prefilter are
+     * recorded.
+     *
+     * @param recorder The SightingRecorder to write to, null to stop.
+     */
+    public void setRecorder(SightingRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Adds a sighting to the buffer, called by the thread producing the
+     * sightings. Packets rejected by the prefilter are dropped here.
+     *
+     * @param mac String with the MAC address of the device.
+     * @param rssi Integer with the signal strength in dBm.
+     * @param record The raw advertisement packet.
+     * @return false if the sighting was rejected or the buffer was full.
+     */
+    public boolean offer(String mac, int rssi, byte[] record) {
+        int result = prefilter.check(record);
+        metrics.countPrefilter(result);
+        return result == BeaconPrefilter.ACCEPTED && sightings.offer(mac, rssi, record);
+    }
+
+    /**
+     * Adds the buffered sightings to the list in batches, and publishes
+     * a new snapshot if there were any.
+     *
+     * @return The number of sightings added.
+     */
+    public int drain() {
+        int drained = 0;
+        int n;
+        while ((n = sightings.drain(ingest, DRAIN_BATCH, metrics.getLatency())) > 0)
+            drained += n;
+
+        if (drained > 0) {
+            snapshot = list.snapshot();
+            metrics.addSightings(drained);
+            metrics.setListSize(list.getCount());
+        }
+        return drained;
+    }
+
+    /**
+     * Marks the start of a scan in the list.
+     */
+    public void startScan() {
+        list.startScan();
+    }
+
+    /**
+     * Ends a scan: takes in the last sightings, drops the beacons out of
+     * range and adds the changes since the last scan to getChanges().
+     */
+    public void endScan() {
+        drain();
+        long start   = System.nanoTime();
+        int  evicted = list.expire();
+        metrics.recordScan(evicted, System.nanoTime() - start, list.getCount());
+        if (evicted > 0)
+            snapshot = list.snapshot();
+
+        BeaconList current = snapshot;
+        newBeacons      = 0;
+        maxRssiChange   = 0;
+        for (int i = 0; i < current.getCount(); i++) {
+            Beacon beacon   = current.getItem(i);
+            Beacon before   = lastScan.get(beacon);
+            if (before == null) {
+                newBeacons++;
+                changes.add(BeaconDelta.Type.ENTERED, beacon);
+            }
+            else if (beacon.getSmoothedRssi() != before.getSmoothedRssi()) {
+                maxRssiChange = Math.max(maxRssiChange,
+                        Math.abs(beacon.getSmoothedRssi() - before.getSmoothedRssi()));
+                changes.add(BeaconDelta.Type.UPDATED, beacon);
+            }
+            // an Eddystone beacon got its UID or URL frame
+            else if (beacon.getFormat() != before.getFormat() || beacon.getUrl() != before.getUrl())
+                changes.add(BeaconDelta.Type.UPDATED, beacon);
+        }
+        for (int i = 0; i < lastScan.getCount(); i++) {
+            if (current.get(lastScan.getItem(i)) == null)
+                changes.add(BeaconDelta.Type.EXITED, lastScan.getItem(i));
+        }
+        lastScan = current;
+    }
+
+    /**
+     * Returns the changes collected by endScan(), the caller clears them
+     * once they are handed on.
+     */
+    public BeaconDelta.Builder getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns the number of beacons that came in range in the last scan.
+     */
+    public int getNewBeacons() {
+        return newBeacons;
+    }
+
+    /**
+     * Returns the largest change of smoothed RSSI of a beacon in range in
+     * the last scan, in dB.
+     */
+    public double getMaxRssiChange() {
+        return maxRssiChange;
+    }
+
+    /**
+     * Returns the snapshot of the list published last, it does not change
+     * after it's returned.
+     */
+    public BeaconList getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of sightings waiting to be drained.
+     */
+    public int getPending() {
+        return sightings.size();
+    }
+
+    /**
+     * Returns the number of sightings dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return sightings.getDropped();
+    }
+
+    /**
+     * Returns the prefilter checking the packets offered, to set the
+     * allow-list of UUIDs.
+     */
+    public BeaconPrefilter getPrefilter() {
+        return prefilter;
+    }
+
+    /**
+     * Returns the metrics counted by offer(), drain() and endScan(), the
+     * owner of the ingest may add its own.
+     */
+    public ScannerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics as they are now, can be called from any thread.
+     */
+    public ScannerMetrics.Snapshot getMetricsSnapshot() {
+        return metrics.snapshot(getDropped());
+    }
+}
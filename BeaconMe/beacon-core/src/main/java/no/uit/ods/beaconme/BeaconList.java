@@ -0,0 +1,516 @@
+package no.uit.ods.beaconme;
+
+import java.util.ArrayList;
+
+/**
+ *  Storage class for the bluetooth low energy devices.
+ *  The class is specialised to hold the Beacon class objects. <br>
+ *
+ *  The add method adds a beacon only after checking if the address (MAC)
+ *  of the beacon is already in the list. The beacons are indexed on
+ *  their MAC packed into a long, so lookups by address do not scan
+ *  the list. <br>
+ *
+ *  The clear method of the class is based on the threshold
+ *  variable in the Beacon class, if a beacon has a threshold of 0
+ *  it's removed, if not it left in the list and the threshold is
+ *  decreased. <br>
+ *
+ *  If the list is created with a timeout, beacons are instead removed
+ *  when they have not been seen for the timeout. The time each beacon
+ *  was last seen is kept in an ExpiryWheel, so expire() only looks at
+ *  the beacons that are due and there is no sweep of the whole list
+ *  between scans. <br>
+ *
+ *  A distance ordered view of the beacons is maintained next to the
+ *  list, see DistanceOrder. After sort() is called, getItem returns the
+ *  beacons closest first. <br>
+ *
+ *  The snapshot method returns a read only copy of the list which is
+ *  safe to hand to other threads. A beacon is copied once and the copy
+ *  is shared by the snapshots until its RSSI changes, and the same
+ *  snapshot is returned again while nothing in the list changed. <br>
+ *
+ *  If the list is created with a RssiFilter, every RSSI sample of a
+ *  beacon is passed through the beacon's track in the filter and the
+ *  distance is estimated from the smoothed RSSI.
+ *
+ *  Author: Espen Mæland Wilhelmsen, espen.wilhelmsen@gmail.com *
+ */
+public class BeaconList {
+    private ArrayList<Beacon> list;
+    // packed MAC -> position in list
+    private MacIndex          index;
+    private DistanceOrder     order;
+    private boolean           sorted;
+    private boolean           readOnly;
+    private RssiFilter        filter;
+    // filter state of the beacon at the same position in list
+    private ArrayList<RssiFilter.Track> tracks;
+    // last seen times of the beacons, null if beacons are removed by clear()
+    private ExpiryWheel<Beacon> wheel;
+    private Clock             clock;
+    private long              scanStart;
+    // beacons added, removed or reordered since the last snapshot
+    private boolean           changed;
+    private BeaconList        published;
+
+    /**
+     * Removes the beacons expired by the wheel from the list.
+     */
+    private final ExpiryWheel.Expired<Beacon> remove = new ExpiryWheel.Expired<Beacon>() {
+        @Override
+        public void onExpired(Beacon beacon) {
+            int i = indexOf(beacon.getAddressBits(), beacon.getAddress());
+            // skip beacons removed from the list some other way
+            if (i != -1 && list.get(i) == beacon)
+                removeAt(i);
+        }
+    };
+
+    private static final int  WHEEL_SLOTS = 64;
+    private static final long WHEEL_TICK  = 250;
+
+    /**
+     *  Constructor method for the class.
+     *
+     *  It creates a new instance of the ArrayList and the MAC index internally.
+     */
+    public BeaconList() {
+        this((RssiFilter) null);
+    }
+
+    /**
+     *  Constructor method for the class.
+     *
+     *  Creates a list where the RSSI samples are smoothed by the filter.
+     *
+     * @param filter The RssiFilter to use, or null to use the samples as they are.
+     */
+    public BeaconList(RssiFilter filter) {
+        super();
+        list        = new ArrayList<>();
+        index       = new MacIndex();
+        order       = new DistanceOrder();
+        sorted      = false;
+        this.filter = filter;
+        tracks      = new ArrayList<>();
+    }
+
+    /**
+     *  Creates a read only copy of a list whose beacons all have their
+     *  snapshot copies, the index and distance order are copied as they
+     *  are.
+     */
+    private BeaconList(BeaconList other) {
+        list = new ArrayList<>(other.list.size());
+        for (int i = 0; i < other.list.size(); i++)
+            list.add(other.list.get(i).snapshotCopy);
+        index    = new MacIndex(other.index);
+        order    = other.order.snapshot();
+        sorted   = other.sorted;
+        readOnly = true;
+        tracks   = new ArrayList<>(0);
+    }
+
+    /**
+     *  Constructor method for the class.
+     *
+     *  Creates a list where beacons not seen for the timeout are removed
+     *  by expire(), instead of by the threshold in clear().
+     *
+     * @param filter The RssiFilter to use, or null to use the samples as they are.
+     * @param timeout The time in milliseconds a beacon is kept after it was
+     *                last seen, 0 to remove beacons by clear().
+     * @param clock The Clock the beacons are timed by.
+     */
+    public BeaconList(RssiFilter filter, final long timeout, Clock clock) {
+        this(filter);
+        if (timeout > 0) {
+            this.clock  = clock;
+            this.wheel  = new ExpiryWheel<>(WHEEL_SLOTS, WHEEL_TICK, new ExpiryWheel.Deadline<Beacon>() {
+                @Override
+                public long deadline(Beacon beacon) {
+                    return beacon.getLastSeen() + timeout;
+                }
+            });
+            scanStart = clock.now();
+        }
+    }
+
+    /**
+     * Adds an instance of the Beacon class to the list. <br>
+     *
+     * If the beacon is already in the list by first checking
+     * with the get method if the beacon is previously inserted
+     * in the list. If it is, the RSSI (signal level) of the beacon is
+     * updated, and the threshold of the beacon is reset (the beacon is
+     * visible, therefore the threshold is reset). If the beacon is not
+     * previously added, it's simply added. <br>
+     *
+     * The point of the threshold is to add delay to the removal of
+     * a beacon in case for some reason a beacon is not seen in a scan-
+     * period thus preventing beacons from being inserted and removed
+     * due to this. <br>
+     *
+     * @param beacon A instance of the beacon class that is to be added
+     *               to the BeaconList.
+     */
+    public void addDevice(Beacon beacon) {
+        // If the beacon is not found in the list, add it.
+        if (!update(beacon.getAddressBits(), beacon.getAddress(), beacon.getRssi())) {
+            checkWritable();
+            add(beacon);
+        }
+    }
+
+    /**
+     * Updates the RSSI of a beacon already in the list, without having
+     * a Beacon instance for it. <br>
+     *
+     * If the list has a filter every sample is added to the beacon's
+     * track. Without a filter, the RSSI is only updated once per scan
+     * like before. <br>
+     *
+     * @param bits The MAC address packed into a long.
+     * @param mac String with the MAC address.
+     * @param rssi The new RSSI of the beacon.
+     * @return false if the beacon is not in the list.
+     */
+    public boolean update(long bits, String mac, int rssi) {
+        int i = indexOf(bits, mac);
+        if (i == -1)
+            return false;
+
+        checkWritable();
+        Beacon b = list.get(i);
+        double oldDistance = b.getDistance();
+        boolean firstInScan = wheel != null ? b.getLastSeen() < scanStart : !b.getUpdated();
+
+        if (filter != null) {
+            b.putRssi(rssi, tracks.get(i).add(rssi));
+            order.update(b, oldDistance);
+        }
+        // Update the RSSI variable while here..
+        // if it haven't been updated on this scan
+        else if (firstInScan) {
+            b.putRssi(rssi);
+            order.update(b, oldDistance);
+        }
+
+        // the wheel reads the new deadline when the old one is due
+        if (wheel != null)
+            b.setLastSeen(clock.now());
+        else if (!b.getUpdated()) {
+            b.resetThreshold();
+            b.setUpdated(true);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the beacon, or copies the RSSI of the beacon to the one
+     * already in the list regardless of when it was last updated. <br>
+     *
+     * Used by lists that record beacons seen in snapshots of the
+     * scanner service list.
+     *
+     * @param beacon The beacon to add or update from.
+     */
+    public void put(Beacon beacon) {
+        checkWritable();
+        int i = indexOf(beacon.getAddressBits(), beacon.getAddress());
+        if (i == -1) {
+            add(beacon);
+            return;
+        }
+        Beacon b = list.get(i);
+        if (b != beacon && b.getDistance() != beacon.getDistance()) {
+            double oldDistance = b.getDistance();
+            b.putRssi(beacon.getRssi(), beacon.getSmoothedRssi());
+            order.update(b, oldDistance);
+        }
+    }
+
+    /**
+     * Creates a read only copy of the list. The beacons are copied, so
+     * the snapshot is not affected by later updates to this list. <br>
+     *
+     * Only the beacons whose RSSI changed since the last snapshot are
+     * copied again, the others share their copy with it. If no beacon
+     * changed and none were added, removed or moved, the last snapshot
+     * is returned. The time last seen and threshold of a copy are the
+     * ones from when it was made. <br>
+     *
+     * @return A BeaconList that can not be modified.
+     */
+    public BeaconList snapshot() {
+        boolean stale = changed || published == null;
+        for (int i = 0; i < list.size(); i++) {
+            Beacon beacon = list.get(i);
+            if (beacon.snapshotCopy == null)
+                beacon.snapshotCopy = new Beacon(beacon);
+            // the copy may have been made by another list sharing the beacon
+            if (!stale && published.list.get(i) != beacon.snapshotCopy)
+                stale = true;
+        }
+        if (stale) {
+            published = new BeaconList(this);
+            changed   = false;
+        }
+        return published;
+    }
+
+    /**
+     * Iterate the BeaconList and remove all beacons that have a
+     * threshold of 0 or less. <br>
+     *
+     * This method should be used between all scan intervals to remove
+     * beacons that are out of range. The threshold provides a certain
+     * delay before the beacon is removed. <br>
+     *
+     * The update boolean is reset so the beacons can have their data
+     * updated again
+     */
+    public void clear() {
+        checkWritable();
+        int kept = 0;
+
+        // iterate beacons in list, moving the ones kept to the front
+        for (int i = 0; i < list.size(); i++) {
+            Beacon beacon = list.get(i);
+
+            //check if the threshold is 0, if so remove the beacon
+            if (beacon.getThreshold() <= 0) {
+                order.remove(beacon, beacon.getDistance());
+                continue;
+            }
+            beacon.decreaseThreshold();
+            beacon.setUpdated(false);
+            if (filter != null)
+                tracks.set(kept, tracks.get(i));
+            list.set(kept++, beacon);
+        }
+
+        // drop the tail and rebuild the index if anything was removed
+        if (kept < list.size()) {
+            if (filter != null)
+                tracks.subList(kept, tracks.size()).clear();
+            list.subList(kept, list.size()).clear();
+            reindex();
+            changed = true;
+        }
+    }
+
+    /**
+     * Marks the start of a scan, for lists with a timeout. Beacons seen
+     * before this have their RSSI updated once more without a filter. <br>
+     *
+     * Replaces clear() between the scan intervals.
+     */
+    public void startScan() {
+        if (wheel != null)
+            scanStart = clock.now();
+    }
+
+    /**
+     * Removes the beacons that have not been seen for the timeout of the
+     * list. Only the beacons that are due are looked at, and each is
+     * removed in constant time apart from its place in the distance
+     * order. <br>
+     *
+     * Does nothing for lists without a timeout.
+     *
+     * @return The number of beacons removed.
+     */
+    public int expire() {
+        if (wheel == null)
+            return 0;
+        checkWritable();
+        return wheel.advance(clock.now(), remove);
+    }
+
+    /**
+     * Returns the number of Beacon class objects in the list
+     * to the caller.
+     *
+     * @return Integer with beacons in the list.
+     */
+    public int getCount() {
+        if (list != null)
+            return list.size();
+        else
+            return 0;
+    }
+
+    /**
+     * Check if the beacon given as argument is contained
+     * in the BeaconList. Since the usage of this is intended
+     * for a device. The beacon is just checked for presence
+     * on the MAC address, not the UUID + major + minor.
+     *
+     * @param beacon A instance of the Beacon class to check for presence.
+     * @return Returns a boolean indicating the presence.
+     */
+    public boolean contains (Beacon beacon) {
+        return indexOf(beacon.getAddressBits(), beacon.getAddress()) != -1;
+    }
+
+    /**
+     * Check if the beacon given as argument is contained
+     * in the BeaconList. Since the usage of this is intended
+     * for a device. The beacon is just checked for presence
+     * on the MAC address, not the UUID + major + minor.
+     *
+     * @param mac A String with the mac address of the beacon, the mac must
+     *            be in xx:yy:xx:yy:xx:yy format.
+     * @return Returns a boolean indicating the presence.
+     */
+    public boolean contains (String mac) {
+        return indexOf(MacIndex.pack(mac), mac) != -1;
+    }
+
+    /**
+     * Gets a beacon from the BeaconList class, this method is very
+     * similar to contains, expect that it returns a beacon.
+     *
+     * @param beacon An instance of the Beacon class to retrieve.
+     * @return Returns the beacon, or null if it's not found.
+     */
+    public Beacon get (Beacon beacon) {
+        int i = indexOf(beacon.getAddressBits(), beacon.getAddress());
+        if (i == -1)
+            return null;
+        return list.get(i);
+    }
+
+    /**
+     * Gets a beacon from the BeaconList class by its MAC address, without
+     * having a Beacon instance for it.
+     *
+     * @param bits The MAC address packed into a long.
+     * @param mac String with the MAC address.
+     * @return Returns the beacon, or null if it's not found.
+     */
+    public Beacon get (long bits, String mac) {
+        int i = indexOf(bits, mac);
+        if (i == -1)
+            return null;
+        return list.get(i);
+    }
+
+    /**
+     * Gets the Beacon at a certain position in the list. If the list
+     * has been sorted, the position is in the distance order.
+     *
+     * @param i Integer with the beacon number to get.
+     * @return A intance of the Beacon class that corresponds to the
+     * argument i.
+     * @throws IndexOutOfBoundsException Can be thrown if access outside
+     * the bounds of the list is attempted.
+     */
+    public Beacon getItem(int i) throws IndexOutOfBoundsException {
+        if (sorted)
+            return order.get(i);
+        return list.get(i);
+    }
+
+    /**
+     * Sorts the list on the distance variable in the Beacon class. <br>
+     *
+     * The distance order is maintained as beacons are added and updated,
+     * so this only repositions the beacons whose RSSI was changed
+     * through another list sharing the same Beacon instances. From
+     * the first call getItem returns beacons in distance order.
+     */
+    public void sort() {
+        if (order.refresh() > 0 || !sorted)
+            changed = true;
+        sorted = true;
+    }
+
+    /**
+     * Throws if the list is a snapshot.
+     */
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("BeaconList snapshot is read only");
+    }
+
+    /**
+     * Appends a beacon to the list and indexes it.
+     */
+    private void add(Beacon beacon) {
+        if (wheel != null) {
+            beacon.setLastSeen(clock.now());
+            wheel.add(beacon, beacon.getLastSeen());
+        }
+        if (beacon.getAddressBits() >= 0)
+            index.put(beacon.getAddressBits(), list.size());
+        if (filter != null) {
+            RssiFilter.Track track = filter.newTrack();
+            beacon.putRssi(beacon.getRssi(), track.add(beacon.getRssi()));
+            tracks.add(track);
+        }
+        list.add(beacon);
+        order.insert(beacon);
+        changed = true;
+    }
+
+    /**
+     * Removes the beacon at a position by moving the last beacon in its
+     * place, so the rest of the list and the index are not touched.
+     */
+    private void removeAt(int i) {
+        Beacon beacon = list.get(i);
+        order.remove(beacon, beacon.getDistance());
+        if (beacon.getAddressBits() >= 0)
+            index.remove(beacon.getAddressBits());
+
+        int last = list.size() - 1;
+        if (i != last) {
+            Beacon moved = list.get(last);
+            list.set(i, moved);
+            if (moved.getAddressBits() >= 0)
+                index.put(moved.getAddressBits(), i);
+            if (filter != null)
+                tracks.set(i, tracks.get(last));
+        }
+        list.remove(last);
+        if (filter != null)
+            tracks.remove(last);
+        changed = true;
+    }
+
+    /**
+     * Finds the position of a beacon by its address. Addresses that
+     * could not be packed are searched for in the list.
+     *
+     * @param bits The packed MAC address.
+     * @param mac The MAC address as String.
+     * @return The position in the list, or -1 if not found.
+     */
+    private int indexOf(long bits, String mac) {
+        if (bits >= 0)
+            return index.get(bits);
+
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getAddress().equals(mac))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the MAC index after the list has been reordered.
+     */
+    private void reindex() {
+        index.clear();
+        for (int i = 0; i < list.size(); i++) {
+            long bits = list.get(i).getAddressBits();
+            if (bits >= 0)
+                index.put(bits, i);
+        }
+    }
+
+}
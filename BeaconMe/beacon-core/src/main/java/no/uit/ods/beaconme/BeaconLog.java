@@ -0,0 +1,50 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Error log of the core classes. <br>
+ *
+ *  The messages go to standard error until a Sink is set, the app sets
+ *  one writing to the Android log when the scanner service starts.
+ */
+public final class BeaconLog {
+    /**
+     * Receives the log messages.
+     */
+    public interface Sink {
+        void e(String tag, String message);
+    }
+
+    private static volatile Sink sink = new Sink() {
+        @Override
+        public void e(String tag, String message) {
+            System.err.println(tag + ": " + message);
+        }
+    };
+
+    private BeaconLog() {
+    }
+
+    /**
+     * Sets where the messages go.
+     */
+    public static void setSink(Sink sink) {
+        BeaconLog.sink = sink;
+    }
+
+    /**
+     * Returns where the messages go, for the tests to put it back.
+     */
+    static Sink getSink() {
+        return sink;
+    }
+
+    /**
+     * Logs an error.
+     *
+     * @param tag String naming the source of the message.
+     * @param message The message.
+     */
+    public static void e(String tag, String message) {
+        sink.e(tag, message);
+    }
+}
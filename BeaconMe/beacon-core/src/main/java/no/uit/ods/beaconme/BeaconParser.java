@@ -0,0 +1,438 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Reusable parser for the beacon advertisement packets delivered with
+ *  the leScan callback. <br>
+ *
+ *  The packet is a sequence of AD structures, each a length byte, a type
+ *  and the data. The parser walks them once, and the manufacturer
+ *  specific data and service data structures are looked up in a table
+ *  of formats by company id or 16 bit service UUID and the bytes that
+ *  follow it. The decoder of the first format found writes the fields,
+ *  the rest of the packet is skipped. Known formats: <br>
+ *
+ *  - iBeacon, Apple's company id and type 0x02, length 0x15. <br>
+ *  - AltBeacon, any company id and the beacon code 0xbeac. <br>
+ *  - Eddystone-UID, -URL and -TLM, service UUID 0xfeaa and the frame
+ *    type. <br>
+ *
+ *  The identity is held in the same primitive fields for every format,
+ *  a UUID as two longs, major and minor. An Eddystone-UID's 10 byte
+ *  namespace and 6 byte instance make up the UUID. The signal level is
+ *  kept like the iBeacon txPower, the RSSI at 1 m, so Eddystone's
+ *  power at 0 m is moved by the 41 dB lost in the first meter. The
+ *  dashed String representation of the UUID, and the URL of an
+ *  Eddystone-URL, are only built on request. <br>
+ *
+ *  One instance is meant to be reused for every packet on the thread
+ *  delivering scan results, parsing does not allocate any objects.
+ */
+public class BeaconParser {
+    /** No known beacon format was found in the packet. */
+    public static final int FORMAT_NONE             = 0;
+    /** Apple's iBeacon. */
+    public static final int FORMAT_IBEACON          = 1;
+    /** The open AltBeacon format. */
+    public static final int FORMAT_ALTBEACON        = 2;
+    /** Eddystone frame with a namespace and instance id. */
+    public static final int FORMAT_EDDYSTONE_UID    = 3;
+    /** Eddystone frame with a URL and no id. */
+    public static final int FORMAT_EDDYSTONE_URL    = 4;
+    /** Eddystone frame with telemetry and no id. */
+    public static final int FORMAT_EDDYSTONE_TLM    = 5;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final int    AD_SERVICE_DATA     = 0x16;
+    private static final int    AD_MANUFACTURER     = 0xff;
+    private static final int    ANY                 = -1;
+    private static final int    APPLE               = 0x004c;
+    private static final int    EDDYSTONE           = 0xfeaa;
+    // the power lost in the first meter, between Eddystone's 0 m and 1 m
+    private static final int    LOSS_AT_1M          = 41;
+    private static final int    URL_MAX             = 17;
+    private static final int    NO_TEMPERATURE      = -0x8000;
+
+    private static final String[] URL_SCHEMES = {"http://www.", "https://www.", "http://", "https://"};
+    private static final String[] URL_CODES   = {".com/", ".org/", ".edu/", ".net/", ".info/", ".biz/",
+            ".gov/", ".com", ".org", ".edu", ".net", ".info", ".biz", ".gov"};
+
+    /**
+     * Decodes one format from the data of an AD structure. It's chosen by
+     * the AD type, the company id or service UUID (little endian in the
+     * packet) and the prefix that follows.
+     */
+    private abstract static class Format {
+        final int       adType;
+        final int       id;
+        final byte[]    prefix;
+
+        Format(int adType, int id, int... prefix) {
+            this.adType = adType;
+            this.id     = id;
+            this.prefix = new byte[prefix.length];
+            for (int i = 0; i < prefix.length; i++)
+                this.prefix[i] = (byte) prefix[i];
+        }
+
+        /**
+         * Decodes the data after the prefix into the parser.
+         *
+         * @return false if the data is too short for the format.
+         */
+        abstract boolean decode(BeaconParser p, byte[] data, int offset, int length);
+    }
+
+    private static final Format[] FORMATS = {
+        // UUID, major, minor and the RSSI at 1 m
+        new Format(AD_MANUFACTURER, APPLE, 0x02, 0x15) {
+            @Override
+            boolean decode(BeaconParser p, byte[] data, int offset, int length) {
+                if (length < 21)
+                    return false;
+                p.format = FORMAT_IBEACON;
+                p.readId(data, offset);
+                p.signalLevel = 0xff - (data[offset + 20] & 0xff);
+                return true;
+            }
+        },
+        // 20 byte beacon id, the RSSI at 1 m and a reserved byte
+        new Format(AD_MANUFACTURER, ANY, 0xbe, 0xac) {
+            @Override
+            boolean decode(BeaconParser p, byte[] data, int offset, int length) {
+                if (length < 21)
+                    return false;
+                p.format = FORMAT_ALTBEACON;
+                p.readId(data, offset);
+                p.signalLevel = 0xff - (data[offset + 20] & 0xff);
+                return true;
+            }
+        },
+        // power at 0 m, 10 byte namespace and 6 byte instance, 2 reserved bytes may follow
+        new Format(AD_SERVICE_DATA, EDDYSTONE, 0x00) {
+            @Override
+            boolean decode(BeaconParser p, byte[] data, int offset, int length) {
+                if (length < 17)
+                    return false;
+                p.format = FORMAT_EDDYSTONE_UID;
+                p.uuidMostSigBits  = readLong(data, offset + 1);
+                p.uuidLeastSigBits = readLong(data, offset + 9);
+                p.signalLevel = levelAt0m(data[offset]);
+                return true;
+            }
+        },
+        // power at 0 m, the scheme and up to 17 bytes of encoded URL
+        new Format(AD_SERVICE_DATA, EDDYSTONE, 0x10) {
+            @Override
+            boolean decode(BeaconParser p, byte[] data, int offset, int length) {
+                if (length < 2 || (data[offset + 1] & 0xff) >= URL_SCHEMES.length)
+                    return false;
+                p.format = FORMAT_EDDYSTONE_URL;
+                p.signalLevel = levelAt0m(data[offset]);
+                p.urlScheme = data[offset + 1];
+                p.urlLength = Math.min(length - 2, URL_MAX);
+                System.arraycopy(data, offset + 2, p.url, 0, p.urlLength);
+                return true;
+            }
+        },
+        // unencrypted telemetry: version, battery, temperature, advertisements and uptime
+        new Format(AD_SERVICE_DATA, EDDYSTONE, 0x20) {
+            @Override
+            boolean decode(BeaconParser p, byte[] data, int offset, int length) {
+                if (length < 13 || data[offset] != 0)
+                    return false;
+                p.format = FORMAT_EDDYSTONE_TLM;
+                p.batteryVoltage = readShort(data, offset + 1);
+                p.temperature    = (short) readShort(data, offset + 3);
+                p.advertisements = readInt(data, offset + 5) & 0xffffffffL;
+                p.uptime         = readInt(data, offset + 9) & 0xffffffffL;
+                return true;
+            }
+        },
+    };
+
+    private int     format;
+    private long    uuidMostSigBits;
+    private long    uuidLeastSigBits;
+    private int     major;
+    private int     minor;
+    private int     signalLevel;
+    // Eddystone-URL, the encoded URL is decoded by getUrl()
+    private int     urlScheme;
+    private final byte[] url = new byte[URL_MAX];
+    private int     urlLength;
+    // Eddystone-TLM
+    private int     batteryVoltage;
+    private int     temperature;
+    private long    advertisements;
+    private long    uptime;
+
+    /**
+     * Parses the advertisement packet. <br>
+     *
+     * Fields the format found doesn't have are set to 0, except the
+     * signal level which is set to 0xff (unknown). If no known format is
+     * found getFormat() returns FORMAT_NONE and all fields are unset.
+     *
+     * @param sRecord Byte array with the advertisment packet from the beacon.
+     * @return Returns the parser itself so fields can be read directly.
+     */
+    public BeaconParser parse(byte[] sRecord) {
+        return parse(sRecord, 0, sRecord.length);
+    }
+
+    /**
+     * Parses the advertisement packet in place, like parse(byte[]).
+     *
+     * @param record View of the advertisment packet from the beacon.
+     * @return Returns the parser itself so fields can be read directly.
+     */
+    public BeaconParser parse(ScanRecord record) {
+        return parse(record.getData(), record.getOffset(), record.length());
+    }
+
+    /**
+     * Walks the AD structures of the packet at offset in data, reading
+     * no further than length bytes. A zero length structure is padding
+     * at the end, a structure running past the end is not decoded.
+     */
+    private BeaconParser parse(byte[] data, int offset, int length) {
+        format           = FORMAT_NONE;
+        uuidMostSigBits  = 0;
+        uuidLeastSigBits = 0;
+        major            = 0;
+        minor            = 0;
+        signalLevel      = 0xff;
+        urlLength        = 0;
+        batteryVoltage   = 0;
+        temperature      = NO_TEMPERATURE;
+        advertisements   = 0;
+        uptime           = 0;
+
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            int size = data[pos] & 0xff;
+            if (size == 0 || pos + 1 + size > end)
+                break;
+            int type = data[pos + 1] & 0xff;
+            // the data is the id and what follows, after the length and type
+            if ((type == AD_MANUFACTURER || type == AD_SERVICE_DATA) && size >= 3
+                    && decode(type, data, pos + 2, size - 1))
+                break;
+            pos += 1 + size;
+        }
+        return this;
+    }
+
+    /**
+     * Looks up the format of an AD structure's data and decodes it.
+     *
+     * @return true if a format was decoded.
+     */
+    private boolean decode(int type, byte[] data, int offset, int length) {
+        int id = (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+        for (Format f : FORMATS) {
+            if (f.adType != type || (f.id != ANY && f.id != id) || length - 2 < f.prefix.length)
+                continue;
+            int start = offset + 2;
+            int i = 0;
+            while (i < f.prefix.length && data[start + i] == f.prefix[i])
+                i++;
+            if (i == f.prefix.length
+                    && f.decode(this, data, start + i, length - 2 - i))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the 16 byte UUID, the major and the minor.
+     */
+    private void readId(byte[] data, int offset) {
+        uuidMostSigBits  = readLong(data, offset);
+        uuidLeastSigBits = readLong(data, offset + 8);
+        major            = readShort(data, offset + 16);
+        minor            = readShort(data, offset + 18);
+    }
+
+    /**
+     * Returns the signal level of an Eddystone power at 0 m.
+     */
+    private static int levelAt0m(byte txPower) {
+        return 0xff - ((txPower - LOSS_AT_1M) & 0xff);
+    }
+
+    /**
+     * Reads 8 bytes big endian.
+     */
+    private static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+    }
+
+    /**
+     * Reads 4 bytes big endian.
+     */
+    private static int readInt(byte[] data, int offset) {
+        return (readShort(data, offset) << 16) | readShort(data, offset + 2);
+    }
+
+    /**
+     * Reads 2 bytes big endian, unsigned.
+     */
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    /**
+     * Returns the format of the last parsed packet, one of the FORMAT
+     * constants.
+     */
+    public int getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the upper 64 bits of the last parsed UUID.
+     */
+    public long getUuidMostSigBits() {
+        return uuidMostSigBits;
+    }
+
+    /**
+     * Returns the lower 64 bits of the last parsed UUID.
+     */
+    public long getUuidLeastSigBits() {
+        return uuidLeastSigBits;
+    }
+
+    /**
+     * Returns the major of the last parsed packet.
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * Returns the minor of the last parsed packet.
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * Returns the signal level (txPower) of the last parsed packet.
+     */
+    public int getSignalLevel() {
+        return signalLevel;
+    }
+
+    /**
+     * Returns the URL of the last parsed Eddystone-URL, with the scheme
+     * and the abbreviations expanded. Allocates the String.
+     *
+     * @return String with the URL, or null if the packet wasn't one.
+     */
+    public String getUrl() {
+        if (format != FORMAT_EDDYSTONE_URL)
+            return null;
+        StringBuilder text = new StringBuilder(URL_SCHEMES[urlScheme]);
+        for (int i = 0; i < urlLength; i++) {
+            int c = url[i] & 0xff;
+            if (c < URL_CODES.length)
+                text.append(URL_CODES[c]);
+            else
+                text.append((char) c);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the battery voltage of the last parsed Eddystone-TLM in
+     * millivolts, 0 if it's not known.
+     */
+    public int getBatteryVoltage() {
+        return batteryVoltage;
+    }
+
+    /**
+     * Returns the temperature of the last parsed Eddystone-TLM in 1/256
+     * degrees Celsius, -0x8000 if it's not known.
+     */
+    public int getTemperature() {
+        return temperature;
+    }
+
+    /**
+     * Returns the number of advertisements sent since the beacon was
+     * powered up, from the last parsed Eddystone-TLM.
+     */
+    public long getAdvertisements() {
+        return advertisements;
+    }
+
+    /**
+     * Returns the time since the beacon was powered up in tenths of a
+     * second, from the last parsed Eddystone-TLM.
+     */
+    public long getUptime() {
+        return uptime;
+    }
+
+    /**
+     * Returns the type of the Eddystone frame in the packet without
+     * decoding it, only the headers of the AD structures and the frame
+     * type are read. The frame may still be invalid, parse() checks it.
+     *
+     * @param record View of the advertisment packet from the beacon.
+     * @return FORMAT_EDDYSTONE_UID, -URL or -TLM, or FORMAT_NONE if the
+     *         packet has no Eddystone frame.
+     */
+    public static int eddystoneFrame(ScanRecord record) {
+        byte[] data = record.getData();
+        int pos = record.getOffset();
+        int end = pos + record.length();
+        while (pos < end) {
+            int size = data[pos] & 0xff;
+            if (size == 0 || pos + 1 + size > end)
+                break;
+            // the type, the service UUID little endian and the frame type
+            if (size >= 4 && (data[pos + 1] & 0xff) == AD_SERVICE_DATA
+                    && (data[pos + 2] & 0xff) == (EDDYSTONE & 0xff) && (data[pos + 3] & 0xff) == EDDYSTONE >> 8) {
+                switch (data[pos + 4]) {
+                    case 0x00:
+                        return FORMAT_EDDYSTONE_UID;
+                    case 0x10:
+                        return FORMAT_EDDYSTONE_URL;
+                    case 0x20:
+                        return FORMAT_EDDYSTONE_TLM;
+                }
+            }
+            pos += 1 + size;
+        }
+        return FORMAT_NONE;
+    }
+
+    /**
+     * Formats a UUID held as two longs to the standard uppercase
+     * representation with dashes, i.e 8-4-4-4-12 hex digits.
+     *
+     * @param msb The upper 64 bits of the UUID.
+     * @param lsb The lower 64 bits of the UUID.
+     * @return String with the formatted UUID.
+     */
+    public static String formatUuid(long msb, long lsb) {
+        char[] buf = new char[36];
+        int pos = 0;
+        for (int i = 0; i < 16; i++) {
+            long word  = i < 8 ? msb : lsb;
+            int  shift = (7 - (i & 7)) * 8;
+            int  b     = (int) (word >>> shift) & 0xff;
+            if (i == 4 || i == 6 || i == 8 || i == 10)
+                buf[pos++] = '-';
+            buf[pos++] = HEX[b >>> 4];
+            buf[pos++] = HEX[b & 0x0f];
+        }
+        return new String(buf);
+    }
+}
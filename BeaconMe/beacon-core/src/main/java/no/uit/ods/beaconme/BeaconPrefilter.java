@@ -0,0 +1,155 @@
+package no.uit.ods.beaconme;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ *  Byte level check of the advertisement packets, so packets that are
+ *  not beacons are dropped in the scan callback before anything is
+ *  allocated for them. <br>
+ *
+ *  A packet is accepted when the BeaconParser finds one of the beacon
+ *  formats it knows in it, walking the AD structures in place. Phones,
+ *  headphones and watches send other manufacturer data or none. <br>
+ *
+ *  An allow-list of UUIDs can be set, then only beacons with one of
+ *  them are accepted, so Eddystone-URL and -TLM frames that have no id
+ *  are rejected too. The UUID is compared as the two longs read from
+ *  the packet, kept in sorted arrays. check() allocates nothing and can
+ *  be called from the scan callback while the allow-list is changed,
+ *  but only from one thread at a time.
+ */
+public class BeaconPrefilter {
+    /** The packet is a beacon and passed the allow-list. */
+    public static final int ACCEPTED    = 0;
+    /** The packet is not a beacon format the BeaconParser knows. */
+    public static final int NOT_BEACON  = 1;
+    /** The packet is a beacon with a UUID not in the allow-list. */
+    public static final int NOT_ALLOWED = 2;
+
+    private static final Pattern UUID_FORMAT = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    // the allowed UUIDs sorted, replaced as a whole; null to accept all
+    private volatile long[][] allowed;
+    // used by check() only
+    private final BeaconParser parser = new BeaconParser();
+
+    /**
+     * Checks an advertisement packet.
+     *
+     * @param record The raw advertisement packet.
+     * @return ACCEPTED, NOT_BEACON or NOT_ALLOWED.
+     */
+    public int check(byte[] record) {
+        if (record == null || parser.parse(record).getFormat() == BeaconParser.FORMAT_NONE)
+            return NOT_BEACON;
+
+        long[][] list = allowed;
+        if (list == null)
+            return ACCEPTED;
+        int format = parser.getFormat();
+        if (format == BeaconParser.FORMAT_EDDYSTONE_URL || format == BeaconParser.FORMAT_EDDYSTONE_TLM)
+            return NOT_ALLOWED;
+        return isAllowed(list, parser.getUuidMostSigBits(), parser.getUuidLeastSigBits())
+                ? ACCEPTED : NOT_ALLOWED;
+    }
+
+    /**
+     * Sets the UUIDs accepted, an empty list accepts all beacons. The
+     * UUIDs are added to the UuidDictionary, so the beacons with them
+     * share their id and String.
+     *
+     * @param uuids The UUIDs accepted.
+     */
+    public void setAllowList(UUID... uuids) {
+        if (uuids.length == 0) {
+            allowed = null;
+            return;
+        }
+        // sort by msb then lsb as unsigned, the order isAllowed() searches in
+        UUID[] sorted = uuids.clone();
+        Arrays.sort(sorted, new Comparator<UUID>() {
+            @Override
+            public int compare(UUID a, UUID b) {
+                return compareKeys(a.getMostSignificantBits(), a.getLeastSignificantBits(),
+                        b.getMostSignificantBits(), b.getLeastSignificantBits());
+            }
+        });
+        long[] msbs = new long[sorted.length];
+        long[] lsbs = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            msbs[i] = sorted[i].getMostSignificantBits();
+            lsbs[i] = sorted[i].getLeastSignificantBits();
+            // the beacons with an allowed UUID share its id
+            UuidDictionary.id(msbs[i], lsbs[i]);
+        }
+        allowed = new long[][] {msbs, lsbs};
+    }
+
+    /**
+     * Sets the UUIDs accepted from a setting, separated by commas, spaces
+     * or new lines. Entries that are not UUIDs are logged and skipped.
+     *
+     * @param list String with the UUIDs, empty to accept all beacons.
+     * @return The number of UUIDs in the allow-list.
+     */
+    public int setAllowList(String list) {
+        String[] entries = list == null ? new String[0] : list.trim().split("[\\s,;]+");
+        UUID[]   uuids   = new UUID[entries.length];
+        int      n       = 0;
+        for (String entry : entries) {
+            if (entry.isEmpty())
+                continue;
+            if (UUID_FORMAT.matcher(entry).matches())
+                uuids[n++] = UUID.fromString(entry);
+            else
+                BeaconLog.e("BeaconPrefilter", "Not a UUID in the allow-list: " + entry);
+        }
+        setAllowList(Arrays.copyOf(uuids, n));
+        return n;
+    }
+
+    /**
+     * Returns the number of UUIDs in the allow-list, 0 if all beacons
+     * are accepted.
+     */
+    public int getAllowListSize() {
+        long[][] list = allowed;
+        return list == null ? 0 : list[0].length;
+    }
+
+    /**
+     * Binary search of the UUID in the sorted allow-list.
+     */
+    private static boolean isAllowed(long[][] list, long msb, long lsb) {
+        long[] msbs = list[0];
+        long[] lsbs = list[1];
+        int    low  = 0;
+        int    high = msbs.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKeys(msbs[mid], lsbs[mid], msb, lsb);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compares two UUIDs held as two longs each, as unsigned numbers.
+     */
+    private static int compareKeys(long msbA, long lsbA, long msbB, long lsbB) {
+        if (msbA != msbB)
+            return msbA + Long.MIN_VALUE < msbB + Long.MIN_VALUE ? -1 : 1;
+        if (lsbA != lsbB)
+            return lsbA + Long.MIN_VALUE < lsbB + Long.MIN_VALUE ? -1 : 1;
+        return 0;
+    }
+}
@@ -0,0 +1,23 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Time source for the classes that measure time, so they can be driven
+ *  by a simulated clock in tests.
+ */
+public interface Clock {
+    /**
+     * Clock reading System.nanoTime(), not affected by changes to the
+     * wall clock.
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long now() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    /**
+     * Returns the time in milliseconds, from an arbitrary origin.
+     */
+    long now();
+}
@@ -0,0 +1,149 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Estimates the distance to a beacon from the RSSI and the signal
+ *  level (txPower) the beacon advertises. <br>
+ *
+ *  RSSI and signal level are small bounded integers, so each model
+ *  precomputes a table over the realistic range (RSSI -110 to -1 dBm,
+ *  signal level 20 to 120) when it's created. A distance lookup is then
+ *  two array reads and a linear interpolation for the fraction of a dBm
+ *  left by the RssiFilter. Values outside the table are computed. <br>
+ *
+ *  The model used by the Beacon class is set with setDefault. Available
+ *  models are the curve fitted model the app has always used, and a
+ *  log-distance path loss model with a per environment exponent.
+ */
+public abstract class DistanceModel {
+    private static final int    MIN_RSSI    = -110;
+    private static final int    MAX_RSSI    = -1;
+    private static final int    MIN_LEVEL   = 20;
+    private static final int    MAX_LEVEL   = 120;
+    private static final int    RSSI_SPAN   = MAX_RSSI - MIN_RSSI + 1;
+
+    private static volatile DistanceModel defaultModel = new CurveFit();
+
+    // [signal level - MIN_LEVEL][rssi - MIN_RSSI]
+    private final float[][] table = new float[MAX_LEVEL - MIN_LEVEL + 1][RSSI_SPAN];
+
+    /**
+     * Fills the table, must be called at the end of the constructor of
+     * each model when it's ready to compute distances.
+     */
+    protected final void buildTable() {
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            float[] row = table[level - MIN_LEVEL];
+            for (int rssi = MIN_RSSI; rssi <= MAX_RSSI; rssi++)
+                row[rssi - MIN_RSSI] = (float) compute(rssi, level);
+        }
+    }
+
+    /**
+     * Creates a model from its name as stored in the preferences.
+     * Unknown names give the curve fitted model.
+     *
+     * @param name String with the model name.
+     * @return The DistanceModel.
+     */
+    public static DistanceModel create(String name) {
+        if ("pathloss_open".equals(name))
+            return new PathLoss(2.0);
+        else if ("pathloss_indoor".equals(name))
+            return new PathLoss(3.0);
+        else
+            return new CurveFit();
+    }
+
+    /**
+     * Returns the model used by the Beacon class.
+     */
+    public static DistanceModel getDefault() {
+        return defaultModel;
+    }
+
+    /**
+     * Sets the model used by the Beacon class. Beacons pick up the new
+     * model on their next RSSI update.
+     *
+     * @param model The DistanceModel to use.
+     */
+    public static void setDefault(DistanceModel model) {
+        defaultModel = model;
+    }
+
+    /**
+     * Returns the estimated distance in meters.
+     *
+     * @param rssi The (smoothed) RSSI in dBm.
+     * @param signalLevel The signal level as stored in the Beacon class.
+     * @return double with the distance, infinity if it can not be estimated.
+     */
+    public double distance(double rssi, int signalLevel) {
+        if (rssi < MIN_RSSI || rssi > MAX_RSSI || signalLevel < MIN_LEVEL || signalLevel > MAX_LEVEL)
+            return compute(rssi, signalLevel);
+
+        float[] row  = table[signalLevel - MIN_LEVEL];
+        int     i    = (int) Math.floor(rssi) - MIN_RSSI;
+        double  frac = rssi - MIN_RSSI - i;
+        if (frac == 0 || i + 1 >= RSSI_SPAN)
+            return row[i];
+        return row[i] + (row[i + 1] - row[i]) * frac;
+    }
+
+    /**
+     * Computes the distance without the table.
+     *
+     * @param rssi The RSSI in dBm.
+     * @param signalLevel The signal level as stored in the Beacon class.
+     * @return double with the distance, infinity if it can not be estimated.
+     */
+    public abstract double compute(double rssi, int signalLevel);
+
+    /**
+     * The curve fitted model, based on the ratio between the RSSI and
+     * the advertised signal level.
+     */
+    public static class CurveFit extends DistanceModel {
+        public CurveFit() {
+            buildTable();
+        }
+
+        @Override
+        public double compute(double rssi, int signalLevel) {
+            if (rssi == 0 || signalLevel == 0xff) {
+                return Float.POSITIVE_INFINITY; // if we cannot determine accuracy, return infinity
+            }
+            double ratio = rssi/signalLevel;
+            if (ratio < 1.0) {
+                return Math.pow(ratio,10);
+            }
+            else {
+                return (0.89976)*Math.pow(ratio,7.7095) + 0.111;
+            }
+        }
+    }
+
+    /**
+     * Log-distance path loss model, d = 10 ^ ((txPower - rssi) / (10 * n)),
+     * where txPower is the RSSI at 1m and n is the path loss exponent of
+     * the environment (2 in free space, 2.7 to 4 indoors).
+     */
+    public static class PathLoss extends DistanceModel {
+        private final double exponent;
+
+        public PathLoss(double exponent) {
+            this.exponent = exponent;
+            buildTable();
+        }
+
+        @Override
+        public double compute(double rssi, int signalLevel) {
+            if (rssi == 0 || signalLevel == 0xff || exponent <= 0) {
+                return Float.POSITIVE_INFINITY;
+            }
+            // signal level is 0xff - txPower byte, so txPower = -(signal level + 1)
+            double txPower = -(signalLevel + 1);
+            return Math.pow(10, (txPower - rssi) / (10 * exponent));
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Keeps beacons ordered on their estimated distance. <br>
+ *
+ *  The view is kept sorted on every change instead of being sorted from
+ *  scratch. Each beacon is stored with the distance it was placed by, so
+ *  an insert or removal is a binary search on the cached keys and a
+ *  single array copy, the distance is never recomputed while searching. <br>
+ *
+ *  Beacons may be shared with other lists which update their RSSI, the
+ *  refresh method repositions only the beacons whose distance changed
+ *  since they were placed.
+ */
+public class DistanceOrder {
+    private Beacon[]    beacons;
+    private double[]    keys;
+    private Beacon[]    pending;
+    private int         size;
+
+    /**
+     *  Constructor method, creates an empty order.
+     */
+    public DistanceOrder() {
+        this(16);
+    }
+
+    private DistanceOrder(int capacity) {
+        beacons = new Beacon[capacity];
+        keys    = new double[capacity];
+        pending = new Beacon[capacity];
+        size    = 0;
+    }
+
+    /**
+     * Returns the number of beacons in the order.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the beacon at position i, position 0 is the closest.
+     *
+     * @param i Integer with the position.
+     * @return The beacon at position i.
+     * @throws IndexOutOfBoundsException If i is outside the order.
+     */
+    public Beacon get(int i) throws IndexOutOfBoundsException {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        return beacons[i];
+    }
+
+    /**
+     * Places a beacon by its current distance.
+     *
+     * @param beacon The beacon to insert.
+     */
+    public void insert(Beacon beacon) {
+        if (size == beacons.length)
+            grow();
+
+        double key = beacon.getDistance();
+        int pos = upperBound(key);
+        System.arraycopy(beacons, pos, beacons, pos + 1, size - pos);
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        beacons[pos] = beacon;
+        keys[pos]    = key;
+        size++;
+    }
+
+    /**
+     * Removes a beacon from the order.
+     *
+     * @param beacon The beacon to remove.
+     * @param key The distance the beacon was placed by.
+     * @return true if the beacon was found and removed.
+     */
+    public boolean remove(Beacon beacon, double key) {
+        int pos = find(beacon, key);
+        if (pos == -1)
+            return false;
+        removeAt(pos);
+        return true;
+    }
+
+    /**
+     * Moves a beacon after its distance has changed.
+     *
+     * @param beacon The beacon to move.
+     * @param oldKey The distance the beacon was placed by.
+     */
+    public void update(Beacon beacon, double oldKey) {
+        if (remove(beacon, oldKey))
+            insert(beacon);
+    }
+
+    /**
+     * Repositions all beacons whose distance no longer match the
+     * distance they were placed by. The beacons that did not change
+     * are still in order, so they are compacted in one pass and the
+     * changed ones are inserted again.
+     *
+     * @return The number of beacons that were moved.
+     */
+    public int refresh() {
+        int moved = 0;
+        int kept  = 0;
+        for (int i = 0; i < size; i++) {
+            Beacon b = beacons[i];
+            if (Double.compare(keys[i], b.getDistance()) != 0) {
+                pending[moved++] = b;
+            } else {
+                beacons[kept] = b;
+                keys[kept]    = keys[i];
+                kept++;
+            }
+        }
+        for (int i = kept; i < size; i++)
+            beacons[i] = null;
+        size = kept;
+
+        for (int i = 0; i < moved; i++) {
+            insert(pending[i]);
+            pending[i] = null;
+        }
+        return moved;
+    }
+
+    /**
+     * Returns a copy of the order holding the snapshot copies of the
+     * beacons in the same positions, used by BeaconList.snapshot() once
+     * every beacon has its copy. The keys are copied as they are, nothing
+     * is searched or moved.
+     *
+     * @return The order of the snapshot copies.
+     */
+    DistanceOrder snapshot() {
+        DistanceOrder copy = new DistanceOrder(Math.max(16, size));
+        for (int i = 0; i < size; i++)
+            copy.beacons[i] = beacons[i].snapshotCopy;
+        System.arraycopy(keys, 0, copy.keys, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Removes all beacons.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            beacons[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Finds the position of the beacon, first by binary search on the
+     * key and then by scanning if the key was stale.
+     */
+    private int find(Beacon beacon, double key) {
+        for (int i = lowerBound(key); i < size && Double.compare(keys[i], key) == 0; i++) {
+            if (beacons[i] == beacon)
+                return i;
+        }
+        for (int i = 0; i < size; i++) {
+            if (beacons[i] == beacon)
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int pos) {
+        System.arraycopy(beacons, pos + 1, beacons, pos, size - pos - 1);
+        System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+        beacons[--size] = null;
+    }
+
+    // first position with a key >= key
+    private int lowerBound(double key) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Double.compare(keys[mid], key) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // first position with a key > key, keeps equal distances in insertion order
+    private int upperBound(double key) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Double.compare(keys[mid], key) <= 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private void grow() {
+        int capacity = beacons.length * 2;
+        Beacon[] b = new Beacon[capacity];
+        double[] k = new double[capacity];
+        System.arraycopy(beacons, 0, b, 0, size);
+        System.arraycopy(keys, 0, k, 0, size);
+        beacons = b;
+        keys    = k;
+        pending = new Beacon[capacity];
+    }
+}
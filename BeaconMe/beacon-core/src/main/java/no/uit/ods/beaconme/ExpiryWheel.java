@@ -0,0 +1,150 @@
+package no.uit.ods.beaconme;
+
+import java.util.ArrayList;
+
+/**
+ *  Hashed timing wheel that finds the items whose deadline has passed,
+ *  without looking at the other items. <br>
+ *
+ *  Time is divided in ticks, and the wheel has a power of two number of
+ *  slots. An item is put in the slot of the tick its deadline falls in,
+ *  and advance() only visits the slots of the ticks that passed since
+ *  the last call. <br>
+ *
+ *  Deadlines are read from the items when their slot is visited, so an
+ *  item whose deadline is pushed back (a beacon seen again) doesn't have
+ *  to be moved at that time. When its slot comes up it's moved to the
+ *  slot of the new deadline instead, so each item is moved at most once
+ *  per deadline however often the deadline changes. Deadlines more than
+ *  one turn of the wheel ahead stay in their slot until the turn they
+ *  are due.
+ *
+ * @param <T> The type of the items.
+ */
+public class ExpiryWheel<T> {
+    private final ArrayList<ArrayList<T>>   slots;
+    private final int                       mask;
+    private final long                      tick;
+    private final Deadline<T>               deadline;
+    // the last tick visited, -1 before the first item is added
+    private long                            current = -1;
+    private int                             size;
+
+    /**
+     * Reads the deadline of an item.
+     */
+    public interface Deadline<T> {
+        /**
+         * Returns the time the item expires, in milliseconds.
+         */
+        long deadline(T item);
+    }
+
+    /**
+     * Receives the items that expired.
+     */
+    public interface Expired<T> {
+        void onExpired(T item);
+    }
+
+    /**
+     * Constructor method.
+     *
+     * @param slots The number of slots, rounded up to a power of two.
+     * @param tick The length of a tick, in milliseconds.
+     * @param deadline Reads the deadline of the items.
+     */
+    public ExpiryWheel(int slots, long tick, Deadline<T> deadline) {
+        if (slots <= 0 || tick <= 0)
+            throw new IllegalArgumentException("Invalid wheel: " + slots + " slots of " + tick + " ms");
+        int n = Integer.highestOneBit(slots);
+        if (n < slots)
+            n <<= 1;
+        this.slots      = new ArrayList<>(n);
+        this.mask       = n - 1;
+        this.tick       = tick;
+        this.deadline   = deadline;
+        for (int i = 0; i < n; i++)
+            this.slots.add(new ArrayList<T>());
+    }
+
+    /**
+     * Returns the number of items in the wheel.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an item, it's expired by the first advance() after its
+     * deadline.
+     *
+     * @param item The item to add.
+     * @param now The current time, in milliseconds.
+     */
+    public void add(T item, long now) {
+        if (current < 0)
+            current = now / tick;
+        slotOf(deadline.deadline(item)).add(item);
+        size++;
+    }
+
+    /**
+     * Expires the items whose deadline is at or before now.
+     *
+     * @param now The current time, in milliseconds.
+     * @param expired Receives the items expired, they are out of the wheel.
+     * @return The number of items expired.
+     */
+    public int advance(long now, Expired<T> expired) {
+        long target = now / tick;
+        if (current < 0 || target < current)
+            return 0;
+
+        // all slots are visited once at most, however long since the last call
+        long first = Math.max(current, target - mask);
+        int count = 0;
+        for (long t = first; t <= target; t++)
+            count += visit(slots.get((int) (t & mask)), now, expired);
+        current = target;
+        return count;
+    }
+
+    /**
+     * Removes all items.
+     */
+    public void clear() {
+        for (ArrayList<T> slot : slots)
+            slot.clear();
+        size = 0;
+    }
+
+    private int visit(ArrayList<T> slot, long now, Expired<T> expired) {
+        int count = 0;
+        int kept  = 0;
+        int n     = slot.size();
+        for (int i = 0; i < n; i++) {
+            T item = slot.get(i);
+            long d = deadline.deadline(item);
+            if (d <= now) {
+                size--;
+                count++;
+                expired.onExpired(item);
+            }
+            else {
+                ArrayList<T> to = slotOf(d);
+                if (to == slot)
+                    slot.set(kept++, item);
+                else
+                    to.add(item);
+            }
+        }
+        slot.subList(kept, n).clear();
+        return count;
+    }
+
+    // deadlines in a tick already visited go in the slot of the last tick, visited again next time
+    private ArrayList<T> slotOf(long deadline) {
+        return slots.get((int) (Math.max(deadline / tick, current) & mask));
+    }
+}
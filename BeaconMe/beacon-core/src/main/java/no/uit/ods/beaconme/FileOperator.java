@@ -1,7 +1,5 @@
 package no.uit.ods.beaconme;
 
-import android.content.Context;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -20,9 +18,10 @@ public class FileOperator {
     /**
      *
      * @param filename  Full filename. Example: 'settings.json'
-     * @param mode      File Context Mode, set Context.MODE_PRIVATE for internal storage
-     *                  (recommended). See 'http://developer.android.com/reference/android/
-     *                  content/Context.html' for more information on MODEs'
+     * @param mode      File mode, set FileStore.MODE_PRIVATE for internal storage
+     *                  (recommended). The values are those of the Android Context, see
+     *                  'http://developer.android.com/reference/android/content/Context.html'
+     *                  for more information on MODEs'
      */
     FileOperator(String filename, int mode) {
         this.fName  = filename;
@@ -33,12 +32,12 @@ public class FileOperator {
      * Truncates file if it exists and writes content bytes to file.
      * The file is set on Class construction.
      */
-    public void write(String content, Context context) throws IOException {
-        writeClean(content, context, false, "");
+    public void write(String content, FileStore store) throws IOException {
+        writeClean(content, store, false, "");
     }
 
     /**
-     * Expects JSONArray as String (String content) and a context (Context context) as
+     * Expects JSONArray as String (String content) and a FileStore (FileStore store) as
      * method arguments. Iterates array and updates objects that already exists, appends
      * non-existing objects. The key argument is used to index the JSON file.
      *
@@ -54,14 +53,14 @@ public class FileOperator {
      *     ]
      * }
      */
-    public void writeJSON(String key, String content, Context context) throws IOException,
+    public void writeJSON(String key, String content, FileStore store) throws IOException,
             JSONException {
 
-        File file = new File(context.getFilesDir(), this.fName);
+        File file = new File(store.getFilesDir(), this.fName);
         if (!file.exists()) {
-            writeClean(content, context, true, key);
+            writeClean(content, store, true, key);
         } else {
-            searchAndReplace(key, content, context);
+            searchAndReplace(key, content, store);
         }
     }
 
@@ -69,14 +68,14 @@ public class FileOperator {
      * Reads and returns the file content. If the file does not exist, an
      * empty string is returned.
      */
-    public String read(Context context) throws IOException {
-        File file = new File(context.getFilesDir(), this.fName);
+    public String read(FileStore store) throws IOException {
+        File file = new File(store.getFilesDir(), this.fName);
         if (!file.exists()) {
             return "";
         }
 
         BufferedReader  inputReader = new BufferedReader(new InputStreamReader(
-            context.openFileInput(this.fName)));
+            store.openFileInput(this.fName)));
         String          inputString;
         StringBuffer    stringBuffer = new StringBuffer();
         while ((inputString = inputReader.readLine()) != null) {
@@ -87,10 +86,10 @@ public class FileOperator {
     }
 
     /**
-     * Deletes the file if it exists from the context file directory.
+     * Deletes the file if it exists from the directory of the store.
      */
-    public boolean delete(Context context) {
-        File file = new File(context.getFilesDir(), this.fName);
+    public boolean delete(FileStore store) {
+        File file = new File(store.getFilesDir(), this.fName);
         boolean res = false;
         if (file.exists()) {
             res = file.delete();
@@ -98,7 +97,7 @@ public class FileOperator {
         return res;
     }
 
-    private void writeClean(String content, Context context, boolean isJSON, String key)
+    private void writeClean(String content, FileStore store, boolean isJSON, String key)
             throws IOException {
 
         FileOutputStream outputStream;
@@ -109,16 +108,16 @@ public class FileOperator {
             output = content;
         }
 
-        outputStream = context.openFileOutput(this.fName, this.fMode);
+        outputStream = store.openFileOutput(this.fName, this.fMode);
         outputStream.write(output.getBytes());
         outputStream.close();
     }
 
-    private void searchAndReplace(String key, String content, Context context) throws IOException,
+    private void searchAndReplace(String key, String content, FileStore store) throws IOException,
             JSONException {
 
         // File from Internal Storage
-        String fContent = this.read(context);
+        String fContent = this.read(store);
         if (fContent == "") {
             return;
         }
@@ -141,7 +140,7 @@ public class FileOperator {
                 settings.put(curr);
             }
         }
-        writeClean(settings.toString(), context, true, key);
+        writeClean(settings.toString(), store, true, key);
     }
 
     private boolean compareKeys(JSONObject obj1, JSONObject obj2) throws JSONException {
@@ -0,0 +1,66 @@
+package no.uit.ods.beaconme;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ *  The private files of the app, as used by FileOperator. The methods
+ *  are those of the Android Context, so the app hands its Context over
+ *  through a thin wrapper, and other platforms use a directory. <br>
+ *
+ *  The modes are the values of the Context constants.
+ */
+public interface FileStore {
+    int MODE_PRIVATE    = 0x0000;
+    int MODE_APPEND     = 0x8000;
+
+    /**
+     * Returns the directory holding the files.
+     */
+    File getFilesDir();
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param name The name of the file in the directory.
+     * @throws IOException If the file can't be opened.
+     */
+    FileInputStream openFileInput(String name) throws IOException;
+
+    /**
+     * Opens a file for writing, creating it if needed.
+     *
+     * @param name The name of the file in the directory.
+     * @param mode MODE_PRIVATE to truncate the file, MODE_APPEND to add to it.
+     * @throws IOException If the file can't be opened.
+     */
+    FileOutputStream openFileOutput(String name, int mode) throws IOException;
+
+    /**
+     * A FileStore keeping the files in a directory.
+     */
+    class Directory implements FileStore {
+        private final File dir;
+
+        public Directory(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public File getFilesDir() {
+            return dir;
+        }
+
+        @Override
+        public FileInputStream openFileInput(String name) throws IOException {
+            return new FileInputStream(new File(dir, name));
+        }
+
+        @Override
+        public FileOutputStream openFileOutput(String name, int mode) throws IOException {
+            return new FileOutputStream(new File(dir, name), (mode & MODE_APPEND) != 0);
+        }
+    }
+}
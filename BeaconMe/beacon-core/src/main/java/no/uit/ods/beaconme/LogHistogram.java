@@ -0,0 +1,128 @@
+package no.uit.ods.beaconme;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Histogram of non-negative values in a fixed number of logarithmic
+ *  buckets. <br>
+ *
+ *  Values below 16 get a bucket each, above that every power of two is
+ *  split into 16 buckets, so a percentile is off by at most 1/16 of the
+ *  value. The buckets are allocated by the constructor, record() takes
+ *  no locks and allocates nothing, so it can be left on in the scanner.
+ *  It can be called from any thread, values above the highest value are
+ *  counted in the last bucket. <br>
+ *
+ *  Percentiles read while values are recorded may miss the values being
+ *  recorded, they are meant for monitoring.
+ */
+public class LogHistogram {
+    private static final int    SUB_BITS    = 4;
+    private static final int    SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray   counts;
+    private final AtomicLong        max = new AtomicLong();
+
+    /**
+     * Constructor method.
+     *
+     * @param highest The highest value told apart from larger ones.
+     */
+    public LogHistogram(long highest) {
+        counts = new AtomicLongArray(bucket(Math.max(0, highest)) + 1);
+    }
+
+    /**
+     * Counts a value, negative values are counted as 0.
+     *
+     * @param value long with the value.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(Math.min(bucket(value), counts.length() - 1));
+
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value))
+            m = max.get();
+    }
+
+    /**
+     * Returns the number of values counted.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * Returns the largest value counted, 0 if there are none.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value that the given part of the values are at or
+     * below, rounded up to the end of its bucket.
+     *
+     * @param percentile double from 0 to 100.
+     * @return long with the value, 0 if no values are counted.
+     */
+    public long getPercentile(double percentile) {
+        // read the counts once, so the rank is within what's summed
+        long[]  snapshot    = new long[counts.length()];
+        long    count       = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            // the last bucket also holds the values above the highest
+            if (seen >= rank)
+                return i == snapshot.length - 1 ? max.get() : Math.min(highestInBucket(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets all values counted.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the bucket of a non-negative value.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub      = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value in a bucket.
+     */
+    static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub      = bucket % SUB_BUCKETS;
+        long lowest  = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
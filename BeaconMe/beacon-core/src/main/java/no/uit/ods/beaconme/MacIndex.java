@@ -0,0 +1,206 @@
+package no.uit.ods.beaconme;
+
+import java.util.Arrays;
+
+/**
+ *  Open addressing hash map from a MAC address packed into a long to
+ *  an integer (a position in a list). <br>
+ *
+ *  Keys and values are stored in primitive arrays, so lookups, inserts
+ *  and updates do not allocate. Collisions are resolved with linear
+ *  probing, and removal shifts the following entries back so no
+ *  tombstones are needed. <br>
+ *
+ *  A packed MAC is at most 48 bits, so a negative key is never a valid
+ *  address and -1 is used to mark free slots.
+ */
+public class MacIndex {
+    private static final long   FREE            = -1L;
+    private static final int    MIN_CAPACITY    = 16;
+
+    private long[]  keys;
+    private int[]   values;
+    private int     size;
+    private int     mask;
+
+    /**
+     *  Constructor method, creates an empty index.
+     */
+    public MacIndex() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     *  Constructor method, creates a copy of an index with the same
+     *  capacity, the arrays are copied as they are.
+     *
+     * @param other The index to copy.
+     */
+    public MacIndex(MacIndex other) {
+        keys   = other.keys.clone();
+        values = other.values.clone();
+        size   = other.size;
+        mask   = other.mask;
+    }
+
+    /**
+     * Packs a MAC address in xx:yy:xx:yy:xx:yy format into the lower 48
+     * bits of a long.
+     *
+     * @param mac String with the MAC address.
+     * @return The packed address, or -1 if the String is not a MAC address.
+     */
+    public static long pack(String mac) {
+        if (mac == null || mac.length() != 17)
+            return FREE;
+
+        long value = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = mac.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':')
+                    return FREE;
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0)
+                return FREE;
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Formats a packed MAC address in XX:YY:XX:YY:XX:YY format, with
+     * upper case hex digits like the addresses from the BluetoothDevice.
+     *
+     * @param bits The packed address.
+     * @return String with the MAC address.
+     */
+    public static String unpack(long bits) {
+        char[] mac = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int octet = (int) (bits >>> (40 - 8 * i)) & 0xff;
+            mac[i * 3]     = Character.toUpperCase(Character.forDigit(octet >>> 4, 16));
+            mac[i * 3 + 1] = Character.toUpperCase(Character.forDigit(octet & 0xf, 16));
+            if (i < 5)
+                mac[i * 3 + 2] = ':';
+        }
+        return new String(mac);
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key The packed MAC address.
+     * @return The value, or -1 if the key is not in the index.
+     */
+    public int get(long key) {
+        if (key < 0)
+            return -1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key)
+                return values[i];
+            if (k == FREE)
+                return -1;
+        }
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous value.
+     *
+     * @param key The packed MAC address, must not be negative.
+     * @param value The value to store.
+     */
+    public void put(long key, int value) {
+        if (key < 0)
+            throw new IllegalArgumentException("Invalid key: " + key);
+        if ((size + 1) * 2 > keys.length)
+            rehash(keys.length * 2);
+
+        int i = slot(key);
+        while (keys[i] != FREE && keys[i] != key)
+            i = (i + 1) & mask;
+        if (keys[i] == FREE)
+            size++;
+        keys[i]   = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the key from the index.
+     *
+     * @param key The packed MAC address.
+     * @return The value that was mapped to the key, or -1 if not found.
+     */
+    public int remove(long key) {
+        if (key < 0)
+            return -1;
+
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE)
+                return -1;
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        size--;
+
+        // shift back entries that probed past the removed slot
+        int gap = i;
+        for (int j = (gap + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap]   = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = FREE;
+        return removed;
+    }
+
+    /**
+     * Removes all keys, the capacity is kept.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of keys in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        // mix the bits, the upper bytes of a MAC (vendor id) are shared by many beacons
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys   = new long[capacity];
+        values = new int[capacity];
+        mask   = capacity - 1;
+        Arrays.fill(keys, FREE);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys   = keys;
+        int[]  oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE)
+                continue;
+            int j = slot(oldKeys[i]);
+            while (keys[j] != FREE)
+                j = (j + 1) & mask;
+            keys[j]   = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
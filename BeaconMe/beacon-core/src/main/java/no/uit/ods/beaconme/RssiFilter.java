@@ -0,0 +1,197 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Smooths the RSSI samples of a beacon before they are used for
+ *  distance estimation. <br>
+ *
+ *  Each beacon in a list gets its own Track from the filter. The track
+ *  keeps a small fixed-size ring of the most recent samples in a
+ *  primitive array, plus whatever state the filter needs, all allocated
+ *  when the track is created. Adding a sample does not allocate. <br>
+ *
+ *  The available filters are: <br>
+ *  - "none": the latest sample is used as is. <br>
+ *  - "ewma": exponentially weighted moving average. <br>
+ *  - "kalman": one dimensional Kalman filter with a constant signal model. <br>
+ *  - "median": median of the samples in the ring. <br>
+ */
+public abstract class RssiFilter {
+    /** Number of recent samples kept per beacon. */
+    public static final int     WINDOW          = 7;
+
+    private static final double EWMA_ALPHA      = 0.25;
+    // process noise, how much the true RSSI is expected to drift between samples (dBm^2)
+    private static final double KALMAN_Q        = 0.5;
+    // measurement noise of a single sample (dBm^2)
+    private static final double KALMAN_R        = 16.0;
+
+    /**
+     * Creates a filter from its name as stored in the preferences.
+     * Unknown names give the "none" filter.
+     *
+     * @param name String with the filter name.
+     * @return The RssiFilter.
+     */
+    public static RssiFilter create(String name) {
+        if ("ewma".equals(name))
+            return new Ewma(EWMA_ALPHA);
+        else if ("kalman".equals(name))
+            return new Kalman(KALMAN_Q, KALMAN_R);
+        else if ("median".equals(name))
+            return new Median();
+        else
+            return new None();
+    }
+
+    /**
+     * Creates the per beacon state for this filter.
+     *
+     * @return A new Track.
+     */
+    public abstract Track newTrack();
+
+    /**
+     * The RSSI history and filter state of one beacon.
+     */
+    public static abstract class Track {
+        protected final int[]   ring = new int[WINDOW];
+        protected int           count;
+        private   int           pos;
+        private   double        value;
+
+        /**
+         * Adds a sample and returns the smoothed RSSI.
+         *
+         * @param rssi The RSSI sample in dBm.
+         * @return double with the smoothed RSSI.
+         */
+        public double add(int rssi) {
+            ring[pos] = rssi;
+            pos = (pos + 1) % WINDOW;
+            if (count < WINDOW)
+                count++;
+            value = filter(rssi);
+            return value;
+        }
+
+        /**
+         * Returns the last smoothed RSSI.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the number of samples in the ring.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Updates the filter state with the sample, which is already
+         * stored in the ring.
+         *
+         * @param rssi The RSSI sample in dBm.
+         * @return double with the smoothed RSSI.
+         */
+        protected abstract double filter(int rssi);
+    }
+
+    private static class None extends RssiFilter {
+        @Override
+        public Track newTrack() {
+            return new Track() {
+                @Override
+                protected double filter(int rssi) {
+                    return rssi;
+                }
+            };
+        }
+    }
+
+    private static class Ewma extends RssiFilter {
+        private final double alpha;
+
+        Ewma(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public Track newTrack() {
+            return new Track() {
+                private double average;
+
+                @Override
+                protected double filter(int rssi) {
+                    if (count == 1)
+                        average = rssi;
+                    else
+                        average += alpha * (rssi - average);
+                    return average;
+                }
+            };
+        }
+    }
+
+    private static class Kalman extends RssiFilter {
+        private final double q;
+        private final double r;
+
+        Kalman(double q, double r) {
+            this.q = q;
+            this.r = r;
+        }
+
+        @Override
+        public Track newTrack() {
+            return new Track() {
+                private double estimate;
+                private double error;
+
+                @Override
+                protected double filter(int rssi) {
+                    if (count == 1) {
+                        estimate = rssi;
+                        error    = r;
+                        return estimate;
+                    }
+                    // predict, the signal is modelled as constant plus noise
+                    double prior = error + q;
+                    // correct
+                    double gain  = prior / (prior + r);
+                    estimate    += gain * (rssi - estimate);
+                    error        = (1 - gain) * prior;
+                    return estimate;
+                }
+            };
+        }
+    }
+
+    private static class Median extends RssiFilter {
+        @Override
+        public Track newTrack() {
+            return new Track() {
+                private final int[] sorted = new int[WINDOW];
+
+                @Override
+                protected double filter(int rssi) {
+                    // insertion sort of the ring, the window is small
+                    for (int i = 0; i < count; i++) {
+                        int v = ring[i];
+                        int j = i - 1;
+                        while (j >= 0 && sorted[j] > v) {
+                            sorted[j + 1] = sorted[j];
+                            j--;
+                        }
+                        sorted[j + 1] = v;
+                    }
+                    int mid = count / 2;
+                    if ((count & 1) == 1)
+                        return sorted[mid];
+                    return (sorted[mid - 1] + sorted[mid]) / 2.0;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Read only view of an advertisement packet inside a larger array,
+ *  such as a slot of the SightingBuffer. <br>
+ *
+ *  The bytes are read in place, nothing is copied. A view handed out by
+ *  the SightingBuffer is reused for the next sighting, and the slot it
+ *  points to is recycled, so it's only valid until the call it's passed
+ *  to returns. Use toByteArray() to keep the bytes.
+ */
+public final class ScanRecord {
+    private byte[]  data;
+    private int     offset;
+    private int     length;
+
+    /**
+     * Constructor method, creates a view of nothing to be pointed at a
+     * packet by wrap().
+     */
+    public ScanRecord() {
+        this.data = new byte[0];
+    }
+
+    /**
+     * Constructor method, creates a view of a whole array.
+     *
+     * @param record Byte array with the advertisement packet.
+     */
+    public ScanRecord(byte[] record) {
+        wrap(record, 0, record.length);
+    }
+
+    /**
+     * Points the view at a packet.
+     *
+     * @param data The array holding the packet.
+     * @param offset The position of the packet in the array.
+     * @param length The length of the packet.
+     * @return The view itself.
+     */
+    public ScanRecord wrap(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > data.length)
+            throw new IndexOutOfBoundsException("Record " + offset + "+" + length + " outside " + data.length);
+        this.data   = data;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Returns the length of the packet.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns a byte of the packet, unsigned.
+     *
+     * @param i The position in the packet.
+     * @return The byte from 0 to 255, 0 if it's outside the packet.
+     */
+    public int get(int i) {
+        if (i < 0 || i >= length)
+            return 0;
+        return data[offset + i] & 0xff;
+    }
+
+    /**
+     * Returns the array holding the packet, for reading it in bulk from
+     * getOffset(). It must not be changed.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the position of the packet in getData().
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns a copy of the packet.
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, offset, copy, 0, length);
+        return copy;
+    }
+}
@@ -0,0 +1,148 @@
+package no.uit.ods.beaconme;
+
+/**
+ *  Decides how long the scanner service waits between two scans. <br>
+ *
+ *  Each scan listens for a fixed window. After a scan the gap before
+ *  the next one is chosen from what the scan saw: if new beacons
+ *  appeared or the smoothed RSSI of a beacon moved more than a threshold
+ *  the gap goes back to the minimum, if the beacons were stable and no
+ *  client is watching the list the gap is doubled up to the maximum.
+ *  While a client is subscribed the gap stays where it is. <br>
+ *
+ *  The policy doesn't start or stop scans itself and reads the time
+ *  from a Clock, so it can be driven by a simulated clock in tests. The
+ *  duty cycle, the part of the time spent scanning, is averaged over
+ *  the last cycles.
+ */
+public class ScanSchedulePolicy {
+    // weight of the last cycle in the duty cycle average
+    private static final double DUTY_WEIGHT         = 0.2;
+    // RSSI movement, in dB over one scan, counted as a change
+    private static final double DEFAULT_RSSI_CHANGE = 3.0;
+
+    private final Clock     clock;
+    private final long      window;
+    private final long      minGap;
+    private final long      maxGap;
+    private double          rssiChange = DEFAULT_RSSI_CHANGE;
+    private int             subscribers;
+    private long            gap;
+    private long            scanStart = -1;
+    private long            lastScanStart = -1;
+    private long            lastScanTime;
+    private double          dutyCycle;
+    private boolean         measured;
+
+    /**
+     * Constructor method.
+     *
+     * @param window The time each scan listens, in milliseconds.
+     * @param minGap The shortest time between two scans, in milliseconds.
+     * @param maxGap The longest time between two scans, in milliseconds.
+     * @param clock The Clock used to measure the duty cycle.
+     */
+    public ScanSchedulePolicy(long window, long minGap, long maxGap, Clock clock) {
+        if (window <= 0 || minGap <= 0 || maxGap < minGap)
+            throw new IllegalArgumentException("Invalid scan schedule: window " + window
+                    + ", gap " + minGap + ".." + maxGap);
+        this.window = window;
+        this.minGap = minGap;
+        this.maxGap = maxGap;
+        this.clock  = clock;
+        this.gap    = minGap;
+    }
+
+    /**
+     * Sets how much the smoothed RSSI of a beacon must move during a
+     * scan to count as a change.
+     *
+     * @param dB The change in dB.
+     */
+    public synchronized void setRssiChange(double dB) {
+        rssiChange = dB;
+    }
+
+    /**
+     * A client started watching the beacon list, the gap goes back to
+     * the minimum and is not widened until it unsubscribes.
+     */
+    public synchronized void subscribe() {
+        subscribers++;
+        gap = minGap;
+    }
+
+    /**
+     * A client stopped watching the beacon list.
+     */
+    public synchronized void unsubscribe() {
+        if (subscribers > 0)
+            subscribers--;
+    }
+
+    /**
+     * Returns the number of subscribed clients.
+     */
+    public synchronized int getSubscribers() {
+        return subscribers;
+    }
+
+    /**
+     * Returns the time each scan listens, in milliseconds.
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * Returns the gap chosen after the last scan, in milliseconds.
+     */
+    public synchronized long getGap() {
+        return gap;
+    }
+
+    /**
+     * Called when a scan starts.
+     */
+    public synchronized void onScanStarted() {
+        long now = clock.now();
+        if (lastScanStart >= 0 && now > lastScanStart) {
+            double last = Math.min(1.0, (double) lastScanTime / (now - lastScanStart));
+            dutyCycle = measured ? DUTY_WEIGHT * last + (1 - DUTY_WEIGHT) * dutyCycle : last;
+            measured  = true;
+        }
+        scanStart = now;
+    }
+
+    /**
+     * Called when a scan has stopped and its beacons are in the list,
+     * returns the time to wait before starting the next scan.
+     *
+     * @param newBeacons The number of beacons not seen by the scan before.
+     * @param maxRssiChange The largest change of smoothed RSSI of a
+     *                      beacon since the scan before, in dB.
+     * @return The gap before the next scan, in milliseconds.
+     */
+    public synchronized long onScanFinished(int newBeacons, double maxRssiChange) {
+        if (scanStart >= 0) {
+            lastScanTime    = clock.now() - scanStart;
+            lastScanStart   = scanStart;
+            scanStart       = -1;
+        }
+
+        if (newBeacons > 0 || maxRssiChange > rssiChange)
+            gap = minGap;
+        else if (subscribers == 0)
+            gap = Math.min(maxGap, gap * 2);
+        return gap;
+    }
+
+    /**
+     * Returns the part of the time spent scanning, from 0 to 1, averaged
+     * over the last cycles. A cycle is from the start of one scan to the
+     * start of the next.
+     */
+    public synchronized double getDutyCycle() {
+        return dutyCycle;
+    }
+}
@@ -0,0 +1,294 @@
+package no.uit.ods.beaconme;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Measurements of the path from the scanner to the beacon list. <br>
+ *
+ *  The times are counted in LogHistograms, so the memory used is fixed
+ *  and recording allocates nothing, the metrics are always on. The
+ *  latency of a sighting is the time from the scan callback until it's
+ *  in the list, in microseconds. Each scan counts the beacons evicted
+ *  and the time spent evicting them, the size of the list and how long
+ *  the scan ran past its window. The packets accepted and rejected by
+ *  the BeaconPrefilter are counted before they reach the buffer. <br>
+ *
+ *  snapshot() returns the percentiles and counters at one point in time,
+ *  two snapshots give the rate of sightings between them.
+ */
+public class ScannerMetrics {
+    private final LogHistogram  latency     = new LogHistogram(60000000);   // In microseconds
+    private final LogHistogram  evictTime   = new LogHistogram(10000000);   // In microseconds
+    private final LogHistogram  evictions   = new LogHistogram(100000);
+    private final LogHistogram  listSizes   = new LogHistogram(100000);
+    private final LogHistogram  overrun     = new LogHistogram(60000);      // In milliseconds
+    private final AtomicLong    sightings   = new AtomicLong();
+    private final AtomicLong    accepted    = new AtomicLong();
+    private final AtomicLong    notBeacon   = new AtomicLong();
+    private final AtomicLong    notAllowed  = new AtomicLong();
+    private volatile int        listSize;
+    private volatile long       started     = System.nanoTime();
+
+    /**
+     * Returns the histogram of the time from the scan callback until the
+     * sighting is in the list, in microseconds.
+     */
+    public LogHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Counts sightings added to the list.
+     *
+     * @param n The number of sightings.
+     */
+    public void addSightings(int n) {
+        sightings.addAndGet(n);
+    }
+
+    /**
+     * Counts a packet checked by the BeaconPrefilter.
+     *
+     * @param result The result of BeaconPrefilter.check().
+     */
+    public void countPrefilter(int result) {
+        if (result == BeaconPrefilter.ACCEPTED)
+            accepted.incrementAndGet();
+        else if (result == BeaconPrefilter.NOT_ALLOWED)
+            notAllowed.incrementAndGet();
+        else
+            notBeacon.incrementAndGet();
+    }
+
+    /**
+     * Sets the number of beacons in the list.
+     */
+    public void setListSize(int size) {
+        listSize = size;
+    }
+
+    /**
+     * Counts the end of a scan.
+     *
+     * @param evicted The number of beacons evicted from the list.
+     * @param nanos The time spent evicting them, in nanoseconds.
+     * @param size The number of beacons left in the list.
+     */
+    public void recordScan(int evicted, long nanos, int size) {
+        evictions.record(evicted);
+        evictTime.record(nanos / 1000);
+        listSizes.record(size);
+        listSize = size;
+    }
+
+    /**
+     * Counts how long a scan ran past its window.
+     *
+     * @param millis The time past the window, in milliseconds.
+     */
+    public void recordOverrun(long millis) {
+        overrun.record(millis);
+    }
+
+    /**
+     * Returns the metrics as they are now.
+     *
+     * @param dropped The number of sightings dropped before reaching the
+     *                list.
+     */
+    public Snapshot snapshot(long dropped) {
+        return new Snapshot(this, dropped);
+    }
+
+    /**
+     * Forgets everything counted so far.
+     */
+    public void reset() {
+        latency.reset();
+        evictTime.reset();
+        evictions.reset();
+        listSizes.reset();
+        overrun.reset();
+        sightings.set(0);
+        accepted.set(0);
+        notBeacon.set(0);
+        notAllowed.set(0);
+        started = System.nanoTime();
+    }
+
+    /**
+     * Percentiles of one histogram.
+     */
+    public static class Stats {
+        private final long count;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long max;
+
+        Stats(LogHistogram histogram) {
+            count   = histogram.getCount();
+            p50     = histogram.getPercentile(50);
+            p95     = histogram.getPercentile(95);
+            p99     = histogram.getPercentile(99);
+            max     = histogram.getMax();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP95() {
+            return p95;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    /**
+     * The metrics at one point in time, it does not change after it's
+     * taken.
+     */
+    public static class Snapshot {
+        private final long  time;
+        private final long  elapsed;
+        private final long  sightings;
+        private final long  dropped;
+        private final long  accepted;
+        private final long  notBeacon;
+        private final long  notAllowed;
+        private final int   listSize;
+        private final Stats latency;
+        private final Stats evictTime;
+        private final Stats evictions;
+        private final Stats listSizes;
+        private final Stats overrun;
+
+        Snapshot(ScannerMetrics metrics, long dropped) {
+            this.time       = System.nanoTime();
+            this.elapsed    = time - metrics.started;
+            this.sightings  = metrics.sightings.get();
+            this.dropped    = dropped;
+            this.accepted   = metrics.accepted.get();
+            this.notBeacon  = metrics.notBeacon.get();
+            this.notAllowed = metrics.notAllowed.get();
+            this.listSize   = metrics.listSize;
+            this.latency    = new Stats(metrics.latency);
+            this.evictTime  = new Stats(metrics.evictTime);
+            this.evictions  = new Stats(metrics.evictions);
+            this.listSizes  = new Stats(metrics.listSizes);
+            this.overrun    = new Stats(metrics.overrun);
+        }
+
+        /**
+         * Returns the number of sightings added to the list.
+         */
+        public long getSightings() {
+            return sightings;
+        }
+
+        /**
+         * Returns the sightings per second since the metrics were started.
+         */
+        public double getSightingsPerSecond() {
+            return elapsed > 0 ? sightings * 1e9 / elapsed : 0;
+        }
+
+        /**
+         * Returns the sightings per second since an earlier snapshot.
+         *
+         * @param previous A snapshot taken before this one.
+         */
+        public double getSightingsPerSecond(Snapshot previous) {
+            long nanos = time - previous.time;
+            if (nanos <= 0 || sightings < previous.sightings)
+                return getSightingsPerSecond();
+            return (sightings - previous.sightings) * 1e9 / nanos;
+        }
+
+        /**
+         * Returns the number of sightings dropped before reaching the list.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Returns the number of packets accepted by the prefilter.
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Returns the number of packets rejected by the prefilter, not
+         * beacons or not in the allow-list.
+         */
+        public long getRejected() {
+            return notBeacon  + notAllowed;
+        }
+
+        /**
+         * Returns the number of beacon packets rejected because their
+         * UUID is not in the allow-list.
+         */
+        public long getNotAllowed() {
+            return notAllowed;
+        }
+
+        /**
+         * Returns the number of beacons in the list.
+         */
+        public int getListSize() {
+            return listSize;
+        }
+
+        /**
+         * Returns the time from the scan callback until the sighting is
+         * in the list, in microseconds.
+         */
+        public Stats getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns the time spent evicting beacons per scan, in
+         * microseconds.
+         */
+        public Stats getEvictTime() {
+            return evictTime;
+        }
+
+        /**
+         * Returns the number of beacons evicted per scan.
+         */
+        public Stats getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the size of the list at the end of each scan.
+         */
+        public Stats getListSizes() {
+            return listSizes;
+        }
+
+        /**
+         * Returns how long the scans ran past their window, in
+         * milliseconds.
+         */
+        public Stats getOverrun() {
+            return overrun;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package no.uit.ods.beaconme;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Bounded single producer, single consumer ring buffer for raw beacon
+ *  sightings. <br>
+ *
+ *  The scan callback is the producer and writes (mac, rssi, record)
+ *  tuples into preallocated arrays, the thread owning the BeaconList
+ *  is the consumer and drains them in batches. No locks are taken and
+ *  no objects are allocated per sighting. <br>
+ *
+ *  The advertisement packets are copied into a slab of fixed size slots,
+ *  one per position in the ring, so the scan callback's array isn't
+ *  kept alive. The consumer reads the packet in place through a
+ *  ScanRecord view, and the slot is recycled when the batch is drained.
+ *  Packets larger than a slot, which the legacy scan callback doesn't
+ *  deliver, are kept by reference. <br>
+ *
+ *  If the consumer falls behind and the buffer is full, new sightings
+ *  are dropped and counted. The time each sighting is offered is kept
+ *  and handed to the consumer, which can count how long they waited.
+ */
+public class SightingBuffer {
+    private final int           capacity;
+    private final int           mask;
+    private final String[]      macs;
+    private final int[]         rssis;
+    private final byte[]        slab;
+    private final int[]         lengths;
+    // packets that don't fit in a slot, else null
+    private final byte[][]      large;
+    private final long[]        times;
+    // the consumer's view of the slot drained
+    private final ScanRecord    view    = new ScanRecord();
+
+    // next position to read, written by the consumer only
+    private final AtomicLong    head    = new AtomicLong();
+    // next position to write, written by the producer only
+    private final AtomicLong    tail    = new AtomicLong();
+    private final AtomicLong    dropped = new AtomicLong();
+    // the producer's last read of head, saves reading the consumer's cache line
+    private long                headCache;
+
+    /**
+     * The size of a slot, the 62 bytes of advertisement and scan response
+     * data of the legacy scan callback rounded up.
+     */
+    public static final int     SLOT_SIZE = 64;
+
+    /**
+     * Receives raw sightings like the scan callback does, from a replay
+     * or a generator.
+     */
+    public interface Sink {
+        /**
+         * Called once per sighting, in the order they were offered.
+         *
+         * @param mac String with the MAC address of the device.
+         * @param rssi Integer with the signal strength in dBm.
+         * @param record The raw advertisement packet.
+         */
+        void onSighting(String mac, int rssi, byte[] record);
+    }
+
+    /**
+     * Receives the sightings drained from the buffer.
+     */
+    public interface Reader {
+        /**
+         * Called once per sighting, in the order they were offered.
+         *
+         * @param mac String with the MAC address of the device.
+         * @param rssi Integer with the signal strength in dBm.
+         * @param record View of the advertisement packet in the buffer,
+         *               only valid until the call returns.
+         * @param time The System.nanoTime() the sighting was offered at.
+         */
+        void onSighting(String mac, int rssi, ScanRecord record, long time);
+    }
+
+    /**
+     * Constructor method.
+     *
+     * @param capacity The number of sightings the buffer can hold, rounded
+     *                 up to a power of two.
+     */
+    public SightingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask     = size - 1;
+        this.macs     = new String[size];
+        this.rssis    = new int[size];
+        this.slab     = new byte[size * SLOT_SIZE];
+        this.lengths  = new int[size];
+        this.large    = new byte[size][];
+        this.times    = new long[size];
+    }
+
+    /**
+     * Adds a sighting to the buffer, the packet is copied so the array
+     * can be reused by the caller. Must only be called from the producer
+     * thread.
+     *
+     * @param mac String with the MAC address of the device.
+     * @param rssi Integer with the signal strength in dBm.
+     * @param record The raw advertisement packet.
+     * @return false if the buffer was full and the sighting was dropped.
+     */
+    public boolean offer(String mac, int rssi, byte[] record) {
+        long t = tail.get();
+        if (t - headCache >= capacity) {
+            headCache = head.get();
+            if (t - headCache >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        int i = (int) t & mask;
+        macs[i]    = mac;
+        rssis[i]   = rssi;
+        lengths[i] = record.length;
+        if (record.length <= SLOT_SIZE)
+            System.arraycopy(record, 0, slab, i * SLOT_SIZE, record.length);
+        else
+            large[i] = record;
+        times[i]   = System.nanoTime();
+        // publish the slot to the consumer
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands up to max sightings to the reader. Must only be called from
+     * the consumer thread.
+     *
+     * @param reader The Reader receiving the sightings.
+     * @param max The largest number of sightings to drain.
+     * @return The number of sightings drained.
+     */
+    public int drain(Reader reader, int max) {
+        return drain(reader, max, null);
+    }
+
+    /**
+     * Hands up to max sightings to the reader, and counts the time from
+     * when each was offered until the reader returned in microseconds.
+     * Must only be called from the consumer thread.
+     *
+     * @param reader The Reader receiving the sightings.
+     * @param max The largest number of sightings to drain.
+     * @param latency The LogHistogram counting the times, or null.
+     * @return The number of sightings drained.
+     */
+    public int drain(Reader reader, int max, LogHistogram latency) {
+        long h = head.get();
+        int  n = (int) Math.min(tail.get() - h, max);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (h + k) & mask;
+            if (large[i] == null)
+                view.wrap(slab, i * SLOT_SIZE, lengths[i]);
+            else
+                view.wrap(large[i], 0, lengths[i]);
+            reader.onSighting(macs[i], rssis[i], view, times[i]);
+            macs[i]  = null;
+            large[i] = null;
+        }
+        if (latency != null && n > 0) {
+            long now = System.nanoTime();
+            for (int k = 0; k < n; k++)
+                latency.record((now - times[(int) (h + k) & mask]) / 1000);
+        }
+        // release the slots to the producer
+        head.lazySet(h + n);
+        return n;
+    }
+
+    /**
+     * Returns the number of sightings waiting to be drained.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Returns the capacity of the buffer.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of sightings dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
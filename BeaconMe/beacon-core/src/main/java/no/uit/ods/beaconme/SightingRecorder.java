@@ -0,0 +1,150 @@
+package no.uit.ods.beaconme;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ *  Writes the raw sightings of the scanner into a compact binary capture,
+ *  which SightingReplay feeds back through the same ingestion path. <br>
+ *
+ *  The capture starts with the magic number, the format version and the
+ *  time of the first sighting. Each sighting is then written as: <br>
+ *
+ *  - the milliseconds since the previous sighting, as a varint <br>
+ *  - a flag byte, 1 if the MAC is packed in the next 6 bytes, else it
+ *    follows as a modified UTF-8 String <br>
+ *  - the RSSI as a signed byte <br>
+ *  - the length of the advertisement packet as a varint, and the packet <br>
+ *
+ *  A sighting of a 30 byte iBeacon packet takes about 40 bytes. Writes
+ *  go to a buffer, flush() should be called now and then (the service
+ *  does it after each scan) so a capture cut short by the process being
+ *  killed loses at most the sightings since. The methods are
+ *  synchronized, so the sightings can be recorded and flushed from
+ *  different threads. The service records the sightings it drains into
+ *  the list, on the thread that flushes.
+ */
+public class SightingRecorder implements Closeable {
+    static final int            MAGIC       = 0x424d4350;   // "BMCP"
+    static final int            VERSION     = 1;
+    static final int            PACKED_MAC  = 1;
+    private static final int    BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream  out;
+    private long                    lastTime = -1;
+    private long                    count;
+
+    /**
+     * Constructor method, creates or overwrites the capture file.
+     *
+     * @param file The capture file.
+     * @throws IOException If the file can't be created.
+     */
+    public SightingRecorder(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     * Constructor method, writes the capture to a stream.
+     *
+     * @param stream The stream written to, closed by close().
+     */
+    public SightingRecorder(OutputStream stream) {
+        out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+    }
+
+    /**
+     * Adds a sighting to the capture.
+     *
+     * @param time The time of the sighting in milliseconds, e.g. from
+     *             SystemClock.elapsedRealtime().
+     * @param mac String with the MAC address of the device.
+     * @param rssi Integer with the signal strength in dBm.
+     * @param record The raw advertisement packet, or null.
+     * @throws IOException If the capture can't be written.
+     */
+    public synchronized void record(long time, String mac, int rssi, byte[] record) throws IOException {
+        if (record == null)
+            write(time, mac, rssi, null, 0, 0);
+        else
+            write(time, mac, rssi, record, 0, record.length);
+    }
+
+    /**
+     * Adds a sighting to the capture, with the packet read in place from
+     * a view such as the slot of a SightingBuffer.
+     *
+     * @param time The time of the sighting in milliseconds.
+     * @param mac String with the MAC address of the device.
+     * @param rssi Integer with the signal strength in dBm.
+     * @param record View of the raw advertisement packet.
+     * @throws IOException If the capture can't be written.
+     */
+    public synchronized void recordView(long time, String mac, int rssi, ScanRecord record) throws IOException {
+        write(time, mac, rssi, record.getData(), record.getOffset(), record.length());
+    }
+
+    private void write(long time, String mac, int rssi, byte[] data, int offset, int length)
+            throws IOException {
+        if (lastTime < 0) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(time);
+            lastTime = time;
+        }
+        // a clock going back is recorded as no time passing
+        writeVarLong(Math.max(0, time - lastTime));
+        lastTime = Math.max(lastTime, time);
+
+        long bits = MacIndex.pack(mac);
+        if (bits >= 0) {
+            out.writeByte(PACKED_MAC);
+            for (int shift = 40; shift >= 0; shift -= 8)
+                out.writeByte((int) (bits >>> shift));
+        }
+        else {
+            out.writeByte(0);
+            out.writeUTF(mac);
+        }
+        out.writeByte(Math.max(-128, Math.min(127, rssi)));
+        writeVarLong(length);
+        if (length > 0)
+            out.write(data, offset, length);
+        count++;
+    }
+
+    /**
+     * Returns the number of sightings recorded.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the buffered sightings to the file.
+     *
+     * @throws IOException If the capture can't be written.
+     */
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    // 7 bits per byte, lowest first, the high bit set on all but the last
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
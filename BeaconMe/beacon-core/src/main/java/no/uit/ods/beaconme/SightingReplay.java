@@ -0,0 +1,181 @@
+package no.uit.ods.beaconme;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *  Reads a capture written by SightingRecorder and hands the sightings
+ *  to a SightingBuffer.Sink, like the scan callback does. <br>
+ *
+ *  The sightings can be replayed with the time between them scaled, 1.0
+ *  being the speed they were recorded at, or as fast as they are read.
+ *  next() hands over one sighting at a time so the caller can run its
+ *  own clock from getTime(), e.g. to time the scans of a test. <br>
+ *
+ *  A capture cut off in the middle of a sighting ends before it. Only
+ *  the thread replaying may call the methods.
+ */
+public class SightingReplay implements Closeable {
+    private final DataInputStream   in;
+    private long                    startTime;
+    private long                    time;
+    private long                    count;
+    private boolean                 ended;
+    // the sighting read last
+    private String                  mac;
+    private int                     rssi;
+    private byte[]                  record;
+
+    /**
+     * Constructor method, opens a capture file.
+     *
+     * @param file The capture file.
+     * @throws IOException If the file can't be read or is not a capture.
+     */
+    public SightingReplay(File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * Constructor method, reads a capture from a stream.
+     *
+     * @param stream The stream read from, closed by close().
+     * @throws IOException If the stream can't be read or is not a capture.
+     */
+    public SightingReplay(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        try {
+            if (in.readInt() != SightingRecorder.MAGIC)
+                throw new IOException("Not a sighting capture");
+            int version = in.readUnsignedByte();
+            if (version != SightingRecorder.VERSION)
+                throw new IOException("Unsupported capture version " + version);
+            startTime = in.readLong();
+            time      = startTime;
+        } catch (EOFException e) {
+            // an empty capture, nothing was recorded
+            ended = true;
+        }
+    }
+
+    /**
+     * Returns the time of the first sighting in milliseconds.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time of the last sighting handed over, in milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of sightings handed over.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Hands the next sighting to the sink.
+     *
+     * @param sink The Sink receiving the sighting.
+     * @return false at the end of the capture.
+     * @throws IOException If the capture can't be read or is corrupt.
+     */
+    public boolean next(SightingBuffer.Sink sink) throws IOException {
+        if (!read())
+            return false;
+        sink.onSighting(mac, rssi, record);
+        return true;
+    }
+
+    /**
+     * Hands all the remaining sightings to the sink.
+     *
+     * @param sink The Sink receiving the sightings.
+     * @param speed How much faster than recorded to replay, 1.0 for the
+     *              recorded speed, 0 or less for as fast as possible.
+     * @return The number of sightings replayed.
+     * @throws IOException If the capture can't be read or is corrupt.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public long replay(SightingBuffer.Sink sink, double speed) throws IOException, InterruptedException {
+        long first = count;
+        long wallStart = System.nanoTime();
+        long captureStart = time;
+        while (read()) {
+            // stopped, also when not waiting between the sightings
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (speed > 0) {
+                // sleep until the sighting is due, so the rate doesn't drift
+                long due  = (long) ((time - captureStart) * 1000000 / speed);
+                long wait = due - (System.nanoTime() - wallStart);
+                if (wait > 0)
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+            sink.onSighting(mac, rssi, record);
+        }
+        return count - first;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // reads the next sighting into the fields, false at the end
+    private boolean read() throws IOException {
+        if (ended)
+            return false;
+        try {
+            long sightingTime = time + readVarLong();
+            String mac;
+            if (in.readUnsignedByte() == SightingRecorder.PACKED_MAC) {
+                long bits = 0;
+                for (int i = 0; i < 6; i++)
+                    bits = (bits << 8) | in.readUnsignedByte();
+                mac = MacIndex.unpack(bits);
+            }
+            else
+                mac = in.readUTF();
+            int rssi = in.readByte();
+            long length = readVarLong();
+            if (length > 1024)
+                throw new IOException("Corrupt capture, packet of " + length + " bytes");
+            byte[] record = new byte[(int) length];
+            in.readFully(record);
+
+            time        = sightingTime;
+            this.mac    = mac;
+            this.rssi   = rssi;
+            this.record = record;
+            count++;
+            return true;
+        } catch (EOFException e) {
+            ended = true;
+            return false;
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Corrupt capture, varint too long");
+    }
+}
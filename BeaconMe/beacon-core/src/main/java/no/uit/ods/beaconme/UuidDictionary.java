@@ -0,0 +1,222 @@
+package no.uit.ods.beaconme;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ *  Process wide dictionary giving the beacon UUIDs of the deployment a
+ *  small int id. <br>
+ *
+ *  A deployment has a handful of proximity UUIDs shared by thousands of
+ *  beacons, so the beacons and associations keep the id instead of the
+ *  UUID, and compare ids. The dashed String of a UUID is only built when
+ *  it's asked for, once, and shared by all beacons with the UUID. <br>
+ *
+ *  Only the UUIDs of the allow-list and of the associations are added,
+ *  by id(). A beacon looks its UUID up with find(), which adds nothing,
+ *  so the UUIDs seen on the radio don't grow the dictionary. Beacons
+ *  with other UUIDs keep the two longs of the UUID themselves. <br>
+ *
+ *  Ids are handed out from 0 in order and never removed. An entry is
+ *  the two longs, its hash slots and, once it's asked for, the String
+ *  of the UUID. <br>
+ *
+ *  id() and find() take a lock, find() is called once for each new
+ *  beacon. The UUID of an id is read without locking, from any thread
+ *  the id was handed to.
+ */
+public final class UuidDictionary {
+    /** The id of no UUID, an association read with an invalid one. */
+    public static final int NONE = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final Object lock = new Object();
+    // the UUIDs by id, written before the id is handed out
+    private static volatile Entries entries = new Entries(MIN_CAPACITY);
+    // open addressing hash of the UUIDs to id + 1, 0 marks free slots, used under the lock
+    private static int[]    slots = new int[2 * MIN_CAPACITY];
+    private static int      size;
+
+    private UuidDictionary() {
+    }
+
+    /**
+     * Returns the id of the UUID, a new one if it's not in the
+     * dictionary. Only for the UUIDs of the allow-list and associations.
+     *
+     * @param msb The upper 64 bits of the UUID.
+     * @param lsb The lower 64 bits of the UUID.
+     * @return The id of the UUID.
+     */
+    public static int id(long msb, long lsb) {
+        synchronized (lock) {
+            Entries current = entries;
+            int     mask    = slots.length - 1;
+            int     i       = slot(msb, lsb, mask);
+            for (; slots[i] != 0; i = (i + 1) & mask) {
+                int id = slots[i] - 1;
+                if (current.msbs[id] == msb && current.lsbs[id] == lsb)
+                    return id;
+            }
+
+            int id = size;
+            if (id == current.msbs.length)
+                current = current.grow();
+            current.msbs[id] = msb;
+            current.lsbs[id] = lsb;
+            // publishes the entry to the threads reading it
+            entries  = current;
+            slots[i] = id + 1;
+            size++;
+            if (size * 2 > slots.length)
+                rehash(current);
+            return id;
+        }
+    }
+
+    /**
+     * Returns the id of the UUID if it's in the dictionary, nothing is
+     * added.
+     *
+     * @param msb The upper 64 bits of the UUID.
+     * @param lsb The lower 64 bits of the UUID.
+     * @return The id of the UUID, or NONE.
+     */
+    public static int find(long msb, long lsb) {
+        synchronized (lock) {
+            Entries current = entries;
+            int     mask    = slots.length - 1;
+            for (int i = slot(msb, lsb, mask); slots[i] != 0; i = (i + 1) & mask) {
+                int id = slots[i] - 1;
+                if (current.msbs[id] == msb && current.lsbs[id] == lsb)
+                    return id;
+            }
+            return NONE;
+        }
+    }
+
+    /**
+     * Returns the id of a UUID in the standard String representation, a
+     * new one if it's not in the dictionary.
+     *
+     * @param uuid String with the UUID.
+     * @return The id, or NONE if the String is not a UUID.
+     */
+    public static int id(String uuid) {
+        if (uuid == null)
+            return NONE;
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            return id(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+        } catch (IllegalArgumentException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * Returns the dictionary's String for a UUID in the dictionary, so
+     * equal UUIDs read from elsewhere share one String. Nothing is added.
+     *
+     * @param uuid String with the UUID.
+     * @return The shared String, or the argument if it's not a UUID in
+     * the dictionary.
+     */
+    public static String shared(String uuid) {
+        if (uuid == null)
+            return null;
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            int  id     = find(parsed.getMostSignificantBits(), parsed.getLeastSignificantBits());
+            return id == NONE ? uuid : toString(id);
+        } catch (IllegalArgumentException e) {
+            return uuid;
+        }
+    }
+
+    /**
+     * Returns the upper 64 bits of the UUID with the id.
+     */
+    public static long getMostSigBits(int id) {
+        return entries.msbs[id];
+    }
+
+    /**
+     * Returns the lower 64 bits of the UUID with the id.
+     */
+    public static long getLeastSigBits(int id) {
+        return entries.lsbs[id];
+    }
+
+    /**
+     * Returns the UUID with the id formatted like BeaconParser.formatUuid,
+     * built on the first call and the same String after.
+     *
+     * @param id The id of the UUID.
+     * @return String with the UUID, null for NONE.
+     */
+    public static String toString(int id) {
+        if (id == NONE)
+            return null;
+        Entries current = entries;
+        String  text    = current.text[id];
+        if (text == null) {
+            // two threads may both build it, either String will do
+            text = BeaconParser.formatUuid(current.msbs[id], current.lsbs[id]);
+            current.text[id] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Returns the number of UUIDs in the dictionary.
+     */
+    public static int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private static int slot(long msb, long lsb, int mask) {
+        long h = (msb * 0x9E3779B97F4A7C15L) ^ lsb;
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static void rehash(Entries current) {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = slot(current.msbs[id], current.lsbs[id], mask);
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = id + 1;
+        }
+    }
+
+    /**
+     * The UUIDs and their Strings by id, replaced by a larger copy when
+     * full.
+     */
+    private static class Entries {
+        final long[]    msbs;
+        final long[]    lsbs;
+        final String[]  text;
+
+        Entries(int capacity) {
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            text = new String[capacity];
+        }
+
+        Entries(Entries other, int capacity) {
+            msbs = Arrays.copyOf(other.msbs, capacity);
+            lsbs = Arrays.copyOf(other.lsbs, capacity);
+            text = Arrays.copyOf(other.text, capacity);
+        }
+
+        Entries grow() {
+            return new Entries(this, msbs.length * 2);
+        }
+    }
+}
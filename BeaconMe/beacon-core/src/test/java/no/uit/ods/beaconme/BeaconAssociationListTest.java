@@ -0,0 +1,377 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests lookups in the indexed BeaconAssociationList by MAC and by
+ * UUID + major + minor, and times them at 10 000 associations against
+ * a scan of the JSONArray like the list used to do. Also checks that
+ * it can be read while another thread changes it, that the journal is
+ * committed in the background, replayed and compacted,
+ * and times an add at 100 and 10 000 associations.
+ */
+public class BeaconAssociationListTest extends TestCase {
+    private static final int    ASSOCIATIONS    = 10000;
+    private static final int    ROUNDS          = 5;
+    private static final int    ADDS            = 50;
+
+    private File file;
+    private File journal;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        file = new File(System.getProperty("java.io.tmpdir"), "associations-test");
+        journal = new File(file.getPath() + ".journal");
+        file.delete();
+        journal.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        journal.delete();
+        super.tearDown();
+    }
+
+    public void testLookup() throws JSONException, IOException {
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        Beacon[] beacons = createBeacons(100);
+        for (int i = 0; i < beacons.length; i++)
+            list.add(beacons[i], "name" + i, "value" + i, i % 4);
+
+        assertEquals(100, list.getCount());
+        for (int i = 0; i < beacons.length; i++) {
+            assertEquals(i, list.contains(beacons[i]));
+            assertEquals("name" + i, list.getName(beacons[i]));
+            assertEquals("value" + i, list.getAssociation(beacons[i]));
+            assertEquals(i % 4, list.getNotify(beacons[i]));
+        }
+
+        // a replaced beacon with a new MAC is found on UUID + major + minor
+        Beacon replaced = beacon("00:11:22:33:44:55", 42);
+        assertEquals(42, list.contains(replaced));
+        assertEquals("value42", list.getAssociation(replaced));
+        assertEquals(-1, list.contains(beacon("00:11:22:33:44:56", ASSOCIATIONS)));
+
+        // updating keeps the position
+        list.add(beacons[7], "renamed", "value", 3);
+        assertEquals(100, list.getCount());
+        assertEquals("renamed", list.get(7).getString("name"));
+        assertEquals(3, list.get(7).getInt("notify"));
+        list.close();
+    }
+
+    public void testRemoveAndReload() throws JSONException, IOException {
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        Beacon[] beacons = createBeacons(10);
+        for (int i = 0; i < beacons.length; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+
+        list.remove(beacons[3].getAddress());
+        list.remove(beacons[4].getAddress());
+        list.commit();
+        assertEquals(8, list.getCount());
+        assertEquals(-1, list.contains(beacons[3]));
+        assertEquals(-1, list.contains(beacons[4]));
+        assertEquals("name5", list.getName(beacons[5]));
+        assertEquals(3, list.contains(beacons[5]));
+
+        BeaconAssociationList loaded = new BeaconAssociationList(file);
+        assertEquals(8, loaded.getCount());
+        for (int i = 0; i < beacons.length; i++) {
+            if (i == 3 || i == 4)
+                assertEquals(-1, loaded.contains(beacons[i]));
+            else
+                assertEquals("value" + i, loaded.getAssociation(beacons[i]));
+        }
+        JSONObject first = loaded.get(0);
+        assertEquals(beacons[0].getAddress(), first.getString("id"));
+        assertEquals(beacons[0].getUuid(), first.getString("uuid"));
+        assertSame(beacons[0].getUuid(), first.getString("uuid"));
+        assertEquals(0, first.getInt("major"));
+        assertEquals(0, first.getInt("minor"));
+    }
+
+    public void testJournalReplay() throws JSONException, IOException {
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        Beacon[] beacons = createBeacons(10);
+        for (int i = 0; i < beacons.length; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+        list.add(beacons[2], "renamed", "value", 2);
+        list.remove(beacons[5].getAddress());
+        list.close();
+
+        // nothing is compacted yet, everything is in the journal
+        assertFalse(file.exists());
+        assertTrue(journal.length() > 0);
+
+        // a record cut short by a crash is dropped and overwritten
+        FileWriter fw = new FileWriter(journal, true);
+        fw.write("{\"op\":\"put\",\"associ");
+        fw.close();
+
+        BeaconAssociationList loaded = new BeaconAssociationList(file);
+        assertEquals(9, loaded.getCount());
+        assertEquals("renamed", loaded.getName(beacons[2]));
+        assertEquals(2, loaded.getNotify(beacons[2]));
+        assertEquals(-1, loaded.contains(beacons[5]));
+
+        loaded.add(beacons[5], "back", "value", 3);
+        loaded.close();
+        loaded = new BeaconAssociationList(file);
+        assertEquals(10, loaded.getCount());
+        assertEquals("back", loaded.getName(beacons[5]));
+        loaded.close();
+    }
+
+    public void testConcurrentReaders() throws JSONException, IOException, InterruptedException {
+        final BeaconAssociationList list = new BeaconAssociationList(file);
+        // no compaction left running on the writer for the next test
+        list.setCompactThreshold(Integer.MAX_VALUE);
+        final Beacon[] beacons = createBeacons(100);
+        for (int i = 0; i < beacons.length; i += 2)
+            list.add(beacons[i], "name" + i, "value" + i, 3);
+
+        // the UI thread adds and removes the other associations
+        final String[] error = new String[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        for (int i = 1; i < beacons.length; i += 2)
+                            list.add(beacons[i], "name" + i, "value" + i, 1);
+                        for (int i = 1; i < beacons.length; i += 2)
+                            list.remove(beacons[i].getAddress());
+                    }
+                } catch (Exception e) {
+                    error[0] = e.toString();
+                }
+            }
+        });
+        writer.start();
+
+        // while the scanner thread reads the ones that stay
+        String missing = null;
+        while (writer.isAlive() && missing == null) {
+            for (int i = 0; i < beacons.length; i += 2) {
+                if (!list.notify(beacons[i]) || !("value" + i).equals(list.getAssociation(beacons[i])))
+                    missing = "association " + i + " not found";
+            }
+        }
+        writer.join();
+        list.close();
+
+        assertTrue(missing, missing == null);
+        assertTrue(error[0], error[0] == null);
+        assertEquals(50, list.getCount());
+    }
+
+    public void testBackgroundCommit() throws JSONException, IOException, InterruptedException {
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        Beacon[] beacons = createBeacons(10);
+        for (int i = 0; i < beacons.length; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+        list.remove(beacons[3].getAddress());
+
+        // all changes are written by one commit of the writer
+        for (int i = 0; i < 100 && journal.length() == 0; i++)
+            Thread.sleep(20);
+        long length = journal.length();
+        assertTrue(length > 0);
+        Thread.sleep(100);
+        assertEquals(length, journal.length());
+
+        BeaconAssociationList loaded = new BeaconAssociationList(file);
+        assertEquals(9, loaded.getCount());
+        assertEquals(-1, loaded.contains(beacons[3]));
+        assertEquals("value9", loaded.getAssociation(beacons[9]));
+        list.close();
+    }
+
+    public void testCompaction() throws JSONException, IOException, InterruptedException {
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        list.setCompactThreshold(16);
+        Beacon[] beacons = createBeacons(100);
+        for (int i = 0; i < beacons.length; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+
+        // compaction runs in the background
+        for (int i = 0; i < 100 && !file.exists(); i++)
+            Thread.sleep(20);
+        assertTrue(file.exists());
+
+        for (int i = 0; i < beacons.length; i += 2)
+            list.remove(beacons[i].getAddress());
+        list.compact();
+        assertEquals(0, journal.length());
+        list.close();
+
+        BeaconAssociationList loaded = new BeaconAssociationList(file);
+        assertEquals(50, loaded.getCount());
+        for (int i = 0; i < beacons.length; i++)
+            assertEquals(i % 2 == 0 ? null : "value" + i, loaded.getAssociation(beacons[i]));
+        loaded.close();
+    }
+
+    public void testAddTime() throws JSONException, IOException {
+        Beacon[] beacons = createBeacons(ASSOCIATIONS + ADDS);
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        list.setCompactThreshold(Integer.MAX_VALUE);
+
+        for (int i = 0; i < 100; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+        long small = timeAdds(list, beacons, 100);
+        for (int i = 100 + ADDS; i < ASSOCIATIONS; i++)
+            list.add(beacons[i], "name" + i, "value" + i, 1);
+        long large = timeAdds(list, beacons, ASSOCIATIONS);
+        list.close();
+
+        // the old commit, the whole list written again
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < list.getCount(); i++)
+            array.put(list.get(i));
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            file.delete();
+            FileWriter fw = new FileWriter(file);
+            fw.write(array.toString());
+            fw.close();
+        }
+        long rewrite = (System.nanoTime() - start) / ROUNDS;
+
+        assertTrue("add at 100 associations " + small + " ns, at " + ASSOCIATIONS + " " + large + " ns",
+                large < 4 * small + 2000000);
+        assertTrue("add " + large + " ns, rewriting the file " + rewrite + " ns", large * 10 < rewrite);
+    }
+
+    /**
+     * Median time of adding beacons from position "from".
+     */
+    private static long timeAdds(BeaconAssociationList list, Beacon[] beacons, int from)
+            throws JSONException, IOException {
+        long[] times = new long[ADDS];
+        for (int i = 0; i < ADDS; i++) {
+            long start = System.nanoTime();
+            list.add(beacons[from + i], "name", "value", 1);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[ADDS / 2];
+    }
+
+    public void testInvalidUuid() throws JSONException, IOException {
+        Beacon beacon = beacon("C0:FF:EE:00:00:01", 1);
+        JSONObject json = new JSONObject();
+        json.put("id", beacon.getAddress());
+        json.put("uuid", "not-a-uuid");
+        json.put("major", 0);
+        json.put("minor", 1);
+        json.put("name", "name");
+        json.put("value", "value");
+        json.put("notify", 1);
+        FileWriter fw = new FileWriter(file);
+        fw.write(new JSONArray().put(json).toString());
+        fw.close();
+
+        // found by id only, and the uuid is saved as it was read
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        assertEquals(0, list.contains(beacon));
+        assertEquals(-1, list.contains(beacon("C0:FF:EE:00:00:02", 1)));
+        list.compact();
+        assertEquals("not-a-uuid", new BeaconAssociationList(file).get(0).getString("uuid"));
+    }
+
+    public void testLookupTime() throws JSONException, IOException {
+        Beacon[] beacons = createBeacons(ASSOCIATIONS);
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < beacons.length; i++) {
+            JSONObject json = new JSONObject();
+            json.put("id", beacons[i].getAddress());
+            json.put("uuid", beacons[i].getUuid());
+            json.put("major", beacons[i].getMajor());
+            json.put("minor", beacons[i].getMinor());
+            json.put("name", "name" + i);
+            json.put("value", "value" + i);
+            json.put("notify", 1);
+            array.put(json);
+        }
+        FileWriter fw = new FileWriter(file);
+        fw.write(array.toString());
+        fw.close();
+
+        BeaconAssociationList list = new BeaconAssociationList(file);
+        assertEquals(ASSOCIATIONS, list.getCount());
+
+        // look up every beacon, half of them by UUID after a MAC change
+        Beacon[] lookups = new Beacon[ASSOCIATIONS];
+        for (int i = 0; i < lookups.length; i++)
+            lookups[i] = i % 2 == 0 ? beacons[i] : beacon("00:11:22:33:44:55", i);
+
+        long indexed = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups.length; i++)
+                assertEquals(i, list.contains(lookups[i]));
+            indexed = Math.min(indexed, System.nanoTime() - start);
+        }
+
+        // a few of the lookups the old way, it's too slow for all of them
+        int sample = ASSOCIATIONS / 100;
+        long scanned = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups.length; i += ASSOCIATIONS / sample)
+                assertEquals(i, scan(array, lookups[i]));
+            scanned = Math.min(scanned, System.nanoTime() - start);
+        }
+
+        long indexedLookup  = indexed / ASSOCIATIONS;
+        long scannedLookup  = scanned / sample;
+        assertTrue("indexed " + indexedLookup + " ns, scanned " + scannedLookup + " ns per lookup",
+                indexedLookup * 10 < scannedLookup);
+    }
+
+    /**
+     * The lookup the list did before it was indexed, the last
+     * association with the same id or UUID + major + minor.
+     */
+    private static int scan(JSONArray associations, Beacon beacon) throws JSONException {
+        int hit = -1;
+        for (int i = 0; i < associations.length(); i++) {
+            JSONObject json = (JSONObject) associations.get(i);
+            if (json.get("id").equals(beacon.getAddress()))
+                hit = i;
+            else if (json.get("uuid").equals(beacon.getUuid())
+                    && json.getInt("major") == beacon.getMajor()
+                    && json.getInt("minor") == beacon.getMinor())
+                hit = i;
+        }
+        return hit;
+    }
+
+    private static Beacon[] createBeacons(int n) {
+        Beacon[] beacons = new Beacon[n];
+        for (int i = 0; i < n; i++) {
+            String mac = String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+            beacons[i] = beacon(mac, i);
+        }
+        return beacons;
+    }
+
+    // beacon number i has major i / 1000 and minor i % 1000
+    private static Beacon beacon(String mac, int i) {
+        byte[] record = TrafficGenerator.packet(0xe2c5000000000000L, 0, i / 1000, i % 1000, -59);
+        return new Beacon(mac, null, -60, new BeaconParser().parse(record));
+    }
+}
@@ -0,0 +1,81 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how the BeaconDelta builder combines the changes of several
+ * scans delivered to a listener at once.
+ */
+public class BeaconDeltaTest extends TestCase {
+
+    public void testSingleScan() {
+        Beacon[] beacons = BeaconListTest.createBeacons(3);
+        BeaconDelta.Builder builder = new BeaconDelta.Builder();
+        builder.add(BeaconDelta.Type.ENTERED, beacons[0]);
+        builder.add(BeaconDelta.Type.UPDATED, beacons[1]);
+        builder.add(BeaconDelta.Type.EXITED, beacons[2]);
+        assertEquals(3, builder.size());
+
+        BeaconList list = new BeaconList().snapshot();
+        BeaconDelta delta = builder.build(list);
+        assertSame(list, delta.getList());
+        assertFalse(delta.isEmpty());
+        assertEquals(1, delta.getEntered().size());
+        assertSame(beacons[0], delta.getEntered().get(0));
+        assertSame(beacons[1], delta.getUpdated().get(0));
+        assertSame(beacons[2], delta.getExited().get(0));
+
+        // building clears the builder
+        assertTrue(builder.isEmpty());
+        assertTrue(builder.build(list).isEmpty());
+    }
+
+    public void testCombine() {
+        Beacon[] first  = BeaconListTest.createBeacons(5);
+        Beacon[] second = BeaconListTest.createBeacons(5);
+        BeaconDelta.Builder builder = new BeaconDelta.Builder();
+
+        // came and went
+        builder.add(BeaconDelta.Type.ENTERED, first[0]);
+        builder.add(BeaconDelta.Type.EXITED, second[0]);
+        // came and moved
+        builder.add(BeaconDelta.Type.ENTERED, first[1]);
+        builder.add(BeaconDelta.Type.UPDATED, second[1]);
+        // moved and went
+        builder.add(BeaconDelta.Type.UPDATED, first[2]);
+        builder.add(BeaconDelta.Type.EXITED, second[2]);
+        // went and came back
+        builder.add(BeaconDelta.Type.EXITED, first[3]);
+        builder.add(BeaconDelta.Type.ENTERED, second[3]);
+        // moved twice
+        builder.add(BeaconDelta.Type.UPDATED, first[4]);
+        builder.add(BeaconDelta.Type.UPDATED, second[4]);
+
+        BeaconDelta delta = builder.build(null);
+        assertEquals(1, delta.getEntered().size());
+        assertSame(second[1], delta.getEntered().get(0));
+        assertEquals(2, delta.getUpdated().size());
+        assertSame(second[3], delta.getUpdated().get(0));
+        assertSame(second[4], delta.getUpdated().get(1));
+        assertEquals(1, delta.getExited().size());
+        assertSame(second[2], delta.getExited().get(0));
+    }
+
+    public void testAddAll() {
+        Beacon[] beacons = BeaconListTest.createBeacons(2);
+        BeaconDelta.Builder cycle   = new BeaconDelta.Builder();
+        BeaconDelta.Builder pending = new BeaconDelta.Builder();
+
+        cycle.add(BeaconDelta.Type.ENTERED, beacons[0]);
+        cycle.add(BeaconDelta.Type.ENTERED, beacons[1]);
+        pending.addAll(cycle);
+        cycle.clear();
+        cycle.add(BeaconDelta.Type.EXITED, beacons[0]);
+        pending.addAll(cycle);
+
+        BeaconDelta delta = pending.build(null);
+        assertEquals(1, delta.getEntered().size());
+        assertSame(beacons[1], delta.getEntered().get(0));
+        assertTrue(delta.getExited().isEmpty());
+    }
+}
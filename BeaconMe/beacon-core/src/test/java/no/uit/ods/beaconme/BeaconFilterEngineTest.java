@@ -0,0 +1,103 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests matching registered beacons with nearby ones in the
+ * BeaconFilterEngine, and times a refresh with 10 000 registered and
+ * 300 nearby beacons against the nested loops BeaconFilter used before.
+ */
+public class BeaconFilterEngineTest extends TestCase {
+    private static final int    REGISTERED  = 10000;
+    private static final int    NEARBY      = 300;
+    private static final int    CATEGORIES  = 20;
+    private static final int    ROUNDS      = 20;
+
+    public void testMatch() {
+        BeaconFilterEngine<String> engine = new BeaconFilterEngine<>(Arrays.asList(1, 2));
+        assertTrue(engine.add(1, "C0:FF:EE:00:00:01", "a"));
+        assertTrue(engine.add(2, "c0:ff:ee:00:00:02", "b"));
+        assertTrue(engine.add(2, "C0:FF:EE:00:00:01", "c"));
+        assertFalse(engine.add(3, "C0:FF:EE:00:00:03", "d"));
+        assertFalse(engine.add(1, null, "e"));
+        assertFalse(engine.add(1, "not a mac", "f"));
+        assertEquals(3, engine.size());
+
+        BeaconList nearby = new BeaconList();
+        for (Beacon b : BeaconListTest.createBeacons(5))
+            nearby.addDevice(b);
+
+        final ArrayList<String> matched = new ArrayList<>();
+        int count = engine.match(nearby, new BeaconFilterEngine.Match<String>() {
+            @Override
+            public void onMatch(String item, Beacon beacon) {
+                matched.add(item + "@" + beacon.getAddress());
+            }
+        });
+
+        assertEquals(3, count);
+        assertEquals(3, matched.size());
+        assertTrue(matched.contains("a@C0:FF:EE:00:00:01"));
+        assertTrue(matched.contains("c@C0:FF:EE:00:00:01"));
+        assertTrue(matched.contains("b@C0:FF:EE:00:00:02"));
+    }
+
+    public void testRefreshTime() {
+        // half of the categories are checked
+        ArrayList<Integer> checked = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES; c += 2)
+            checked.add(c);
+
+        BeaconFilterEngine<String[]> engine = new BeaconFilterEngine<>(checked);
+        ArrayList<String[]> resultList = new ArrayList<>();
+        for (int i = 0; i < REGISTERED; i++) {
+            String mac = String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+            String[] beacon = {mac, "beacon" + i};
+            if (engine.add(i % CATEGORIES, mac, beacon))
+                resultList.add(beacon);
+        }
+
+        // every other nearby beacon is in a checked category
+        BeaconList nearby = new BeaconList();
+        for (Beacon b : BeaconListTest.createBeacons(NEARBY))
+            nearby.addDevice(b);
+        nearby = nearby.snapshot();
+
+        final ArrayList<String[]> finalResultList = new ArrayList<>();
+        BeaconFilterEngine.Match<String[]> inRange = new BeaconFilterEngine.Match<String[]>() {
+            @Override
+            public void onMatch(String[] item, Beacon beacon) {
+                finalResultList.add(item);
+            }
+        };
+
+        long indexed = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            finalResultList.clear();
+            engine.match(nearby, inRange);
+            indexed = Math.min(indexed, System.nanoTime() - start);
+        }
+        int matches = finalResultList.size();
+
+        long nested = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS / 4; r++) {
+            long start = System.nanoTime();
+            finalResultList.clear();
+            for (String[] t : resultList) {
+                for (int i = 0; i < nearby.getCount(); i++) {
+                    if (t[0].equals(nearby.getItem(i).getAddress()) && !finalResultList.contains(t))
+                        finalResultList.add(t);
+                }
+            }
+            nested = Math.min(nested, System.nanoTime() - start);
+        }
+
+        assertEquals(matches, finalResultList.size());
+        assertEquals(NEARBY / 2, matches);
+        assertTrue("indexed " + indexed + " ns, nested loops " + nested + " ns per refresh", indexed * 10 < nested);
+    }
+}
@@ -0,0 +1,268 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Decodes golden advertisement packets of each format BeaconParser knows,
+ * and the packets of phones and other devices it should find nothing in.
+ */
+public class BeaconFormatTest extends TestCase {
+    private static final int PACKETS = 1000000;
+
+    // iBeacon, uuid E2C56DB5-DFFB-48D2-B060-D0F5A71096E0, major 1, minor 2, tx -59
+    private static final byte[] IBEACON = hex("020106 1aff4c000215 e2c56db5dffb48d2b060d0f5a71096e0 0001 0002 c5");
+    // AltBeacon of company 0x0118, id 2F234454-CF6D-4A0F-ADF2-F4911BA9FFA6 0003 0004, tx -59
+    private static final byte[] ALTBEACON =
+            hex("020106 1bff1801beac 2f234454cf6d4a0fadf2f4911ba9ffa6 0003 0004 c5 00");
+    // Eddystone-UID, namespace 00010203040506070809, instance 0a0b0c0d0e0f, -25 dBm at 0 m
+    private static final byte[] EDDYSTONE_UID =
+            hex("020106 0303aafe 1716aafe00e7 00010203040506070809 0a0b0c0d0e0f 0000");
+    // Eddystone-URL, http://www.example.com, -21 dBm at 0 m
+    private static final byte[] EDDYSTONE_URL = hex("020106 0303aafe 0e16aafe10eb00 6578616d706c65 07");
+    // Eddystone-TLM, 3000 mV, 24.5 degrees, 100 advertisements, 6 minutes up
+    private static final byte[] EDDYSTONE_TLM = hex("020106 0303aafe 1116aafe2000 0bb8 1880 00000064 00000e10");
+
+    private final BeaconParser parser = new BeaconParser();
+
+    public void testIBeacon() {
+        parser.parse(IBEACON);
+        assertEquals(BeaconParser.FORMAT_IBEACON, parser.getFormat());
+        assertEquals("E2C56DB5-DFFB-48D2-B060-D0F5A71096E0", uuid(parser));
+        assertEquals(1, parser.getMajor());
+        assertEquals(2, parser.getMinor());
+        assertEquals(0xff - 0xc5, parser.getSignalLevel());
+        assertNull(parser.getUrl());
+
+        // a local name before the manufacturer data moves the iBeacon
+        byte[] named = concat(hex("020106 05094265616d"), Arrays.copyOfRange(IBEACON, 3, IBEACON.length));
+        parser.parse(named);
+        assertEquals(BeaconParser.FORMAT_IBEACON, parser.getFormat());
+        assertEquals("E2C56DB5-DFFB-48D2-B060-D0F5A71096E0", uuid(parser));
+        assertEquals(2, parser.getMinor());
+    }
+
+    public void testAltBeacon() {
+        parser.parse(ALTBEACON);
+        assertEquals(BeaconParser.FORMAT_ALTBEACON, parser.getFormat());
+        assertEquals("2F234454-CF6D-4A0F-ADF2-F4911BA9FFA6", uuid(parser));
+        assertEquals(3, parser.getMajor());
+        assertEquals(4, parser.getMinor());
+        assertEquals(0xff - 0xc5, parser.getSignalLevel());
+    }
+
+    public void testEddystoneUid() {
+        parser.parse(EDDYSTONE_UID);
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_UID, parser.getFormat());
+        assertEquals("00010203-0405-0607-0809-0A0B0C0D0E0F", uuid(parser));
+        assertEquals(0, parser.getMajor());
+        assertEquals(0, parser.getMinor());
+        // -25 dBm at 0 m is -66 dBm at 1 m, stored like the iBeacon txPower
+        assertEquals(0xff - (-66 & 0xff), parser.getSignalLevel());
+
+        // the reserved bytes are optional
+        byte[] shortFrame = Arrays.copyOf(EDDYSTONE_UID, EDDYSTONE_UID.length - 2);
+        shortFrame[7] = 0x15;
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_UID, parser.parse(shortFrame).getFormat());
+        assertEquals("00010203-0405-0607-0809-0A0B0C0D0E0F", uuid(parser));
+    }
+
+    public void testEddystoneUrl() {
+        parser.parse(EDDYSTONE_URL);
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_URL, parser.getFormat());
+        assertEquals("http://www.example.com", parser.getUrl());
+        assertEquals(0, parser.getUuidMostSigBits());
+        assertEquals(0xff - (-62 & 0xff), parser.getSignalLevel());
+
+        // https:// with an expansion in the middle
+        parser.parse(hex("020106 0303aafe 1016aafe10eb03 676f6f 2e676c 00 616263"));
+        assertEquals("https://goo.gl.com/abc", parser.getUrl());
+
+        // scheme 4 is not defined
+        assertEquals(BeaconParser.FORMAT_NONE, parser.parse(hex("020106 0716aafe10eb04 61")).getFormat());
+        assertNull(parser.getUrl());
+    }
+
+    public void testEddystoneTlm() {
+        parser.parse(EDDYSTONE_TLM);
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_TLM, parser.getFormat());
+        assertEquals(3000, parser.getBatteryVoltage());
+        assertEquals(0x1880, parser.getTemperature());
+        assertEquals(100, parser.getAdvertisements());
+        assertEquals(3600, parser.getUptime());
+        assertEquals(0, parser.getUuidMostSigBits());
+        assertEquals(0xff, parser.getSignalLevel());
+
+        // -1.5 degrees, and the largest counters
+        parser.parse(hex("1116aafe2000 0bb8 fe80 ffffffff ffffffff"));
+        assertEquals(-384, parser.getTemperature());
+        assertEquals(0xffffffffL, parser.getAdvertisements());
+        assertEquals(0xffffffffL, parser.getUptime());
+
+        // temperature not supported, and an encrypted frame of version 1
+        assertEquals(-0x8000, parser.parse(hex("1116aafe2000 0000 8000 00000000 00000000")).getTemperature());
+        assertEquals(BeaconParser.FORMAT_NONE,
+                parser.parse(hex("1116aafe2001 0000 8000 00000000 00000000")).getFormat());
+
+        // fields are reset by the next packet
+        parser.parse(IBEACON);
+        assertEquals(0, parser.getBatteryVoltage());
+        assertEquals(-0x8000, parser.getTemperature());
+        assertEquals(0, parser.getUptime());
+    }
+
+    public void testOtherPackets() {
+        // Apple nearby info of a phone, and Microsoft swift pair
+        assertNone(hex("02011a 0aff4c0010050b1c8b2f5a 020a0c"));
+        assertNone(hex("1eff0600030080 4d7920486561647068 6f6e6573200000000000000000000000"));
+        // flags and a name only, empty and all zero
+        assertNone(hex("020106 05094265616d"));
+        assertNone(new byte[0]);
+        assertNone(new byte[62]);
+        // AltBeacon code under a service data structure
+        assertNone(hex("1a16aafebeac 2f234454cf6d4a0fadf2f4911ba9ffa6 0003 0004 c5"));
+        // Eddystone UID under another service UUID
+        assertNone(hex("1716aafd00e7 00010203040506070809 0a0b0c0d0e0f 0000"));
+    }
+
+    public void testTruncated() {
+        // every cut of the golden packets is not a beacon, or still the full structure
+        byte[][] packets = {IBEACON, ALTBEACON, EDDYSTONE_UID, EDDYSTONE_URL, EDDYSTONE_TLM};
+        for (byte[] packet : packets) {
+            int format = parser.parse(packet).getFormat();
+            for (int n = 0; n < packet.length; n++) {
+                int cut = parser.parse(Arrays.copyOf(packet, n)).getFormat();
+                assertEquals(BeaconParser.FORMAT_NONE, cut);
+            }
+            // the zeros after the packet end the walk
+            assertEquals(format, parser.parse(Arrays.copyOf(packet, 62)).getFormat());
+        }
+
+        // a structure claiming to be shorter than its format
+        byte[] iBeacon = IBEACON.clone();
+        iBeacon[3] = 0x15;
+        assertNone(iBeacon);
+
+        // nothing is read after a zero length structure
+        assertNone(concat(hex("020106 00"), Arrays.copyOfRange(IBEACON, 3, IBEACON.length)));
+    }
+
+    public void testScanRecord() {
+        byte[] slab = new byte[3 * SightingBuffer.SLOT_SIZE];
+        System.arraycopy(IBEACON, 0, slab, 0, IBEACON.length);
+        System.arraycopy(EDDYSTONE_UID, 0, slab, SightingBuffer.SLOT_SIZE, EDDYSTONE_UID.length);
+        System.arraycopy(EDDYSTONE_URL, 0, slab, 2 * SightingBuffer.SLOT_SIZE, EDDYSTONE_URL.length);
+        ScanRecord view = new ScanRecord();
+
+        parser.parse(view.wrap(slab, SightingBuffer.SLOT_SIZE, EDDYSTONE_UID.length));
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_UID, parser.getFormat());
+        assertEquals("00010203-0405-0607-0809-0A0B0C0D0E0F", uuid(parser));
+
+        parser.parse(view.wrap(slab, 2 * SightingBuffer.SLOT_SIZE, EDDYSTONE_URL.length));
+        assertEquals("http://www.example.com", parser.getUrl());
+
+        // a view ending inside the structure doesn't read the bytes after it
+        parser.parse(view.wrap(slab, 0, IBEACON.length - 1));
+        assertEquals(BeaconParser.FORMAT_NONE, parser.getFormat());
+    }
+
+    public void testEddystoneFrames() {
+        BeaconIngest ingest = new BeaconIngest(new BeaconList(), 16);
+
+        // a beacon first seen by its URL frame gets its UID, and the other way round
+        ingest.offer("C0:FF:EE:00:00:01", -60, EDDYSTONE_URL);
+        ingest.offer("C0:FF:EE:00:00:02", -60, EDDYSTONE_UID);
+        ingest.drain();
+        Beacon first = ingest.getSnapshot().get(0xc0ffee000001L, "C0:FF:EE:00:00:01");
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_URL, first.getFormat());
+        assertEquals(0, first.getUuidMostSigBits());
+
+        ingest.offer("C0:FF:EE:00:00:01", -61, EDDYSTONE_TLM);
+        ingest.offer("C0:FF:EE:00:00:01", -62, EDDYSTONE_UID);
+        ingest.offer("C0:FF:EE:00:00:02", -61, EDDYSTONE_URL);
+        ingest.drain();
+        for (int i = 0; i < 2; i++) {
+            Beacon beacon = ingest.getSnapshot().getItem(i);
+            assertEquals(BeaconParser.FORMAT_EDDYSTONE_UID, beacon.getFormat());
+            assertEquals("00010203-0405-0607-0809-0A0B0C0D0E0F", beacon.getUuid());
+            assertEquals("http://www.example.com", beacon.getUrl());
+        }
+        // the first copy is left as it was
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_URL, first.getFormat());
+
+        ingest.startScan();
+        ingest.endScan();
+        assertEquals(2, ingest.getNewBeacons());
+
+        // the frame type is read without parsing, to skip the frames a beacon has
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_UID, BeaconParser.eddystoneFrame(new ScanRecord(EDDYSTONE_UID)));
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_URL, BeaconParser.eddystoneFrame(new ScanRecord(EDDYSTONE_URL)));
+        assertEquals(BeaconParser.FORMAT_EDDYSTONE_TLM, BeaconParser.eddystoneFrame(new ScanRecord(EDDYSTONE_TLM)));
+        assertEquals(BeaconParser.FORMAT_NONE, BeaconParser.eddystoneFrame(new ScanRecord(IBEACON)));
+        assertEquals(BeaconParser.FORMAT_NONE, BeaconParser.eddystoneFrame(new ScanRecord(new byte[62])));
+        Beacon uidOnly = new Beacon("C0:FF:EE:00:00:03", null, -60, parser.parse(EDDYSTONE_UID));
+        assertTrue(uidOnly.missingFrames());
+        assertFalse(uidOnly.needsFrame(BeaconParser.FORMAT_EDDYSTONE_UID));
+        assertFalse(uidOnly.needsFrame(BeaconParser.FORMAT_EDDYSTONE_TLM));
+        assertTrue(uidOnly.needsFrame(BeaconParser.FORMAT_EDDYSTONE_URL));
+    }
+
+    public void testNoAllocation() {
+        byte[][] packets = {IBEACON, ALTBEACON, EDDYSTONE_UID, EDDYSTONE_URL, EDDYSTONE_TLM, new byte[62]};
+
+        // warm up, so the allocations of the class loading and compiler are done
+        run(packets);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            // allocation is not measured on this VM
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id     = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        long sum    = run(packets);
+        long bytes  = threads.getThreadAllocatedBytes(id) - before;
+
+        assertTrue(bytes + " bytes allocated", bytes < 1024);
+        assertTrue(sum > 0);
+    }
+
+    private long run(byte[][] packets) {
+        long sum = 0;
+        for (int i = 0; i < PACKETS; i++)
+            sum += parser.parse(packets[i % packets.length]).getFormat();
+        return sum;
+    }
+
+    private void assertNone(byte[] packet) {
+        parser.parse(packet);
+        assertEquals(BeaconParser.FORMAT_NONE, parser.getFormat());
+        assertEquals(0, parser.getUuidMostSigBits());
+        assertEquals(0, parser.getUuidLeastSigBits());
+        assertEquals(0, parser.getMajor());
+        assertEquals(0, parser.getMinor());
+        assertEquals(0xff, parser.getSignalLevel());
+    }
+
+    private static String uuid(BeaconParser parser) {
+        return BeaconParser.formatUuid(parser.getUuidMostSigBits(), parser.getUuidLeastSigBits());
+    }
+
+    // hex digits to bytes, spaces are skipped
+    private static byte[] hex(String text) {
+        String digits = text.replace(" ", "");
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+}
@@ -0,0 +1,261 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the MAC indexed BeaconList, and times the lookup pattern used
+ * by the scan list views (contains + addDevice for every beacon in the
+ * service list), the distance sort and the removal of beacons out of
+ * range at 50, 500 and 5000 beacons.
+ */
+public class BeaconListTest extends TestCase {
+    private static final int[] SIZES  = {50, 500, 5000};
+    private static final int   ROUNDS = 20;
+
+    private long now;
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+    };
+
+    public void testAddAndLookup() {
+        BeaconList list = new BeaconList();
+        Beacon[] beacons = createBeacons(100);
+        for (Beacon b : beacons)
+            list.addDevice(b);
+        list.addDevice(beacons[10]);
+
+        assertEquals(100, list.getCount());
+        for (int i = 0; i < beacons.length; i++) {
+            assertSame(beacons[i], list.getItem(i));
+            assertTrue(list.contains(beacons[i].getAddress()));
+            assertSame(beacons[i], list.get(beacons[i]));
+        }
+        assertFalse(list.contains("00:00:00:00:00:00"));
+    }
+
+    public void testClearKeepsIndex() {
+        BeaconList list = new BeaconList();
+        Beacon[] beacons = createBeacons(10);
+        for (Beacon b : beacons)
+            list.addDevice(b);
+
+        // let every other beacon time out
+        for (int i = 0; i < 4; i++) {
+            list.clear();
+            for (int j = 0; j < beacons.length; j += 2)
+                list.addDevice(beacons[j]);
+        }
+        list.clear();
+
+        assertEquals(5, list.getCount());
+        for (int j = 0; j < beacons.length; j++)
+            assertEquals(j % 2 == 0, list.contains(beacons[j]));
+        for (int i = 0; i < list.getCount(); i++)
+            assertSame(list.getItem(i), list.get(list.getItem(i)));
+    }
+
+    public void testExpiry() {
+        BeaconList list = new BeaconList(null, 10000, clock);
+        Beacon[] beacons = createBeacons(10);
+        for (Beacon b : beacons)
+            list.addDevice(b);
+        list.sort();
+
+        // every other beacon is seen each second, the rest go quiet
+        for (int s = 1; s <= 9; s++) {
+            now = s * 1000;
+            list.startScan();
+            for (int j = 0; j < beacons.length; j += 2)
+                list.addDevice(beacons[j]);
+            assertEquals(0, list.expire());
+        }
+        now = 10000;
+        assertEquals(5, list.expire());
+
+        assertEquals(5, list.getCount());
+        assertSorted(list);
+        for (int j = 0; j < beacons.length; j++)
+            assertEquals(j % 2 == 0, list.contains(beacons[j]));
+        for (int i = 0; i < list.getCount(); i++)
+            assertSame(list.getItem(i), list.get(list.getItem(i)));
+
+        // a beacon coming back is added again, with a new deadline
+        list.addDevice(beacons[1]);
+        now = 18999;
+        assertEquals(0, list.expire());
+        now = 19000;
+        assertEquals(5, list.expire());
+        assertEquals(1, list.getCount());
+        now = 20000;
+        assertEquals(1, list.expire());
+        assertEquals(0, list.getCount());
+    }
+
+    public void testSortedView() {
+        BeaconList list = new BeaconList();
+        Beacon[] beacons = createBeacons(200);
+        for (Beacon b : beacons)
+            list.addDevice(b);
+        list.sort();
+        assertSorted(list);
+
+        // change the RSSI through the list, and directly as a shared instance
+        list.clear();
+        for (int i = 0; i < beacons.length; i += 3)
+            list.addDevice(new Beacon(beacons[i].getAddress(), null, -30 - (i * 7) % 70, parser()));
+        for (int i = 1; i < beacons.length; i += 3)
+            beacons[i].putRssi(-35 - (i * 11) % 60);
+        list.sort();
+
+        assertEquals(200, list.getCount());
+        assertSorted(list);
+    }
+
+    public void testSnapshot() {
+        BeaconList list = new BeaconList();
+        Beacon[] beacons = createBeacons(100);
+        for (Beacon b : beacons)
+            list.addDevice(b);
+        list.sort();
+
+        BeaconList first = list.snapshot();
+        assertEquals(100, first.getCount());
+        assertSorted(first);
+        for (int i = 0; i < beacons.length; i++) {
+            assertTrue(beacons[i] != first.get(beacons[i]));
+            assertEquals(beacons[i].getDistance(), first.get(beacons[i]).getDistance());
+        }
+        // nothing changed
+        assertSame(first, list.snapshot());
+
+        // only the beacon whose RSSI changed is copied again
+        double before = beacons[5].getDistance();
+        list.clear();
+        list.addDevice(new Beacon(beacons[5].getAddress(), null, -90, parser()));
+        BeaconList second = list.snapshot();
+        assertTrue(first != second);
+        assertEquals(before, first.get(beacons[5]).getDistance());
+        assertEquals(beacons[5].getDistance(), second.get(beacons[5]).getDistance());
+        assertTrue(first.get(beacons[5]) != second.get(beacons[5]));
+        assertSame(first.get(beacons[6]), second.get(beacons[6]));
+        second.sort();
+        assertSorted(second);
+
+        // removed beacons are gone from the next snapshot only
+        for (int i = 0; i < 3; i++)
+            list.clear();
+        BeaconList third = list.snapshot();
+        assertEquals(1, third.getCount());
+        assertEquals(100, second.getCount());
+        assertSame(second.get(beacons[5]), third.get(beacons[5]));
+
+        try {
+            third.addDevice(beacons[0]);
+            fail("snapshot was modified");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public void testLookupTime() {
+        for (int size : SIZES) {
+            Beacon[] beacons = createBeacons(size);
+            BeaconList service = new BeaconList();
+            for (Beacon b : beacons)
+                service.addDevice(b);
+
+            BeaconList view = null;
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                view = new BeaconList();
+                for (int i = 0; i < service.getCount(); i++) {
+                    Beacon beacon = service.getItem(i);
+                    if (!view.contains(beacon))
+                        view.addDevice(beacon);
+                    assertTrue(service.contains(beacon.getAddress()));
+                }
+            }
+            long perRound = (System.nanoTime() - start) / ROUNDS;
+
+            assertEquals(size + " beacons: " + (perRound / 1000) + " us per refresh", size, view.getCount());
+        }
+    }
+
+    public void testSortTime() {
+        for (int size : SIZES) {
+            Beacon[] beacons = createBeacons(size);
+            BeaconList list = new BeaconList();
+            for (Beacon b : beacons)
+                list.addDevice(b);
+            list.sort();
+
+            // every refresh tick a tenth of the beacons change RSSI
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = round % 10; i < size; i += 10)
+                    beacons[i].putRssi(-40 - ((i + round) % 60));
+                list.sort();
+            }
+            long perRound = (System.nanoTime() - start) / ROUNDS;
+
+            assertEquals(size + " beacons: " + (perRound / 1000) + " us per sort", size, list.getCount());
+            assertSorted(list);
+        }
+    }
+
+    public void testExpiryTime() {
+        for (int size : SIZES) {
+            Beacon[] beacons = createBeacons(size);
+            BeaconList swept = new BeaconList();
+            BeaconList timed = new BeaconList(null, 10000, clock);
+            for (Beacon b : beacons) {
+                swept.addDevice(new Beacon(b));
+                timed.addDevice(new Beacon(b));
+            }
+
+            // the time spent removing beacons after each scan, when all are still in range
+            long sweep = 0, wheel = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                now += 2500;
+                timed.startScan();
+                for (Beacon b : beacons) {
+                    swept.update(b.getAddressBits(), b.getAddress(), b.getRssi());
+                    timed.update(b.getAddressBits(), b.getAddress(), b.getRssi());
+                }
+                long start = System.nanoTime();
+                swept.clear();
+                sweep += System.nanoTime() - start;
+                start = System.nanoTime();
+                timed.expire();
+                wheel += System.nanoTime() - start;
+            }
+            String times = size + " beacons: " + (sweep / ROUNDS / 1000) + " us per sweep, "
+                    + (wheel / ROUNDS / 1000) + " us per expire";
+            assertEquals(times, size, swept.getCount());
+            assertEquals(times, size, timed.getCount());
+        }
+    }
+
+    private static void assertSorted(BeaconList list) {
+        for (int i = 1; i < list.getCount(); i++)
+            assertTrue(list.getItem(i - 1).getDistance() <= list.getItem(i).getDistance());
+    }
+
+    // parser holding an empty iBeacon packet advertising -59 dBm
+    static BeaconParser parser() {
+        return new BeaconParser().parse(TrafficGenerator.packet(0, 0, 0, 0, -59));
+    }
+
+    static Beacon[] createBeacons(int n) {
+        BeaconParser parser = parser();
+        Beacon[] beacons = new Beacon[n];
+        for (int i = 0; i < n; i++) {
+            String mac = String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+            beacons[i] = new Beacon(mac, "beacon" + i, -40 - (i % 60), parser);
+        }
+        return beacons;
+    }
+}
@@ -0,0 +1,157 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Tests that the BeaconPrefilter tells beacons from the other packets
+ * nearby, the UUID allow-list, and that the BeaconIngest drops and counts
+ * the rejected packets.
+ */
+public class BeaconPrefilterTest extends TestCase {
+    private static final int PACKETS = 1000000;
+
+    private static final UUID ESTIMOTE = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+    private static final UUID LOW      = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID HIGH     = UUID.fromString("F7826DA6-4FA2-4E98-8024-BC5B71E0893E");
+
+    private final BeaconPrefilter prefilter = new BeaconPrefilter();
+
+    public void testPackets() {
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(ESTIMOTE)));
+
+        // an Eddystone UID frame: flags, service UUID 0xfeaa, service data
+        byte[] eddystone = new byte[62];
+        byte[] frame = {0x02, 0x01, 0x06, 0x03, 0x03, (byte) 0xaa, (byte) 0xfe, 0x17, 0x16, (byte) 0xaa,
+                (byte) 0xfe, 0x00, (byte) 0xee};
+        System.arraycopy(frame, 0, eddystone, 0, frame.length);
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(eddystone));
+
+        // the same frame cut short
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(Arrays.copyOf(eddystone, 20)));
+
+        // Apple manufacturer data that's not an iBeacon, as sent by phones and headphones
+        byte[] apple = ibeacon(ESTIMOTE);
+        apple[7] = 0x10;
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(apple));
+
+        // another company's manufacturer data in the same place
+        byte[] other = ibeacon(ESTIMOTE);
+        other[5] = 0x06;
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(other));
+
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(new byte[29]));
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(new byte[62]));
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(null));
+    }
+
+    public void testAllowList() {
+        prefilter.setAllowList(HIGH, LOW);
+        assertEquals(2, prefilter.getAllowListSize());
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(LOW)));
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(HIGH)));
+        assertEquals(BeaconPrefilter.NOT_ALLOWED, prefilter.check(ibeacon(ESTIMOTE)));
+        assertEquals(BeaconPrefilter.NOT_BEACON, prefilter.check(new byte[62]));
+
+        // the order doesn't matter, the UUIDs are sorted as unsigned
+        UUID[] uuids = new UUID[100];
+        for (int i = 0; i < uuids.length; i++)
+            uuids[i] = new UUID(i * 0x0badcafe0badcafeL, -i);
+        prefilter.setAllowList(uuids);
+        for (UUID uuid : uuids)
+            assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(uuid)));
+        assertEquals(BeaconPrefilter.NOT_ALLOWED, prefilter.check(ibeacon(new UUID(3, 3))));
+
+        prefilter.setAllowList();
+        assertEquals(0, prefilter.getAllowListSize());
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(ESTIMOTE)));
+    }
+
+    public void testSetting() {
+        final StringBuilder logged = new StringBuilder();
+        BeaconLog.Sink sink = BeaconLog.getSink();
+        BeaconLog.setSink(new BeaconLog.Sink() {
+            @Override
+            public void e(String tag, String message) {
+                logged.append(tag).append(": ").append(message).append('\n');
+            }
+        });
+        try {
+            assertEquals(2, prefilter.setAllowList(" b9407f30-f5f8-466e-aff9-25556b57fe6d,\n"
+                    + "not-a-uuid; F7826DA6-4FA2-4E98-8024-BC5B71E0893E "));
+        } finally {
+            BeaconLog.setSink(sink);
+        }
+        // the bad entry is reported and skipped
+        assertEquals("BeaconPrefilter: Not a UUID in the allow-list: not-a-uuid\n", logged.toString());
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(ESTIMOTE)));
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(HIGH)));
+        assertEquals(BeaconPrefilter.NOT_ALLOWED, prefilter.check(ibeacon(LOW)));
+
+        assertEquals(0, prefilter.setAllowList(""));
+        assertEquals(0, prefilter.setAllowList((String) null));
+        assertEquals(BeaconPrefilter.ACCEPTED, prefilter.check(ibeacon(LOW)));
+    }
+
+    public void testIngest() {
+        BeaconIngest ingest = new BeaconIngest(new BeaconList(), 16);
+        ingest.getPrefilter().setAllowList(ESTIMOTE);
+
+        assertTrue(ingest.offer("00:00:00:00:00:01", -60, ibeacon(ESTIMOTE)));
+        assertFalse(ingest.offer("00:00:00:00:00:02", -60, ibeacon(HIGH)));
+        assertFalse(ingest.offer("00:00:00:00:00:03", -60, new byte[62]));
+        assertFalse(ingest.offer("00:00:00:00:00:04", -60, new byte[3]));
+        assertEquals(1, ingest.getPending());
+        assertEquals(1, ingest.drain());
+        assertEquals(1, ingest.getSnapshot().getCount());
+
+        ScannerMetrics.Snapshot metrics = ingest.getMetricsSnapshot();
+        assertEquals(1, metrics.getAccepted());
+        assertEquals(3, metrics.getRejected());
+        assertEquals(1, metrics.getNotAllowed());
+        assertEquals(0, metrics.getDropped());
+    }
+
+    public void testNoAllocation() {
+        prefilter.setAllowList(HIGH, ESTIMOTE);
+        byte[][] packets = {ibeacon(ESTIMOTE), ibeacon(LOW), new byte[62], ibeacon(HIGH)};
+        ScannerMetrics metrics = new ScannerMetrics();
+
+        // warm up, so the allocations of the class loading and compiler are done
+        run(metrics, packets);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            // allocation is not measured on this VM
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id     = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        int  n      = run(metrics, packets);
+        long bytes  = threads.getThreadAllocatedBytes(id) - before;
+
+        assertTrue(bytes + " bytes allocated", bytes < 1024);
+        assertEquals(PACKETS / 2, n);
+        assertEquals(PACKETS, metrics.snapshot(0).getAccepted());
+        assertEquals(PACKETS, metrics.snapshot(0).getRejected());
+    }
+
+    private int run(ScannerMetrics metrics, byte[][] packets) {
+        int accepted = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            int result = prefilter.check(packets[i % packets.length]);
+            metrics.countPrefilter(result);
+            if (result == BeaconPrefilter.ACCEPTED)
+                accepted++;
+        }
+        return accepted;
+    }
+
+    private static byte[] ibeacon(UUID uuid) {
+        return TrafficGenerator.packet(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), 1, 2, -59);
+    }
+}
@@ -0,0 +1,42 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the table lookup of each DistanceModel with computing the
+ * distance directly. The time per estimate is measured by
+ * DistanceModelBenchmark.
+ */
+public class DistanceModelTest extends TestCase {
+    private static final String[]   MODELS  = {"curvefit", "pathloss_open", "pathloss_indoor"};
+
+    public void testTableMatchesCompute() {
+        for (String name : MODELS) {
+            DistanceModel model = DistanceModel.create(name);
+            double worst = 0;
+            for (int level = 40; level <= 100; level++) {
+                // quarter dBm steps, as left by the RSSI filter
+                for (double rssi = -105; rssi <= -30; rssi += 0.25) {
+                    double exact = model.compute(rssi, level);
+                    double error = Math.abs(model.distance(rssi, level) - exact) / exact;
+                    worst = Math.max(worst, error);
+                }
+            }
+            assertTrue(name + ": worst relative error " + worst, worst < 0.05);
+        }
+    }
+
+    public void testOutsideTable() {
+        DistanceModel model = DistanceModel.create("curvefit");
+        assertEquals(Double.POSITIVE_INFINITY, model.distance(-60, 0xff), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, model.distance(0, 58), 0.0);
+        assertEquals(model.compute(-120, 58), model.distance(-120, 58), 0.0);
+    }
+
+    public void testPathLoss() {
+        // a beacon advertising -59 dBm at 1m has signal level 58
+        DistanceModel model = DistanceModel.create("pathloss_open");
+        assertEquals(1.0, model.distance(-59, 58), 1e-6);
+        assertEquals(10.0, model.distance(-79, 58), 1e-3);
+    }
+}
@@ -0,0 +1,88 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+
+/**
+ * Tests the ExpiryWheel with deadlines pushed back, longer than a turn
+ * of the wheel, and calls to advance() far apart.
+ */
+public class ExpiryWheelTest extends TestCase {
+    private static final long TICK = 100;
+
+    private final ExpiryWheel.Deadline<long[]> deadline = new ExpiryWheel.Deadline<long[]>() {
+        @Override
+        public long deadline(long[] item) {
+            return item[0];
+        }
+    };
+    private final ArrayList<long[]> expired = new ArrayList<>();
+    private final ExpiryWheel.Expired<long[]> collect = new ExpiryWheel.Expired<long[]>() {
+        @Override
+        public void onExpired(long[] item) {
+            expired.add(item);
+        }
+    };
+
+    public void testExpiry() {
+        ExpiryWheel<long[]> wheel = new ExpiryWheel<>(8, TICK, deadline);
+        long[] a = {250};
+        long[] b = {450};
+        wheel.add(a, 0);
+        wheel.add(b, 0);
+        assertEquals(2, wheel.size());
+
+        assertEquals(0, wheel.advance(249, collect));
+        assertEquals(1, wheel.advance(250, collect));
+        assertSame(a, expired.get(0));
+        assertEquals(0, wheel.advance(449, collect));
+        assertEquals(1, wheel.advance(460, collect));
+        assertEquals(0, wheel.size());
+    }
+
+    public void testPushedBack() {
+        ExpiryWheel<long[]> wheel = new ExpiryWheel<>(8, TICK, deadline);
+        long[] item = {300};
+        wheel.add(item, 0);
+
+        // seen again before each deadline
+        for (long t = 200; t < 5000; t += 200) {
+            item[0] = t + 300;
+            assertEquals(0, wheel.advance(t, collect));
+        }
+        assertEquals(1, wheel.size());
+        assertEquals(1, wheel.advance(5100, collect));
+        assertSame(item, expired.get(0));
+    }
+
+    public void testLongDeadline() {
+        // deadlines several turns ahead wait in their slot
+        ExpiryWheel<long[]> wheel = new ExpiryWheel<>(4, TICK, deadline);
+        long[] item = {1050};
+        wheel.add(item, 0);
+        for (long t = 50; t < 1050; t += 50)
+            assertEquals(0, wheel.advance(t, collect));
+        assertEquals(1, wheel.advance(1050, collect));
+    }
+
+    public void testLongGap() {
+        ExpiryWheel<long[]> wheel = new ExpiryWheel<>(8, TICK, deadline);
+        for (int i = 0; i < 100; i++)
+            wheel.add(new long[] {i * 37}, 0);
+
+        // one call long after all the deadlines, and a clock going back
+        assertEquals(100, wheel.advance(100000, collect));
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.advance(50, collect));
+    }
+
+    public void testInvalid() {
+        try {
+            new ExpiryWheel<>(0, TICK, deadline);
+            fail("wheel without slots was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Tests the buckets and percentiles of LogHistogram, and that recording
+ * into it and the ScannerMetrics allocates nothing.
+ */
+public class LogHistogramTest extends TestCase {
+    private static final int VALUES = 1000000;
+
+    public void testBuckets() {
+        // every value falls in the bucket that ends at or above it
+        for (long v = 0; v < 1 << 20; v++) {
+            int bucket = LogHistogram.bucket(v);
+            assertTrue(LogHistogram.highestInBucket(bucket) >= v);
+            if (bucket > 0)
+                assertTrue(LogHistogram.highestInBucket(bucket - 1) < v);
+        }
+        assertEquals(Long.MAX_VALUE, LogHistogram.highestInBucket(LogHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    public void testPercentiles() {
+        LogHistogram histogram = new LogHistogram(1000000);
+        assertEquals(0, histogram.getPercentile(99));
+        for (int v = 1; v <= 1000; v++)
+            histogram.record(v);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1, histogram.getPercentile(0));
+        assertWithin(500, histogram.getPercentile(50));
+        assertWithin(950, histogram.getPercentile(95));
+        assertWithin(990, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    public void testHighest() {
+        LogHistogram histogram = new LogHistogram(100);
+        histogram.record(-5);
+        histogram.record(50);
+        histogram.record(1000000);
+
+        // larger values end up in the last bucket, the max is still exact
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(30));
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    public void testNoAllocation() {
+        ScannerMetrics metrics = new ScannerMetrics();
+        LogHistogram latency = metrics.getLatency();
+        Random random = new Random(42);
+        long[] values = new long[VALUES];
+        for (int i = 0; i < VALUES; i++)
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+
+        // warm up, so the allocations of the class loading and compiler are done
+        record(metrics, latency, values);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            // allocation is not measured on this VM
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id     = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        record(metrics, latency, values);
+        long bytes  = threads.getThreadAllocatedBytes(id) - before;
+
+        // a few bytes of the bean itself, nothing per value
+        assertTrue(bytes + " bytes allocated", bytes < 1024);
+
+        ScannerMetrics.Snapshot snapshot = metrics.snapshot(7);
+        assertEquals(2L * VALUES, snapshot.getLatency().getCount());
+        assertEquals(2L * VALUES, snapshot.getSightings());
+        assertEquals(7, snapshot.getDropped());
+        assertEquals(2L * VALUES / 1000, snapshot.getEvictions().getCount());
+    }
+
+    private static void record(ScannerMetrics metrics, LogHistogram latency, long[] values) {
+        for (int i = 0; i < values.length; i++) {
+            latency.record(values[i]);
+            metrics.addSightings(1);
+            if (i % 1000 == 0) {
+                metrics.recordScan(i % 7, values[i], i % 300);
+                metrics.recordOverrun(i % 50);
+            }
+        }
+    }
+
+    /**
+     * The percentile is rounded up to the end of its bucket, 1/16 of the
+     * value at most.
+     */
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " <= " + actual, actual >= expected);
+        assertTrue(actual + " <= " + expected + " + 1/16", actual <= expected + expected / 16);
+    }
+}
@@ -0,0 +1,103 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+/**
+ * Drives the ScanSchedulePolicy with a simulated clock, checking how
+ * the gap between scans follows the beacons and the subscribed clients,
+ * and the duty cycle reported.
+ */
+public class ScanSchedulePolicyTest extends TestCase {
+    private static final long WINDOW    = 2300;
+    private static final long MIN_GAP   = 200;
+    private static final long MAX_GAP   = 10000;
+
+    private long now;
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+    };
+
+    public void testBackOff() {
+        ScanSchedulePolicy policy = new ScanSchedulePolicy(WINDOW, MIN_GAP, MAX_GAP, clock);
+        assertEquals(MIN_GAP, policy.getGap());
+
+        long[] expected = {400, 800, 1600, 3200, 6400, MAX_GAP, MAX_GAP};
+        for (long gap : expected)
+            assertEquals(gap, scan(policy, 0, 1.0));
+
+        // a new beacon, or one moving, brings the gap back down
+        assertEquals(MIN_GAP, scan(policy, 1, 0));
+        assertEquals(400, scan(policy, 0, 0));
+        assertEquals(MIN_GAP, scan(policy, 0, 5.0));
+        policy.setRssiChange(6.0);
+        assertEquals(400, scan(policy, 0, 5.0));
+    }
+
+    public void testSubscribed() {
+        ScanSchedulePolicy policy = new ScanSchedulePolicy(WINDOW, MIN_GAP, MAX_GAP, clock);
+        for (int i = 0; i < 10; i++)
+            scan(policy, 0, 0);
+        assertEquals(MAX_GAP, policy.getGap());
+
+        // a client showing the list gets fresh scans
+        policy.subscribe();
+        policy.subscribe();
+        assertEquals(2, policy.getSubscribers());
+        assertEquals(MIN_GAP, policy.getGap());
+        for (int i = 0; i < 10; i++)
+            assertEquals(MIN_GAP, scan(policy, 0, 0));
+
+        policy.unsubscribe();
+        assertEquals(MIN_GAP, scan(policy, 0, 0));
+        policy.unsubscribe();
+        policy.unsubscribe();
+        assertEquals(0, policy.getSubscribers());
+        assertEquals(400, scan(policy, 0, 0));
+    }
+
+    public void testDutyCycle() {
+        ScanSchedulePolicy policy = new ScanSchedulePolicy(WINDOW, MIN_GAP, MAX_GAP, clock);
+        assertEquals(0.0, policy.getDutyCycle());
+
+        // a busy room keeps the scanner at the shortest gap
+        for (int i = 0; i < 50; i++)
+            scan(policy, 1, 0);
+        double busy = policy.getDutyCycle();
+        assertEquals((double) WINDOW / (WINDOW + MIN_GAP), busy, 1e-9);
+
+        // then an hour with the same beacons
+        long end = now + 60 * 60 * 1000;
+        int scans = 0;
+        while (now < end) {
+            scan(policy, 0, 0.5);
+            scans++;
+        }
+        double idle = policy.getDutyCycle();
+        assertEquals((double) WINDOW / (WINDOW + MAX_GAP), idle, 1e-3);
+        // a fifth of the scans at a fixed rate, or fewer
+        assertTrue(scans + " scans in an hour", scans * 4 < 60 * 60 * 1000 / (WINDOW + MIN_GAP));
+    }
+
+    public void testInvalidBounds() {
+        try {
+            new ScanSchedulePolicy(WINDOW, 1000, 500, clock);
+            fail("max gap below min gap was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Runs one scan on the simulated clock, including the gap after it.
+     */
+    private long scan(ScanSchedulePolicy policy, int newBeacons, double rssiChange) {
+        policy.onScanStarted();
+        now += policy.getWindow();
+        long gap = policy.onScanFinished(newBeacons, rssiChange);
+        now += gap;
+        return gap;
+    }
+}
@@ -0,0 +1,146 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests that the SightingBuffer copies the packets into its slots and
+ * hands them out in order, and that offering and draining sightings
+ * allocates nothing once running.
+ */
+public class SightingBufferTest extends TestCase {
+    private static final int SIGHTINGS = 1000000;
+
+    private final ArrayList<byte[]> received = new ArrayList<>();
+    private final ArrayList<Long>   times    = new ArrayList<>();
+    private final SightingBuffer.Reader collect = new SightingBuffer.Reader() {
+        @Override
+        public void onSighting(String mac, int rssi, ScanRecord record, long time) {
+            received.add(record.toByteArray());
+            times.add(time);
+        }
+    };
+
+    public void testCopied() {
+        SightingBuffer buffer = new SightingBuffer(4);
+        byte[] record = TrafficGenerator.packet(1, 2, 3, 4, -59);
+        byte[] expected = record.clone();
+        long before = System.nanoTime();
+        assertTrue(buffer.offer("00:00:00:00:00:01", -60, record));
+        long after = System.nanoTime();
+
+        // the callback's array can be reused once offered
+        Arrays.fill(record, (byte) 0);
+        assertEquals(1, buffer.drain(collect, 10));
+        assertTrue(Arrays.equals(expected, received.get(0)));
+        // the reader gets the time it was offered
+        assertTrue(times.get(0) >= before && times.get(0) <= after);
+    }
+
+    public void testLarge() {
+        SightingBuffer buffer = new SightingBuffer(4);
+        byte[] small = {1, 2, 3};
+        byte[] large = new byte[SightingBuffer.SLOT_SIZE + 10];
+        large[large.length - 1] = 42;
+        buffer.offer("00:00:00:00:00:01", -60, small);
+        buffer.offer("00:00:00:00:00:02", -60, large);
+        buffer.offer("00:00:00:00:00:03", -60, new byte[0]);
+
+        assertEquals(3, buffer.drain(collect, 10));
+        assertTrue(Arrays.equals(small, received.get(0)));
+        assertTrue(Arrays.equals(large, received.get(1)));
+        assertEquals(0, received.get(2).length);
+    }
+
+    public void testWrapAndDrop() {
+        SightingBuffer buffer = new SightingBuffer(4);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5; i++)
+                assertEquals(i < 4, buffer.offer("00:00:00:00:00:01", -60, new byte[] {(byte) round, (byte) i}));
+            assertEquals(4, buffer.drain(collect, 10));
+        }
+
+        assertEquals(10, buffer.getDropped());
+        assertEquals(40, received.size());
+        for (int k = 0; k < received.size(); k++) {
+            assertEquals(k / 4, received.get(k)[0]);
+            assertEquals(k % 4, received.get(k)[1]);
+        }
+    }
+
+    public void testView() {
+        byte[] data = {9, 9, (byte) 0xc5, 1, 2, 9};
+        ScanRecord view = new ScanRecord().wrap(data, 2, 3);
+        assertEquals(3, view.length());
+        assertEquals(0xc5, view.get(0));
+        assertEquals(2, view.get(2));
+        assertEquals(0, view.get(3));
+        assertEquals(0, view.get(-1));
+        try {
+            view.wrap(data, 4, 3);
+            fail("wrapped outside the array");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+
+        // the parser reads the same fields from a view as from the array
+        byte[] record = TrafficGenerator.packet(0x1122334455667788L, 0x99aabbccddeeff00L, 513, 1027, -59);
+        byte[] padded = new byte[record.length + 7];
+        System.arraycopy(record, 0, padded, 7, record.length);
+        BeaconParser parser = new BeaconParser().parse(new ScanRecord().wrap(padded, 7, record.length));
+        assertEquals(0x1122334455667788L, parser.getUuidMostSigBits());
+        assertEquals(0x99aabbccddeeff00L, parser.getUuidLeastSigBits());
+        assertEquals(513, parser.getMajor());
+        assertEquals(1027, parser.getMinor());
+        assertEquals(new BeaconParser().parse(record).getSignalLevel(), parser.getSignalLevel());
+    }
+
+    public void testNoAllocation() {
+        final SightingBuffer buffer = new SightingBuffer(4096);
+        final BeaconParser parser = new BeaconParser();
+        final long[] sum = new long[1];
+        SightingBuffer.Reader reader = new SightingBuffer.Reader() {
+            @Override
+            public void onSighting(String mac, int rssi, ScanRecord record, long time) {
+                sum[0] += parser.parse(record).getMinor() + rssi;
+            }
+        };
+        LogHistogram latency = new LogHistogram(60000000);
+        String[] macs = new String[100];
+        byte[][] records = new byte[100][];
+        for (int i = 0; i < macs.length; i++) {
+            macs[i] = MacIndex.unpack(i);
+            records[i] = TrafficGenerator.packet(1, 2, 3, i, -59);
+        }
+
+        // warm up, so the allocations of the class loading and compiler are done
+        run(buffer, reader, latency, macs, records);
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            // allocation is not measured on this VM
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long id     = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        run(buffer, reader, latency, macs, records);
+        long bytes  = threads.getThreadAllocatedBytes(id) - before;
+
+        assertTrue(bytes + " bytes allocated", bytes < 1024);
+        assertEquals(0, buffer.getDropped());
+    }
+
+    private static void run(SightingBuffer buffer, SightingBuffer.Reader reader, LogHistogram latency,
+                            String[] macs, byte[][] records) {
+        for (int i = 0; i < SIGHTINGS; i++) {
+            buffer.offer(macs[i % macs.length], -60, records[i % records.length]);
+            if (i % 256 == 255)
+                buffer.drain(reader, 256, latency);
+        }
+        buffer.drain(reader, 256, latency);
+    }
+}
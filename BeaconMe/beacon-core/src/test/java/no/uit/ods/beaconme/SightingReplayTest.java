@@ -0,0 +1,221 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests the capture format written by SightingRecorder and read by
+ * SightingReplay, records the sightings drained by the BeaconIngest,
+ * and replays a crowd through the ingestion path of the scanner
+ * service, checking that every beacon reaches the list and a delta is
+ * published for each scan.
+ */
+public class SightingReplayTest extends TestCase {
+    private static final int    BEACONS     = 300;
+    private static final int    SECONDS     = 60;
+    private static final long   INTERVAL    = 100;    // between sightings of a beacon
+    private static final long   SCAN        = 2500;
+
+    private long now;
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+    };
+
+    /**
+     * A sighting as handed to a sink.
+     */
+    private static class Sighting {
+        final String mac;
+        final int    rssi;
+        final byte[] record;
+
+        Sighting(String mac, int rssi, byte[] record) {
+            this.mac    = mac;
+            this.rssi   = rssi;
+            this.record = record;
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        byte[] packet = record();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SightingRecorder recorder = new SightingRecorder(bytes);
+        recorder.record(1000, "c0:ff:ee:00:00:01", -60, packet);
+        recorder.record(1250, "not a mac", -200, null);
+        // the clock going back is recorded as no time passing
+        recorder.record(1200, "C0:FF:EE:00:00:02", 5, packet);
+        assertEquals(3, recorder.getCount());
+        recorder.close();
+
+        final ArrayList<Sighting> read = new ArrayList<>();
+        SightingBuffer.Sink sink = new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                read.add(new Sighting(mac, rssi, record));
+            }
+        };
+        SightingReplay replay = new SightingReplay(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(1000, replay.getStartTime());
+        assertTrue(replay.next(sink));
+        assertEquals(1000, replay.getTime());
+        assertTrue(replay.next(sink));
+        assertEquals(1250, replay.getTime());
+        assertTrue(replay.next(sink));
+        assertEquals(1250, replay.getTime());
+        assertFalse(replay.next(sink));
+        assertEquals(3, replay.getCount());
+
+        assertEquals("C0:FF:EE:00:00:01", read.get(0).mac);
+        assertEquals(-60, read.get(0).rssi);
+        assertTrue(Arrays.equals(packet, read.get(0).record));
+        assertEquals("not a mac", read.get(1).mac);
+        assertEquals(-128, read.get(1).rssi);
+        assertEquals(0, read.get(1).record.length);
+        assertEquals("C0:FF:EE:00:00:02", read.get(2).mac);
+    }
+
+    public void testRecordDrained() throws Exception {
+        // the sightings are recorded as they are drained, the rejected ones are not
+        final BeaconIngest ingest = new BeaconIngest(new BeaconList(), 4096);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SightingRecorder recorder = new SightingRecorder(bytes);
+        ingest.setRecorder(recorder);
+        final ArrayList<Sighting> offered = new ArrayList<>();
+        SightingReplay source = new SightingReplay(new ByteArrayInputStream(capture(10, 1)));
+        source.replay(new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                assertTrue(ingest.offer(mac, rssi, record));
+                assertFalse(ingest.offer(mac, rssi, new byte[62]));
+                offered.add(new Sighting(mac, rssi, record));
+            }
+        }, 0);
+        assertEquals(offered.size(), ingest.drain());
+        ingest.setRecorder(null);
+        recorder.close();
+        assertEquals(offered.size(), recorder.getCount());
+
+        final ArrayList<Sighting> read = new ArrayList<>();
+        long n = new SightingReplay(new ByteArrayInputStream(bytes.toByteArray())).replay(
+                new SightingBuffer.Sink() {
+                    @Override
+                    public void onSighting(String mac, int rssi, byte[] record) {
+                        read.add(new Sighting(mac, rssi, record));
+                    }
+                }, 0);
+        assertEquals(offered.size(), n);
+        for (int i = 0; i < offered.size(); i++) {
+            assertEquals(offered.get(i).mac, read.get(i).mac);
+            assertEquals(offered.get(i).rssi, read.get(i).rssi);
+            assertTrue(Arrays.equals(offered.get(i).record, read.get(i).record));
+        }
+    }
+
+    public void testTruncated() throws IOException {
+        byte[] capture = capture(10, 1);
+        int size = capture.length;
+        // cut in the middle of the last sighting
+        SightingReplay replay = new SightingReplay(new ByteArrayInputStream(Arrays.copyOf(capture, size - 5)));
+        SightingBuffer.Sink ignore = new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+            }
+        };
+        while (replay.next(ignore))
+            ;
+        assertEquals(10 * (1000 / INTERVAL) - 1, replay.getCount());
+
+        try {
+            new SightingReplay(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+            fail("bad magic number was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testSpeed() throws Exception {
+        // a second recorded, replayed at twice the speed
+        SightingReplay replay = new SightingReplay(new ByteArrayInputStream(capture(10, 1)));
+        final int[] count = new int[1];
+        long start = System.nanoTime();
+        long n = replay.replay(new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                count[0]++;
+            }
+        }, 2.0);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(100, n);
+        assertEquals(100, count[0]);
+        assertTrue("replayed in " + elapsed + " ms", elapsed >= 490 && elapsed < 2000);
+    }
+
+    public void testThroughput() throws IOException {
+        byte[] capture = capture(BEACONS, SECONDS);
+
+        // the path of the service: buffer, list with expiry, snapshot and delta per scan
+        final BeaconIngest ingest = new BeaconIngest(
+                new BeaconList(RssiFilter.create("kalman"), 10000, clock), 4096);
+        SightingBuffer.Sink callback = new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                ingest.offer(mac, rssi, record);
+            }
+        };
+
+        SightingReplay replay = new SightingReplay(new ByteArrayInputStream(capture));
+        long scanEnd = replay.getStartTime() + SCAN;
+        int deltas = 0;
+        while (replay.next(callback)) {
+            now = replay.getTime();
+            if (ingest.getPending() >= 256)
+                ingest.drain();
+            if (now >= scanEnd) {
+                ingest.endScan();
+                if (!ingest.getChanges().build(ingest.getSnapshot()).isEmpty())
+                    deltas++;
+                scanEnd += SCAN;
+                ingest.startScan();
+            }
+        }
+
+        ingest.drain();
+        assertEquals(BEACONS, ingest.getSnapshot().getCount());
+        assertEquals(0, ingest.getDropped());
+        assertEquals((SECONDS * 1000 - 1) / SCAN, deltas);
+    }
+
+    /**
+     * Records the beacons each seen every INTERVAL ms, with a RSSI
+     * wandering around -70 dBm.
+     */
+    private static byte[] capture(int beacons, int seconds) throws IOException {
+        byte[] packet = record();
+        Beacon[] crowd = BeaconListTest.createBeacons(beacons);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SightingRecorder recorder = new SightingRecorder(bytes);
+        for (long t = 0; t < seconds * 1000; t += INTERVAL) {
+            for (int i = 0; i < beacons; i++) {
+                int rssi = -70 + (int) ((t / INTERVAL + i * 7) % 11) - 5;
+                recorder.record(t + i * INTERVAL / beacons, crowd[i].getAddress(), rssi, packet);
+            }
+        }
+        recorder.close();
+        return bytes.toByteArray();
+    }
+
+    // an iBeacon packet with an empty UUID advertising -59 dBm, it has to pass the BeaconPrefilter
+    private static byte[] record() {
+        return TrafficGenerator.packet(0, 0, 0, 0, -59);
+    }
+}
@@ -0,0 +1,145 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Drives the ingestion path of the scanner service with generated
+ * traffic at 100, 1000 and 10000 beacons in range, and checks that the
+ * list thread keeps up: it's busy less than half of the time, the p99
+ * of a drain and of the end of a scan is below the time to the next
+ * one, and the heap stops growing after the first scans. <br>
+ *
+ * The simulation runs on the generator's clock and uses the timing of
+ * the service: sightings are drained 200 ms after they arrive and a scan
+ * ends every 2.5 s. The same seed gives the same traffic on every run.
+ */
+public class SoakTest extends TestCase {
+    private static final int[]  SIZES       = {100, 1000, 10000};
+    private static final long   SECONDS     = 60;
+    private static final long   WARMUP      = 10000;
+    private static final long   DRAIN_DELAY = 200;
+    private static final long   SCAN        = 2500;
+    private static final long   TIMEOUT     = 10000;
+
+    private long now;
+    private final Clock clock = new Clock() {
+        @Override
+        public long now() {
+            return now;
+        }
+    };
+
+    public void testSoak() {
+        for (int size : SIZES)
+            soak(size);
+    }
+
+    public void testPacketLayout() {
+        byte[] record = TrafficGenerator.packet(0x0123456789abcdefL, 0xfedcba9876543210L, 513, 65535, -59);
+        BeaconParser parser = new BeaconParser().parse(record);
+        assertEquals(0x0123456789abcdefL, parser.getUuidMostSigBits());
+        assertEquals(0xfedcba9876543210L, parser.getUuidLeastSigBits());
+        assertEquals(513, parser.getMajor());
+        assertEquals(65535, parser.getMinor());
+        assertEquals(0xff - 0xc5, parser.getSignalLevel());
+    }
+
+    public void testRepeatable() {
+        assertEquals(trace(1), trace(1));
+        assertFalse(trace(1) == trace(2));
+    }
+
+    private void soak(int size) {
+        TrafficGenerator traffic = new TrafficGenerator(size, 42);
+        traffic.setMovement(TrafficGenerator.Movement.WALKING);
+        final BeaconIngest ingest = new BeaconIngest(
+                new BeaconList(RssiFilter.create("kalman"), TIMEOUT, clock), 4096);
+        SightingBuffer.Sink callback = new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                ingest.offer(mac, rssi, record);
+            }
+        };
+
+        long[] drains = new long[(int) (SECONDS * 1000 / DRAIN_DELAY)];
+        long[] scans  = new long[(int) (SECONDS * 1000 / SCAN)];
+        int nDrains = 0, nScans = 0;
+        long busy = 0, heapStart = 0;
+        long nextScan = SCAN;
+
+        for (long t = DRAIN_DELAY; t <= SECONDS * 1000; t += DRAIN_DELAY) {
+            traffic.advance(t, callback);
+            now = t;
+
+            long start = System.nanoTime();
+            ingest.drain();
+            long drain = System.nanoTime() - start;
+            long scan = 0;
+            if (t >= nextScan) {
+                start = System.nanoTime();
+                ingest.endScan();
+                ingest.getChanges().clear();
+                ingest.startScan();
+                scan = System.nanoTime() - start;
+                nextScan += SCAN;
+            }
+
+            if (t == WARMUP)
+                heapStart = usedHeap();
+            else if (t > WARMUP) {
+                drains[nDrains++] = drain;
+                if (scan > 0)
+                    scans[nScans++] = scan;
+                busy += drain + scan;
+            }
+        }
+        long heapGrowth = usedHeap() - heapStart;
+        long drainP99   = percentile(drains, nDrains, 0.99);
+        long scanP99    = percentile(scans, nScans, 0.99);
+
+        assertTrue(size + " beacons: busy " + busy / 1000000 + " ms",
+                busy * 2 < (SECONDS * 1000 - WARMUP) * 1000000);
+        assertTrue(size + " beacons: p99 drain " + drainP99 / 1000 + " us", drainP99 < DRAIN_DELAY * 1000000);
+        assertTrue(size + " beacons: p99 end of scan " + scanP99 / 1000 + " us", scanP99 < SCAN * 1000000);
+        // at most 1 kB a beacon, for the list and the snapshot it holds
+        assertTrue(size + " beacons: heap growth " + heapGrowth / 1024 + " kB",
+                heapGrowth < size * 1024L + (1 << 20));
+
+        assertEquals(0, ingest.getDropped());
+        assertEquals(traffic.getSightings(), ingest.getMetricsSnapshot().getSightings());
+        // the beacons replaced in the last timeout are still in the list
+        int count = ingest.getSnapshot().getCount();
+        assertTrue(count + " in list", count >= size * 0.95 && count <= size * 1.2 + 5);
+    }
+
+    // a checksum of the first sightings of a seed
+    private static long trace(long seed) {
+        final long[] hash = {17};
+        TrafficGenerator traffic = new TrafficGenerator(50, seed);
+        traffic.setChurn(0.1);
+        traffic.advance(10000, new SightingBuffer.Sink() {
+            @Override
+            public void onSighting(String mac, int rssi, byte[] record) {
+                hash[0] = hash[0] * 31 + mac.hashCode() * 131 + rssi;
+            }
+        });
+        return hash[0];
+    }
+
+    private static long percentile(long[] samples, int n, double p) {
+        if (n == 0)
+            return 0;
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        return sorted[Math.min(n - 1, (int) Math.ceil(p * n) - 1)];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,221 @@
+package no.uit.ods.beaconme;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Generates the sightings of a crowd of simulated iBeacons, for load and
+ * soak tests of the ingestion path. <br>
+ *
+ * Each beacon advertises the packet layout BeaconParser reads, once per
+ * interval with the 0-10 ms random delay of BLE advertising. The RSSI
+ * follows the log distance path loss of the beacon's distance, with
+ * gaussian noise. Beacons stand still, walk randomly or pass by, and a
+ * share of them is replaced by new beacons every second (churn). <br>
+ *
+ * The beacons wait in a queue ordered on their next advertisement, so
+ * the cost per sighting doesn't grow with the size of the crowd. The
+ * sightings of the same seed and settings are always the same.
+ */
+public class TrafficGenerator {
+    /**
+     * How the beacons move relative to the phone.
+     */
+    public enum Movement { STATIC, WALKING, PASSING }
+
+    private static final double MIN_DISTANCE    = 0.5;
+    private static final double MAX_DISTANCE    = 30.0;
+    private static final double WALKING_SPEED   = 1.4;  // m/s
+    private static final double PATH_LOSS       = 2.0;
+    private static final int    TX_POWER        = -59;  // dBm at 1 m
+
+    private final Random        random;
+    private final int           size;
+    private final PriorityQueue<Emitter> queue;
+    private Movement            movement    = Movement.WALKING;
+    private double              noise       = 4.0;
+    private double              churn       = 0.01;
+    private long                interval    = 1000;
+    private long                time;
+    private long                nextId;
+    private long                sightings;
+    private long                replaced;
+
+    /**
+     * A simulated beacon.
+     */
+    private static class Emitter {
+        String  mac;
+        byte[]  record;
+        double  distance;
+        double  velocity;
+        long    next;
+        long    last;
+    }
+
+    /**
+     * Constructor method.
+     *
+     * @param size The number of beacons in range at any time.
+     * @param seed The seed of the random numbers.
+     */
+    public TrafficGenerator(int size, long seed) {
+        this.size   = size;
+        this.random = new Random(seed);
+        this.queue  = new PriorityQueue<>(Math.max(1, size), new Comparator<Emitter>() {
+            @Override
+            public int compare(Emitter a, Emitter b) {
+                return a.next < b.next ? -1 : (a.next == b.next ? 0 : 1);
+            }
+        });
+    }
+
+    public void setMovement(Movement movement) {
+        this.movement = movement;
+    }
+
+    /**
+     * Sets the standard deviation of the RSSI noise, in dB.
+     */
+    public void setNoise(double noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Sets the share of the beacons replaced by new ones each second.
+     */
+    public void setChurn(double churn) {
+        this.churn = churn;
+    }
+
+    /**
+     * Sets the time between the advertisements of a beacon, in milliseconds.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the time of the last sighting handed out, in milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of sightings handed out.
+     */
+    public long getSightings() {
+        return sightings;
+    }
+
+    /**
+     * Returns the number of beacons that went out of range and were
+     * replaced by a new one.
+     */
+    public long getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * Hands the sink all the sightings before the given time, in order.
+     *
+     * @param until The time to run to, in milliseconds.
+     * @param sink The Sink receiving the sightings.
+     * @return The number of sightings.
+     */
+    public int advance(long until, SightingBuffer.Sink sink) {
+        if (queue.isEmpty()) {
+            for (int i = 0; i < size; i++)
+                queue.add(create((long) (random.nextDouble() * interval)));
+        }
+
+        int count = 0;
+        while (!queue.isEmpty() && queue.peek().next < until) {
+            Emitter e = queue.poll();
+            time = e.next;
+            double elapsed = (time - e.last) / 1000.0;
+
+            // gone, a new beacon comes in range in its place
+            if (random.nextDouble() < churn * elapsed) {
+                replaced++;
+                queue.add(create(time + (long) (random.nextDouble() * interval)));
+                continue;
+            }
+
+            move(e, elapsed);
+            sink.onSighting(e.mac, rssi(e.distance), e.record);
+            sightings++;
+            count++;
+            e.last = time;
+            e.next = time + interval + random.nextInt(11);
+            queue.add(e);
+        }
+        return count;
+    }
+
+    /**
+     * Creates the advertisement packet of an iBeacon, in the layout of
+     * the scanRecord delivered by the leScan callback.
+     *
+     * @param msb The upper 64 bits of the UUID.
+     * @param lsb The lower 64 bits of the UUID.
+     * @param major The major of the beacon.
+     * @param minor The minor of the beacon.
+     * @param txPower The signal strength at 1 m, in dBm.
+     * @return The 62 byte scanRecord.
+     */
+    public static byte[] packet(long msb, long lsb, int major, int minor, int txPower) {
+        byte[] record = new byte[62];
+        // flags, then the Apple manufacturer data with the iBeacon prefix
+        byte[] header = {0x02, 0x01, 0x06, 0x1a, (byte) 0xff, 0x4c, 0x00, 0x02, 0x15};
+        System.arraycopy(header, 0, record, 0, header.length);
+        for (int i = 0; i < 8; i++) {
+            record[9 + i]  = (byte) (msb >>> (56 - 8 * i));
+            record[17 + i] = (byte) (lsb >>> (56 - 8 * i));
+        }
+        record[25] = (byte) (major >> 8);
+        record[26] = (byte) major;
+        record[27] = (byte) (minor >> 8);
+        record[28] = (byte) minor;
+        record[29] = (byte) txPower;
+        return record;
+    }
+
+    private Emitter create(long first) {
+        long id = nextId++;
+        Emitter e   = new Emitter();
+        e.mac       = String.format("0A:%02X:%02X:%02X:%02X:%02X", (id >> 32) & 0xff, (id >> 24) & 0xff,
+                (id >> 16) & 0xff, (id >> 8) & 0xff, id & 0xff);
+        e.record    = packet(0xb9407f30f5f8466eL, 0xaff925556b57fe6dL, (int) (id >> 16) & 0xffff,
+                (int) id & 0xffff, TX_POWER);
+        e.distance  = MIN_DISTANCE + random.nextDouble() * (MAX_DISTANCE - MIN_DISTANCE);
+        e.velocity  = movement == Movement.STATIC ? 0
+                : (random.nextBoolean() ? WALKING_SPEED : -WALKING_SPEED);
+        e.next      = first;
+        e.last      = first;
+        return e;
+    }
+
+    private void move(Emitter e, double elapsed) {
+        if (movement == Movement.WALKING)
+            e.velocity = (random.nextDouble() * 2 - 1) * WALKING_SPEED;
+        e.distance += e.velocity * elapsed;
+        // turn around at the edges
+        if (e.distance < MIN_DISTANCE) {
+            e.distance = 2 * MIN_DISTANCE - e.distance;
+            e.velocity = Math.abs(e.velocity);
+        }
+        else if (e.distance > MAX_DISTANCE) {
+            e.distance = 2 * MAX_DISTANCE - e.distance;
+            e.velocity = -Math.abs(e.velocity);
+        }
+        e.distance = Math.max(MIN_DISTANCE, Math.min(MAX_DISTANCE, e.distance));
+    }
+
+    private int rssi(double distance) {
+        double rssi = TX_POWER - 10 * PATH_LOSS * Math.log10(distance) + random.nextGaussian() * noise;
+        return (int) Math.max(-127, Math.min(0, Math.round(rssi)));
+    }
+}
@@ -0,0 +1,192 @@
+package no.uit.ods.beaconme;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Tests the ids of the UuidDictionary, from one and several threads,
+ * that only allow-listed UUIDs are added, and measures the heap held by
+ * the UUID Strings of 10 000 beacons and comparing their UUIDs as ids
+ * against comparing Strings.
+ */
+public class UuidDictionaryTest extends TestCase {
+    private static final int    BEACONS = 10000;
+    private static final int    ROUNDS  = 20;
+
+    // the handful of proximity UUIDs of a deployment
+    private static final int    UUIDS   = 4;
+
+    public void testIds() {
+        int a = UuidDictionary.id(0x0123456789abcdefL, 0xfedcba9876543210L);
+        int b = UuidDictionary.id(0x0123456789abcdefL, 0xfedcba9876543211L);
+        assertTrue(a != b);
+        assertEquals(a, UuidDictionary.id(0x0123456789abcdefL, 0xfedcba9876543210L));
+        assertEquals(a, UuidDictionary.id("01234567-89ab-cdef-fedc-ba9876543210"));
+        assertEquals(0x0123456789abcdefL, UuidDictionary.getMostSigBits(a));
+        assertEquals(0xfedcba9876543210L, UuidDictionary.getLeastSigBits(a));
+
+        String text = UuidDictionary.toString(a);
+        assertEquals("01234567-89AB-CDEF-FEDC-BA9876543210", text);
+        assertSame(text, UuidDictionary.toString(a));
+        assertSame(text, UuidDictionary.shared("01234567-89AB-CDEF-FEDC-BA9876543210"));
+        assertEquals(a, UuidDictionary.find(0x0123456789abcdefL, 0xfedcba9876543210L));
+
+        assertEquals(UuidDictionary.NONE, UuidDictionary.id("not-a-uuid"));
+        assertEquals(UuidDictionary.NONE, UuidDictionary.id((String) null));
+        assertEquals("not-a-uuid", UuidDictionary.shared("not-a-uuid"));
+        assertNull(UuidDictionary.toString(UuidDictionary.NONE));
+    }
+
+    public void testRadioUuids() {
+        Random random = new Random(System.nanoTime());
+        long msb = random.nextLong();
+        long lsb = random.nextLong();
+        BeaconParser parser = new BeaconParser().parse(TrafficGenerator.packet(msb, lsb, 1, 2, -59));
+        int size = UuidDictionary.size();
+
+        // a UUID only seen on the radio is not added
+        Beacon seen = new Beacon("C0:FF:EE:00:00:01", null, -60, parser);
+        assertEquals(UuidDictionary.NONE, seen.getUuidId());
+        assertEquals(msb, seen.getUuidMostSigBits());
+        assertEquals(lsb, seen.getUuidLeastSigBits());
+        assertEquals(BeaconParser.formatUuid(msb, lsb), seen.getUuid());
+        assertEquals(UuidDictionary.NONE, UuidDictionary.find(msb, lsb));
+        String text = BeaconParser.formatUuid(msb, lsb);
+        assertSame(text, UuidDictionary.shared(text));
+        assertEquals(size, UuidDictionary.size());
+
+        // once allow-listed, the beacons share its id and String
+        new BeaconPrefilter().setAllowList(new UUID(msb, lsb));
+        assertEquals(size + 1, UuidDictionary.size());
+        Beacon allowed = new Beacon("C0:FF:EE:00:00:02", null, -60, parser);
+        assertTrue(allowed.getUuidId() != UuidDictionary.NONE);
+        assertSame(UuidDictionary.toString(allowed.getUuidId()), allowed.getUuid());
+        assertEquals(msb, allowed.getUuidMostSigBits());
+    }
+
+    public void testGrowth() {
+        Random random = new Random(42);
+        long[] msbs = new long[5000];
+        long[] lsbs = new long[5000];
+        int[]  ids  = new int[5000];
+        int    size = UuidDictionary.size();
+        for (int i = 0; i < ids.length; i++) {
+            msbs[i] = random.nextLong();
+            lsbs[i] = random.nextLong();
+            ids[i]  = UuidDictionary.id(msbs[i], lsbs[i]);
+        }
+        assertEquals(size + ids.length, UuidDictionary.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], UuidDictionary.id(msbs[i], lsbs[i]));
+            assertEquals(msbs[i], UuidDictionary.getMostSigBits(ids[i]));
+            assertEquals(lsbs[i], UuidDictionary.getLeastSigBits(ids[i]));
+            assertEquals(BeaconParser.formatUuid(msbs[i], lsbs[i]), UuidDictionary.toString(ids[i]));
+        }
+    }
+
+    public void testThreads() throws InterruptedException {
+        final long   seed   = System.nanoTime();
+        final int[][] ids   = new int[4][1000];
+        Thread[]     threads = new Thread[ids.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int[] mine  = ids[t];
+            final int   start = t * 250;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // the same UUIDs, each thread starting at a different one
+                    for (int n = 0; n < mine.length; n++) {
+                        int i = (start + n) % mine.length;
+                        mine[i] = UuidDictionary.id(seed, i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < ids[0].length; i++) {
+            assertEquals(i, UuidDictionary.getLeastSigBits(ids[0][i]));
+            for (int t = 1; t < ids.length; t++)
+                assertEquals(ids[0][i], ids[t][i]);
+        }
+    }
+
+    public void testBeacons() {
+        // UUIDs the dictionary hasn't seen, so their entries and Strings are measured
+        Random random = new Random(System.nanoTime());
+        UUID[] uuids  = new UUID[UUIDS];
+        for (int i = 0; i < uuids.length; i++)
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+        long before = usedHeap();
+        new BeaconPrefilter().setAllowList(uuids);
+        long dictionaryBytes = usedHeap() - before;
+
+        Beacon[] beacons = new Beacon[BEACONS];
+        BeaconParser parser = new BeaconParser();
+        for (int i = 0; i < BEACONS; i++) {
+            UUID uuid = uuids[i % uuids.length];
+            parser.parse(TrafficGenerator.packet(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                    i >> 16, i & 0xffff, -59));
+            beacons[i] = new Beacon(String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xff, (i >> 8) & 0xff,
+                    i & 0xff), null, -60, parser);
+        }
+
+        // the Strings each beacon kept before, and the ones shared now, as shown in the list
+        String[] own    = new String[BEACONS];
+        String[] shared = new String[BEACONS];
+        before = usedHeap();
+        for (int i = 0; i < BEACONS; i++)
+            own[i] = BeaconParser.formatUuid(beacons[i].getUuidMostSigBits(), beacons[i].getUuidLeastSigBits());
+        long ownBytes = usedHeap() - before;
+        before = usedHeap();
+        for (int i = 0; i < BEACONS; i++)
+            shared[i] = beacons[i].getUuid();
+        // the dictionary's entries and Strings count as shared
+        long sharedBytes = usedHeap() - before + dictionaryBytes;
+
+        for (int i = 0; i < BEACONS; i++) {
+            assertEquals(own[i], shared[i]);
+            assertSame(shared[i % UUIDS], shared[i]);
+        }
+
+        // compare each beacon with another, a quarter have the same UUID
+        long strings = Long.MAX_VALUE;
+        long ids     = Long.MAX_VALUE;
+        int  same    = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            int  n     = 0;
+            for (int i = 0; i < BEACONS; i++) {
+                if (own[i].equals(own[(i * 2 + 1) % BEACONS]))
+                    n++;
+            }
+            strings = Math.min(strings, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            same  = 0;
+            for (int i = 0; i < BEACONS; i++) {
+                if (beacons[i].getUuidId() == beacons[(i * 2 + 1) % BEACONS].getUuidId())
+                    same++;
+            }
+            ids = Math.min(ids, System.nanoTime() - start);
+            assertEquals(n, same);
+        }
+
+        assertEquals(BEACONS / UUIDS, same);
+        assertTrue("UUID Strings " + ownBytes + " bytes own, " + sharedBytes + " bytes shared with the dictionary",
+                sharedBytes * 10 < ownBytes);
+        assertTrue("compare " + strings / BEACONS + " ns as Strings, " + ids / BEACONS + " ns as ids",
+                ids < strings);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}